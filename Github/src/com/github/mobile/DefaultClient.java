@@ -19,10 +19,18 @@ import static android.os.Build.VERSION.SDK_INT;
 import static android.os.Build.VERSION_CODES.FROYO;
 
 import com.github.kevinsawicki.http.HttpRequest;
+import com.github.mobile.ResponseCache.Entry;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 
 import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+import org.eclipse.egit.github.core.client.PageLinks;
 
 /**
  * Default client used to communicate with GitHub API
@@ -31,6 +39,84 @@ public class DefaultClient extends GitHubClient {
 
     private static final String USER_AGENT = "GitHubAndroid/1.6";
 
+    private static final String HEADER_ETAG = "ETag";
+
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String HEADER_LINK = "Link";
+
+    /**
+     * Response served from the cache that falls back to the cached Link header
+     * when the 304 response did not include one
+     */
+    private static class CachedResponse extends GitHubResponse {
+
+        private final String links;
+
+        private PageLinks pageLinks;
+
+        private CachedResponse(final HttpURLConnection response,
+                final Object body, final String links) {
+            super(response, body);
+
+            this.links = links;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            String value = super.getHeader(name);
+            if (value == null && links != null && HEADER_LINK.equals(name))
+                return links;
+            return value;
+        }
+
+        private PageLinks getPageLinks() {
+            if (pageLinks == null)
+                pageLinks = new PageLinks(this);
+            return pageLinks;
+        }
+
+        @Override
+        public String getFirst() {
+            return getPageLinks().getFirst();
+        }
+
+        @Override
+        public String getPrevious() {
+            return getPageLinks().getPrev();
+        }
+
+        @Override
+        public String getNext() {
+            return getPageLinks().getNext();
+        }
+
+        @Override
+        public String getLast() {
+            return getPageLinks().getLast();
+        }
+    }
+
+    private static byte[] readFully(final InputStream stream)
+            throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1)
+                output.write(buffer, 0, read);
+            return output.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private ResponseCache cache;
+
     static {
         // Disable http.keepAlive on Froyo and below
         if (SDK_INT <= FROYO)
@@ -47,6 +133,81 @@ public class DefaultClient extends GitHubClient {
         setUserAgent(USER_AGENT);
     }
 
+    /**
+     * Set cache to use for conditional GET requests
+     *
+     * @param cache
+     * @return this client
+     */
+    public DefaultClient setResponseCache(final ResponseCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Get key to cache the response to the given URI under
+     * <p>
+     * Sub-classes should include the identity the request is made with
+     *
+     * @param uri
+     * @return key
+     */
+    protected String getCacheKey(final String uri) {
+        return uri;
+    }
+
+    @Override
+    public GitHubResponse get(final GitHubRequest request) throws IOException {
+        if (cache == null)
+            return super.get(request);
+
+        final String uri = request.generateUri();
+        final HttpURLConnection httpRequest = createGet(uri);
+        final String accept = request.getResponseContentType();
+        if (accept != null)
+            httpRequest.setRequestProperty(HEADER_ACCEPT, accept);
+
+        final String key = getCacheKey(uri) + '#' + accept;
+        Entry cached = cache.get(key);
+        if (cached != null && cached.isConditional()) {
+            if (cached.getEtag() != null)
+                httpRequest.setRequestProperty(HEADER_IF_NONE_MATCH,
+                        cached.getEtag());
+            if (cached.getLastModified() != null)
+                httpRequest.setRequestProperty(HEADER_IF_MODIFIED_SINCE,
+                        cached.getLastModified());
+        } else
+            cached = null;
+
+        final int code = httpRequest.getResponseCode();
+        updateRateLimits(httpRequest);
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            cache.notModified();
+            return new CachedResponse(httpRequest, getBody(request,
+                    new ByteArrayInputStream(cached.getBody())),
+                    cached.getLinks());
+        }
+        if (isOk(code)) {
+            final byte[] body = readFully(getStream(httpRequest));
+            cache.received(body.length);
+            final String etag = httpRequest.getHeaderField(HEADER_ETAG);
+            final String lastModified = httpRequest
+                    .getHeaderField(HEADER_LAST_MODIFIED);
+            final Entry entry = new Entry(etag, lastModified,
+                    httpRequest.getHeaderField(HEADER_LINK), body);
+            if (entry.isConditional())
+                cache.put(key, entry);
+            else if (cached != null)
+                cache.remove(key);
+            return new GitHubResponse(httpRequest, getBody(request,
+                    new ByteArrayInputStream(body)));
+        }
+        if (isEmpty(code))
+            return new GitHubResponse(httpRequest, null);
+        throw createException(getStream(httpRequest), code,
+                httpRequest.getResponseMessage());
+    }
+
     @Override
     protected HttpURLConnection configureRequest(HttpURLConnection request) {
         super.configureRequest(request);
@@ -20,9 +20,11 @@ import android.content.Context;
 import com.github.mobile.accounts.AccountClient;
 import com.github.mobile.accounts.AccountScope;
 import com.github.mobile.accounts.GitHubAccount;
+import com.github.mobile.core.GitObjectCache;
 import com.github.mobile.core.commit.CommitStore;
 import com.github.mobile.core.gist.GistStore;
 import com.github.mobile.core.issue.IssueStore;
+import com.github.mobile.persistence.IssueCache;
 import com.github.mobile.persistence.OrganizationRepositories;
 import com.github.mobile.sync.SyncCampaign;
 import com.google.inject.AbstractModule;
@@ -61,8 +63,9 @@ public class GitHubModule extends AbstractModule {
     }
 
     @Provides
-    GitHubClient client(Provider<GitHubAccount> accountProvider) {
-        return new AccountClient(accountProvider);
+    GitHubClient client(Provider<GitHubAccount> accountProvider,
+            ResponseCache cache) {
+        return new AccountClient(accountProvider, cache);
     }
 
     @Provides
@@ -73,10 +76,10 @@ public class GitHubModule extends AbstractModule {
 
     @Provides
     IssueStore issueStore(IssueService issueService,
-            PullRequestService pullService) {
+            PullRequestService pullService, IssueCache cache) {
         IssueStore store = issues != null ? issues.get() : null;
         if (store == null) {
-            store = new IssueStore(issueService, pullService);
+            store = new IssueStore(issueService, pullService, cache);
             issues = new WeakReference<IssueStore>(store);
         }
         return store;
@@ -93,10 +96,10 @@ public class GitHubModule extends AbstractModule {
     }
 
     @Provides
-    CommitStore commitStore(CommitService service) {
+    CommitStore commitStore(CommitService service, GitObjectCache cache) {
         CommitStore store = commits != null ? commits.get() : null;
         if (store == null) {
-            store = new CommitStore(service);
+            store = new CommitStore(service, cache);
             commits = new WeakReference<CommitStore>(store);
         }
         return store;
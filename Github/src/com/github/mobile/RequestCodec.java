@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Codec of request data read by {@link RequestReader} and written by
+ * {@link RequestWriter}
+ *
+ * @param <V>
+ */
+public interface RequestCodec<V> {
+
+    /**
+     * Get version of the format written by this codec
+     * <p>
+     * Data written with a different version is discarded when read
+     *
+     * @return version
+     */
+    int getVersion();
+
+    /**
+     * Write value to output
+     *
+     * @param value
+     * @param output
+     * @throws IOException
+     */
+    void write(V value, DataOutputStream output) throws IOException;
+
+    /**
+     * Read value from input
+     *
+     * @param input
+     * @return value
+     * @throws IOException
+     */
+    V read(DataInputStream input) throws IOException;
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile;
+
+import com.github.mobile.core.issue.IssueFilter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.egit.github.core.Blob;
+import org.eclipse.egit.github.core.Label;
+import org.eclipse.egit.github.core.Milestone;
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.Tree;
+import org.eclipse.egit.github.core.TreeEntry;
+import org.eclipse.egit.github.core.User;
+
+/**
+ * Binary codecs of persisted request data
+ * <p>
+ * Each codec writes only the fields of its type in a fixed order so its
+ * version must be incremented whenever that order changes.
+ */
+public class RequestCodecs {
+
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * Codec of ordered sets of ids
+     */
+    public static final RequestCodec<LinkedHashSet<Long>> LONG_SET = new RequestCodec<LinkedHashSet<Long>>() {
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(final LinkedHashSet<Long> value,
+                final DataOutputStream output) throws IOException {
+            output.writeInt(value.size());
+            for (Long id : value)
+                output.writeLong(id);
+        }
+
+        @Override
+        public LinkedHashSet<Long> read(final DataInputStream input)
+                throws IOException {
+            int size = readSize(input);
+            LinkedHashSet<Long> value = new LinkedHashSet<Long>(size);
+            for (int i = 0; i < size; i++)
+                value.add(input.readLong());
+            return value;
+        }
+    };
+
+    /**
+     * Codec of string arrays that may contain null elements
+     */
+    public static final RequestCodec<String[]> STRING_ARRAY = new RequestCodec<String[]>() {
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(final String[] value, final DataOutputStream output)
+                throws IOException {
+            output.writeInt(value.length);
+            for (String element : value)
+                writeString(element, output);
+        }
+
+        @Override
+        public String[] read(final DataInputStream input) throws IOException {
+            String[] value = new String[readSize(input)];
+            for (int i = 0; i < value.length; i++)
+                value[i] = readString(input);
+            return value;
+        }
+    };
+
+    /**
+     * Codec of trees
+     */
+    public static final RequestCodec<Tree> TREE = new RequestCodec<Tree>() {
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(final Tree value, final DataOutputStream output)
+                throws IOException {
+            writeString(value.getSha(), output);
+            writeString(value.getUrl(), output);
+            List<TreeEntry> entries = value.getTree();
+            output.writeBoolean(entries != null);
+            if (entries == null)
+                return;
+            output.writeInt(entries.size());
+            for (TreeEntry entry : entries) {
+                writeString(entry.getPath(), output);
+                writeString(entry.getMode(), output);
+                writeString(entry.getType(), output);
+                writeString(entry.getSha(), output);
+                writeString(entry.getUrl(), output);
+                output.writeLong(entry.getSize());
+            }
+        }
+
+        @Override
+        public Tree read(final DataInputStream input) throws IOException {
+            Tree value = new Tree();
+            value.setSha(readString(input));
+            value.setUrl(readString(input));
+            if (!input.readBoolean())
+                return value;
+            int size = readSize(input);
+            List<TreeEntry> entries = new ArrayList<TreeEntry>(size);
+            for (int i = 0; i < size; i++) {
+                TreeEntry entry = new TreeEntry();
+                entry.setPath(readString(input));
+                // Modes and types repeat across entries so share them
+                entry.setMode(readSharedString(input));
+                entry.setType(readSharedString(input));
+                entry.setSha(readString(input));
+                entry.setUrl(readString(input));
+                entry.setSize(input.readLong());
+                entries.add(entry);
+            }
+            value.setTree(entries);
+            return value;
+        }
+    };
+
+    /**
+     * Codec of blobs
+     */
+    public static final RequestCodec<Blob> BLOB = new RequestCodec<Blob>() {
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(final Blob value, final DataOutputStream output)
+                throws IOException {
+            writeString(value.getEncoding(), output);
+            writeString(value.getContent(), output);
+        }
+
+        @Override
+        public Blob read(final DataInputStream input) throws IOException {
+            Blob value = new Blob();
+            value.setEncoding(readString(input));
+            value.setContent(readString(input));
+            return value;
+        }
+    };
+
+    /**
+     * Codec of bookmarked issue filters
+     * <p>
+     * Repositories are written with the same fields the cache database stores
+     * for repositories, and users, milestones and labels with the fields
+     * filters are displayed and requested with. Sets are read as mutable
+     * {@link HashSet} instances.
+     * <p>
+     * Every other field is read as null, zero or false. This includes the
+     * URLs, homepage, master branch, dates, open issue count, size, parent
+     * and source of repositories, the email and profile fields of owners and
+     * assignees, and the URL, dates, issue counts and creator of milestones.
+     */
+    public static final RequestCodec<Collection<IssueFilter>> ISSUE_FILTERS = new RequestCodec<Collection<IssueFilter>>() {
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(final Collection<IssueFilter> value,
+                final DataOutputStream output) throws IOException {
+            output.writeInt(value.size());
+            for (IssueFilter filter : value) {
+                writeRepository(filter.getRepository(), output);
+                output.writeBoolean(filter.isOpen());
+                writeUser(filter.getAssignee(), output);
+
+                Milestone milestone = filter.getMilestone();
+                output.writeBoolean(milestone != null);
+                if (milestone != null) {
+                    output.writeInt(milestone.getNumber());
+                    writeString(milestone.getTitle(), output);
+                    writeString(milestone.getState(), output);
+                    writeString(milestone.getDescription(), output);
+                }
+
+                Set<Label> labels = filter.getLabels();
+                output.writeInt(labels != null ? labels.size() : 0);
+                if (labels != null)
+                    for (Label label : labels) {
+                        writeString(label.getName(), output);
+                        writeString(label.getColor(), output);
+                        writeString(label.getUrl(), output);
+                    }
+            }
+        }
+
+        @Override
+        public Collection<IssueFilter> read(final DataInputStream input)
+                throws IOException {
+            int size = readSize(input);
+            Collection<IssueFilter> value = new HashSet<IssueFilter>(size);
+            for (int i = 0; i < size; i++) {
+                IssueFilter filter = new IssueFilter(readRepository(input));
+                filter.setOpen(input.readBoolean());
+                filter.setAssignee(readUser(input));
+
+                if (input.readBoolean()) {
+                    Milestone milestone = new Milestone();
+                    milestone.setNumber(input.readInt());
+                    milestone.setTitle(readString(input));
+                    milestone.setState(readSharedString(input));
+                    milestone.setDescription(readString(input));
+                    filter.setMilestone(milestone);
+                }
+
+                int labels = readSize(input);
+                for (int j = 0; j < labels; j++) {
+                    Label label = new Label();
+                    label.setName(readString(input));
+                    label.setColor(readString(input));
+                    label.setUrl(readString(input));
+                    filter.addLabel(label);
+                }
+                value.add(filter);
+            }
+            return value;
+        }
+    };
+
+    private static void writeUser(final User user,
+            final DataOutputStream output) throws IOException {
+        output.writeBoolean(user != null);
+        if (user == null)
+            return;
+        output.writeInt(user.getId());
+        writeString(user.getLogin(), output);
+        writeString(user.getName(), output);
+        writeString(user.getAvatarUrl(), output);
+    }
+
+    private static User readUser(final DataInputStream input)
+            throws IOException {
+        if (!input.readBoolean())
+            return null;
+        User user = new User();
+        user.setId(input.readInt());
+        user.setLogin(readString(input));
+        user.setName(readString(input));
+        user.setAvatarUrl(readString(input));
+        return user;
+    }
+
+    private static void writeRepository(final Repository repository,
+            final DataOutputStream output) throws IOException {
+        output.writeBoolean(repository != null);
+        if (repository == null)
+            return;
+        output.writeLong(repository.getId());
+        writeString(repository.getName(), output);
+        writeUser(repository.getOwner(), output);
+        output.writeBoolean(repository.isPrivate());
+        output.writeBoolean(repository.isFork());
+        writeString(repository.getDescription(), output);
+        output.writeInt(repository.getForks());
+        output.writeInt(repository.getWatchers());
+        writeString(repository.getLanguage(), output);
+        output.writeBoolean(repository.isHasIssues());
+        writeString(repository.getMirrorUrl(), output);
+    }
+
+    private static Repository readRepository(final DataInputStream input)
+            throws IOException {
+        if (!input.readBoolean())
+            return null;
+        Repository repository = new Repository();
+        repository.setId(input.readLong());
+        repository.setName(readString(input));
+        repository.setOwner(readUser(input));
+        repository.setPrivate(input.readBoolean());
+        repository.setFork(input.readBoolean());
+        repository.setDescription(readString(input));
+        repository.setForks(input.readInt());
+        repository.setWatchers(input.readInt());
+        repository.setLanguage(readSharedString(input));
+        repository.setHasIssues(input.readBoolean());
+        repository.setMirrorUrl(readString(input));
+        return repository;
+    }
+
+    /**
+     * Write string that may be null and may be longer than
+     * {@link DataOutputStream#writeUTF(String)} allows
+     *
+     * @param value
+     * @param output
+     * @throws IOException
+     */
+    public static void writeString(final String value,
+            final DataOutputStream output) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(CHARSET);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Read string written by {@link #writeString(String, DataOutputStream)}
+     *
+     * @param input
+     * @return string
+     * @throws IOException
+     */
+    public static String readString(final DataInputStream input)
+            throws IOException {
+        int length = input.readInt();
+        if (length == -1)
+            return null;
+        if (length < 0)
+            throw new IOException("Invalid string length: " + length);
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    private static int readSize(final DataInputStream input)
+            throws IOException {
+        int size = input.readInt();
+        if (size < 0)
+            throw new IOException("Invalid size: " + size);
+        return size;
+    }
+
+    private static String readSharedString(final DataInputStream input)
+            throws IOException {
+        String value = readString(input);
+        return value != null ? value.intern() : null;
+    }
+}
@@ -17,21 +17,32 @@ package com.github.mobile;
 
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.RandomAccessFile;
-import java.nio.channels.FileLock;
 import java.util.zip.GZIPInputStream;
 
 /**
  * Reader of previously fetched request data
+ * <p>
+ * Files are read without locking since {@link RequestWriter} replaces them
+ * with a rename rather than writing them in place. Files written by earlier
+ * versions with Java serialization are still read so they can be rewritten in
+ * the current format.
  */
 public class RequestReader {
 
     private static final String TAG = "RequestReader";
 
+    /**
+     * First bytes of a Java serialization stream
+     */
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+
     private final File handle;
 
     private final int version;
@@ -48,36 +59,44 @@ public class RequestReader {
     }
 
     /**
-     * Read request data
+     * Read request data written with Java serialization
      *
      * @return read data
      */
-    @SuppressWarnings("unchecked")
     public <V> V read() {
+        return read(new SerializableCodec<V>());
+    }
+
+    /**
+     * Read request data written with codec
+     *
+     * @param codec
+     * @return read data or null if the data is missing, unreadable or was
+     *         written with a different version
+     */
+    public <V> V read(final RequestCodec<V> codec) {
         if (!handle.exists() || handle.length() == 0)
             return null;
 
-        RandomAccessFile dir = null;
-        FileLock lock = null;
-        ObjectInputStream input = null;
-        boolean delete = false;
+        InputStream input = null;
         try {
-            dir = new RandomAccessFile(handle, "rw");
-            lock = dir.getChannel().lock();
-            input = new ObjectInputStream(new GZIPInputStream(
-                    new FileInputStream(dir.getFD()), 8192 * 8));
-            int streamVersion = input.readInt();
-            if (streamVersion != version) {
-                delete = true;
+            input = new BufferedInputStream(new GZIPInputStream(
+                    new FileInputStream(handle), 8192), 8192 * 8);
+
+            input.mark(2);
+            int magic = (input.read() << 8) | input.read();
+            input.reset();
+            if (magic == SERIALIZATION_MAGIC)
+                return readSerialized(input);
+
+            DataInputStream data = new DataInputStream(input);
+            if (data.readInt() != version
+                    || data.readInt() != codec.getVersion())
                 return null;
-            }
-            return (V) input.readObject();
+            return codec.read(data);
         } catch (IOException e) {
             Log.d(TAG, "Exception reading cache " + handle.getName(), e);
             return null;
-        } catch (ClassNotFoundException e) {
-            Log.d(TAG, "Exception reading cache " + handle.getName(), e);
-            return null;
         } finally {
             if (input != null)
                 try {
@@ -85,24 +104,19 @@ public class RequestReader {
                 } catch (IOException e) {
                     Log.d(TAG, "Exception closing stream", e);
                 }
-            if (delete)
-                try {
-                    dir.setLength(0);
-                } catch (IOException e) {
-                    Log.d(TAG, "Exception truncating file", e);
-                }
-            if (lock != null)
-                try {
-                    lock.release();
-                } catch (IOException e) {
-                    Log.d(TAG, "Exception unlocking file", e);
-                }
-            if (dir != null)
-                try {
-                    dir.close();
-                } catch (IOException e) {
-                    Log.d(TAG, "Exception closing file", e);
-                }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> V readSerialized(final InputStream input) throws IOException {
+        ObjectInputStream objects = new ObjectInputStream(input);
+        if (objects.readInt() != version)
+            return null;
+        try {
+            return (V) objects.readObject();
+        } catch (ClassNotFoundException e) {
+            Log.d(TAG, "Exception reading cache " + handle.getName(), e);
+            return null;
         }
     }
 }
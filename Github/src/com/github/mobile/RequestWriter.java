@@ -17,16 +17,18 @@ package com.github.mobile;
 
 import android.util.Log;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
-import java.nio.channels.FileLock;
 import java.util.zip.GZIPOutputStream;
 
 /**
  * Request writer
+ * <p>
+ * Data is written to a temporary file that then replaces the target file so
+ * readers never see a partially written file.
  */
 public class RequestWriter {
 
@@ -53,26 +55,43 @@ public class RequestWriter {
     }
 
     /**
-     * Write request to file
+     * Write request to file with Java serialization
      *
      * @param request
      * @return request
      */
     public <V> V write(V request) {
-        RandomAccessFile dir = null;
-        FileLock lock = null;
-        ObjectOutputStream output = null;
+        return write(request, new SerializableCodec<V>());
+    }
+
+    /**
+     * Write request to file with codec
+     *
+     * @param request
+     * @param codec
+     * @return request or null if writing failed
+     */
+    public <V> V write(V request, RequestCodec<V> codec) {
+        File temp = null;
+        DataOutputStream output = null;
+        boolean written = false;
         try {
-            createDirectory(handle.getParentFile());
-            dir = new RandomAccessFile(handle, "rw");
-            lock = dir.getChannel().lock();
-            output = new ObjectOutputStream(new GZIPOutputStream(
-                    new FileOutputStream(dir.getFD()), 8192));
+            File dir = handle.getParentFile();
+            createDirectory(dir);
+            temp = File.createTempFile(handle.getName(), ".tmp", dir);
+            output = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(temp), 8192),
+                    8192));
             output.writeInt(version);
-            output.writeObject(request);
+            output.writeInt(codec.getVersion());
+            codec.write(request, output);
+            output.close();
+            output = null;
+            written = temp.renameTo(handle);
+            if (!written)
+                Log.d(TAG, "Unable to replace cache " + handle.getName());
         } catch (IOException e) {
             Log.d(TAG, "Exception writing cache " + handle.getName(), e);
-            return null;
         } finally {
             if (output != null)
                 try {
@@ -80,19 +99,9 @@ public class RequestWriter {
                 } catch (IOException e) {
                     Log.d(TAG, "Exception closing stream", e);
                 }
-            if (lock != null)
-                try {
-                    lock.release();
-                } catch (IOException e) {
-                    Log.d(TAG, "Exception unlocking file", e);
-                }
-            if (dir != null)
-                try {
-                    dir.close();
-                } catch (IOException e) {
-                    Log.d(TAG, "Exception closing file", e);
-                }
+            if (!written && temp != null)
+                temp.delete();
         }
-        return request;
+        return written ? request : null;
     }
 }
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.github.mobile.util.FileCache;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of API response bodies along with the validators needed to
+ * make conditional requests for them
+ * <p>
+ * Entries are keyed by request URI and the account the request was made for
+ */
+@Singleton
+public class ResponseCache {
+
+    private static final String TAG = "ResponseCache";
+
+    /**
+     * Format version to bump if the entry format changes
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Maximum number of bytes to keep on disk before evicting the least
+     * recently used entries
+     */
+    private static final long MAX_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Cached response
+     */
+    public static class Entry {
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final String links;
+
+        private final byte[] body;
+
+        /**
+         * Create entry
+         *
+         * @param etag
+         * @param lastModified
+         * @param links
+         * @param body
+         */
+        public Entry(final String etag, final String lastModified,
+                final String links, final byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.links = links;
+            this.body = body;
+        }
+
+        /**
+         * @return ETag header value, may be null
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return Last-Modified header value, may be null
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return Link header value, may be null
+         */
+        public String getLinks() {
+            return links;
+        }
+
+        /**
+         * @return response body
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Does this entry have a validator that can be used for a
+         * conditional request?
+         *
+         * @return true if validator present, false otherwise
+         */
+        public boolean isConditional() {
+            return !TextUtils.isEmpty(etag) || !TextUtils.isEmpty(lastModified);
+        }
+    }
+
+    private final FileCache files;
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private final ThreadLocal<long[]> threadBytesReceived = new ThreadLocal<long[]>() {
+
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * Create response cache for context
+     *
+     * @param context
+     */
+    @Inject
+    public ResponseCache(final Context context) {
+        this(new File(context.getCacheDir(), "responses"));
+    }
+
+    /**
+     * Create response cache in directory
+     *
+     * @param dir
+     */
+    public ResponseCache(final File dir) {
+        files = new FileCache(dir, MAX_SIZE);
+    }
+
+    private static String readNullable(final DataInputStream input)
+            throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeNullable(final DataOutputStream output,
+            final String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null)
+            output.writeUTF(value);
+    }
+
+    /**
+     * Get cached entry for key
+     *
+     * @param key
+     * @return entry or null if not cached
+     */
+    public Entry get(final String key) {
+        final File file = files.get(key);
+        if (file == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            if (input.readInt() != FORMAT_VERSION) {
+                misses.incrementAndGet();
+                return null;
+            }
+            String etag = readNullable(input);
+            String lastModified = readNullable(input);
+            String links = readNullable(input);
+            byte[] body = new byte[input.readInt()];
+            input.readFully(body);
+            hits.incrementAndGet();
+            return new Entry(etag, lastModified, links, body);
+        } catch (IOException e) {
+            Log.d(TAG, "Exception reading cached response", e);
+            misses.incrementAndGet();
+            return null;
+        } finally {
+            if (input != null)
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    Log.d(TAG, "Exception closing stream", e);
+                }
+        }
+    }
+
+    /**
+     * Store entry for key
+     *
+     * @param key
+     * @param entry
+     * @return this cache
+     */
+    public ResponseCache put(final String key, final Entry entry) {
+        DataOutputStream output = null;
+        File temp = null;
+        boolean written = false;
+        try {
+            temp = files.createTempFile();
+            output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)));
+            output.writeInt(FORMAT_VERSION);
+            writeNullable(output, entry.etag);
+            writeNullable(output, entry.lastModified);
+            writeNullable(output, entry.links);
+            output.writeInt(entry.body.length);
+            output.write(entry.body);
+            written = true;
+        } catch (IOException e) {
+            Log.d(TAG, "Exception writing cached response", e);
+        } finally {
+            if (output != null)
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Log.d(TAG, "Exception closing stream", e);
+                    written = false;
+                }
+        }
+
+        if (written)
+            files.commit(temp, key);
+        else if (temp != null)
+            temp.delete();
+        return this;
+    }
+
+    /**
+     * Remove entry for key
+     *
+     * @param key
+     * @return this cache
+     */
+    public ResponseCache remove(final String key) {
+        files.remove(key);
+        return this;
+    }
+
+    /**
+     * Record that the server confirmed a cached entry was not modified
+     *
+     * @return this cache
+     */
+    public ResponseCache notModified() {
+        notModified.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Record that a response body was downloaded
+     *
+     * @param length
+     * @return this cache
+     */
+    public ResponseCache received(final long length) {
+        bytesReceived.addAndGet(length);
+        threadBytesReceived.get()[0] += length;
+        return this;
+    }
+
+    /**
+     * @return number of lookups that found a cached entry
+     */
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of lookups that did not find a cached entry
+     */
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of cached entries served because of a 304 response
+     */
+    public int getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    /**
+     * @return number of response body bytes downloaded from the network
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return number of response body bytes downloaded from the network by
+     *         the calling thread
+     */
+    public long getThreadBytesReceived() {
+        return threadBytesReceived.get()[0];
+    }
+}
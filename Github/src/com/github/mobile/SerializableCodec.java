@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Codec that uses Java serialization
+ * <p>
+ * Used for object graphs that do not have a binary codec in
+ * {@link RequestCodecs}
+ *
+ * @param <V>
+ */
+public class SerializableCodec<V> implements RequestCodec<V> {
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void write(final V value, final DataOutputStream output)
+            throws IOException {
+        ObjectOutputStream objects = new ObjectOutputStream(output);
+        objects.writeObject(value);
+        objects.flush();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V read(final DataInputStream input) throws IOException {
+        try {
+            return (V) new ObjectInputStream(input).readObject();
+        } catch (ClassNotFoundException e) {
+            IOException ioException = new IOException(
+                    "Class of cached object not found");
+            ioException.initCause(e);
+            throw ioException;
+        }
+    }
+}
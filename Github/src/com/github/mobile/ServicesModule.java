@@ -15,6 +15,7 @@
  */
 package com.github.mobile;
 
+import com.github.mobile.core.code.TreeService;
 import com.github.mobile.core.search.SearchUserService;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
@@ -123,6 +124,11 @@ public class ServicesModule extends AbstractModule {
         return new DataService(client);
     }
 
+    @Provides
+    TreeService treeService(GitHubClient client) {
+        return new TreeService(client);
+    }
+
     @Provides
     MarkdownService markdownService(GitHubClient client) {
         return new MarkdownService(client);
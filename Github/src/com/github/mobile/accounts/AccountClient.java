@@ -20,6 +20,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.github.mobile.DefaultClient;
+import com.github.mobile.ResponseCache;
 import com.google.inject.Provider;
 
 import java.net.HttpURLConnection;
@@ -47,6 +48,25 @@ public class AccountClient extends DefaultClient {
         this.accountProvider = accountProvider;
     }
 
+    /**
+     * Create account-aware client that makes conditional requests using the
+     * given cache
+     *
+     * @param accountProvider
+     * @param cache
+     */
+    public AccountClient(final Provider<GitHubAccount> accountProvider,
+            final ResponseCache cache) {
+        this(accountProvider);
+
+        setResponseCache(cache);
+    }
+
+    @Override
+    protected String getCacheKey(final String uri) {
+        return accountProvider.get().getUsername() + '@' + uri;
+    }
+
     @Override
     protected HttpURLConnection configureRequest(final HttpURLConnection request) {
         GitHubAccount account = accountProvider.get();
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core;
+
+import android.content.Context;
+
+import com.github.mobile.RequestCodec;
+import com.github.mobile.RequestCodecs;
+import com.github.mobile.SerializableCodec;
+import com.github.mobile.core.commit.CommitUtils;
+import com.github.mobile.util.ObjectCache;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.File;
+
+import org.eclipse.egit.github.core.Blob;
+import org.eclipse.egit.github.core.Commit;
+import org.eclipse.egit.github.core.IRepositoryIdProvider;
+import org.eclipse.egit.github.core.RepositoryCommit;
+import org.eclipse.egit.github.core.Tree;
+
+/**
+ * Persistent cache of Git objects keyed by repository and SHA-1
+ * <p>
+ * Objects addressed by SHA-1 never change so entries are only evicted to stay
+ * under the maximum size. Only full SHA-1s are cached since abbreviated ones
+ * may become ambiguous.
+ */
+@Singleton
+public class GitObjectCache {
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Maximum number of bytes of objects to keep on disk
+     */
+    private static final long MAX_SIZE = 20 * 1024 * 1024;
+
+    private static final String TYPE_REPOSITORY_COMMIT = "repocommit";
+
+    private static final String TYPE_COMMIT = "commit";
+
+    private static final String TYPE_TREE = "tree";
+
+    private static final String TYPE_RECURSIVE_TREE = "rtree";
+
+    private static final String TYPE_BLOB = "blob";
+
+    private static String getKey(final IRepositoryIdProvider repository,
+            final String type, final String sha) {
+        return repository.generateId() + '/' + type + '/' + sha;
+    }
+
+    private final ObjectCache cache;
+
+    /**
+     * Create cache for context
+     *
+     * @param context
+     */
+    @Inject
+    public GitObjectCache(final Context context) {
+        cache = new ObjectCache(new File(context.getCacheDir(), "objects"),
+                MAX_SIZE, FORMAT_VERSION);
+    }
+
+    private <V> V get(final IRepositoryIdProvider repository,
+            final String type, final String sha, final RequestCodec<V> codec) {
+        if (!CommitUtils.isFullSha(sha))
+            return null;
+        return cache.get(getKey(repository, type, sha), codec);
+    }
+
+    private <V> V put(final IRepositoryIdProvider repository,
+            final String type, final String sha, final V object,
+            final RequestCodec<V> codec) {
+        if (object != null && CommitUtils.isFullSha(sha))
+            cache.put(getKey(repository, type, sha), object, codec);
+        return object;
+    }
+
+    /**
+     * Get commit with its files and stats
+     *
+     * @param repository
+     * @param sha
+     * @return commit or null if not cached
+     */
+    public RepositoryCommit getRepositoryCommit(
+            final IRepositoryIdProvider repository, final String sha) {
+        return get(repository, TYPE_REPOSITORY_COMMIT, sha,
+                new SerializableCodec<RepositoryCommit>());
+    }
+
+    /**
+     * Cache commit with its files and stats
+     *
+     * @param repository
+     * @param commit
+     * @return commit
+     */
+    public RepositoryCommit putRepositoryCommit(
+            final IRepositoryIdProvider repository,
+            final RepositoryCommit commit) {
+        return put(repository, TYPE_REPOSITORY_COMMIT, commit.getSha(), commit,
+                new SerializableCodec<RepositoryCommit>());
+    }
+
+    /**
+     * Get commit
+     *
+     * @param repository
+     * @param sha
+     * @return commit or null if not cached
+     */
+    public Commit getCommit(final IRepositoryIdProvider repository,
+            final String sha) {
+        return get(repository, TYPE_COMMIT, sha,
+                new SerializableCodec<Commit>());
+    }
+
+    /**
+     * Cache commit
+     *
+     * @param repository
+     * @param commit
+     * @return commit
+     */
+    public Commit putCommit(final IRepositoryIdProvider repository,
+            final Commit commit) {
+        return put(repository, TYPE_COMMIT, commit.getSha(), commit,
+                new SerializableCodec<Commit>());
+    }
+
+    /**
+     * Get tree
+     *
+     * @param repository
+     * @param sha
+     * @param recursive
+     * @return tree or null if not cached
+     */
+    public Tree getTree(final IRepositoryIdProvider repository,
+            final String sha, final boolean recursive) {
+        return get(repository, recursive ? TYPE_RECURSIVE_TREE : TYPE_TREE,
+                sha, RequestCodecs.TREE);
+    }
+
+    /**
+     * Cache tree
+     *
+     * @param repository
+     * @param tree
+     * @param recursive
+     * @return tree
+     */
+    public Tree putTree(final IRepositoryIdProvider repository,
+            final Tree tree, final boolean recursive) {
+        return put(repository, recursive ? TYPE_RECURSIVE_TREE : TYPE_TREE,
+                tree.getSha(), tree, RequestCodecs.TREE);
+    }
+
+    /**
+     * Get blob
+     *
+     * @param repository
+     * @param sha
+     * @return blob or null if not cached
+     */
+    public Blob getBlob(final IRepositoryIdProvider repository,
+            final String sha) {
+        return get(repository, TYPE_BLOB, sha, RequestCodecs.BLOB);
+    }
+
+    /**
+     * Cache blob
+     *
+     * @param repository
+     * @param sha
+     * @param blob
+     * @return blob
+     */
+    public Blob putBlob(final IRepositoryIdProvider repository,
+            final String sha, final Blob blob) {
+        return put(repository, TYPE_BLOB, sha, blob, RequestCodecs.BLOB);
+    }
+}
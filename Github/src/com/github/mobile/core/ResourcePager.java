@@ -15,23 +15,75 @@
  */
 package com.github.mobile.core;
 
+import android.util.Log;
+
+import com.github.mobile.accounts.AccountScope;
+import com.github.mobile.accounts.GitHubAccount;
+
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.egit.github.core.client.NoSuchPageException;
 import org.eclipse.egit.github.core.client.PageIterator;
 
 /**
  * Generic resource pager for elements with an id that can be paged
+ * <p>
+ * Once an account is set with {@link #setAccount(AccountScope, GitHubAccount)}
+ * the pages after the last one loaded are requested in the background so they
+ * are ready by the time {@link #next()} is called, and the pages restored by
+ * the first call to {@link #next()} after {@link #clear()} are requested
+ * concurrently and added in order.
  *
  * @param <E>
  */
 public abstract class ResourcePager<E> {
 
+    private static final String TAG = "ResourcePager";
+
+    /**
+     * Default number of pages to request ahead of the last page loaded
+     */
+    public static final int DEFAULT_PREFETCH_DEPTH = 1;
+
+    /**
+     * Default maximum number of concurrent page requests
+     */
+    public static final int DEFAULT_MAX_REQUESTS = 4;
+
+    private static final ExecutorService REQUESTS = Executors
+            .newCachedThreadPool();
+
+    /**
+     * Page of resources and whether more pages follow it
+     *
+     * @param <E>
+     */
+    private static class Page<E> {
+
+        private final Collection<E> resources;
+
+        private final boolean hasNext;
+
+        private Page(final Collection<E> resources, final boolean hasNext) {
+            this.resources = resources;
+            this.hasNext = hasNext;
+        }
+    }
+
     /**
      * Next page to request
      */
@@ -42,16 +94,83 @@ public abstract class ResourcePager<E> {
      */
     protected int count = 1;
 
+    /**
+     * Immutable view of the first resources in an array
+     * <p>
+     * Resources are only ever appended past the end of a view so creating one
+     * does not copy the resources.
+     *
+     * @param <E>
+     */
+    private static class Snapshot<E> extends AbstractList<E> implements
+            RandomAccess {
+
+        private final Object[] array;
+
+        private final int size;
+
+        private Snapshot(final Object[] array, final int size) {
+            this.array = array;
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public E get(final int location) {
+            if (location < 0 || location >= size)
+                throw new IndexOutOfBoundsException();
+            return (E) array[location];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Object[] toArray() {
+            Object[] copy = new Object[size];
+            System.arraycopy(array, 0, copy, 0, size);
+            return copy;
+        }
+    }
+
     /**
      * All resources retrieved
      */
     protected final Map<Object, E> resources = new LinkedHashMap<Object, E>();
 
+    /**
+     * Resources in the order of {@link #resources}
+     */
+    private Object[] ordered = new Object[0];
+
+    /**
+     * Last snapshot returned from {@link #getResources()}, null if resources
+     * have been added or replaced since
+     */
+    private Snapshot<E> snapshot;
+
+    /**
+     * Number of resources visible to snapshots that may still be in use
+     */
+    private int shared;
+
     /**
      * Are more pages available?
      */
     protected boolean hasMore;
 
+    private int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+
+    private int maxRequests = DEFAULT_MAX_REQUESTS;
+
+    private AccountScope accountScope;
+
+    private GitHubAccount account;
+
+    private final Map<Integer, Future<Page<E>>> prefetched = new HashMap<Integer, Future<Page<E>>>();
+
     /**
      * Reset the number of the next page to be requested from {@link #next()}
      * and clear all stored state
@@ -73,7 +192,68 @@ public abstract class ResourcePager<E> {
         count = Math.max(1, page - 1);
         page = 1;
         resources.clear();
+        ordered = new Object[0];
+        snapshot = null;
+        shared = 0;
         hasMore = true;
+        synchronized (prefetched) {
+            for (Future<Page<E>> request : prefetched.values())
+                request.cancel(true);
+            prefetched.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Set account to make background page requests with
+     * <p>
+     * Pages are only requested in the background or concurrently once an
+     * account is set since requests are made outside of the calling thread's
+     * account scope.
+     *
+     * @param accountScope
+     * @param account
+     * @return this pager
+     */
+    public ResourcePager<E> setAccount(final AccountScope accountScope,
+            final GitHubAccount account) {
+        this.accountScope = accountScope;
+        this.account = account;
+        return this;
+    }
+
+    /**
+     * Set number of pages to request ahead of the last page loaded
+     * <p>
+     * Pagers that are not random access never request more than one page
+     * ahead.
+     *
+     * @param prefetchDepth
+     *            0 to disable prefetching
+     * @return this pager
+     */
+    public ResourcePager<E> setPrefetchDepth(final int prefetchDepth) {
+        this.prefetchDepth = Math.max(0, prefetchDepth);
+        return this;
+    }
+
+    /**
+     * Get number of pages requested ahead of the last page loaded
+     *
+     * @return prefetch depth
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * Set maximum number of page requests this pager makes concurrently
+     *
+     * @param maxRequests
+     * @return this pager
+     */
+    public ResourcePager<E> setMaxRequests(final int maxRequests) {
+        this.maxRequests = Math.max(1, maxRequests);
         return this;
     }
 
@@ -88,11 +268,19 @@ public abstract class ResourcePager<E> {
 
     /**
      * Get resources
+     * <p>
+     * The returned list is immutable and does not change as more pages are
+     * loaded. The same list is returned until resources are added or
+     * replaced.
      *
      * @return resources
      */
     public List<E> getResources() {
-        return new ArrayList<E>(resources.values());
+        if (snapshot == null) {
+            snapshot = new Snapshot<E>(ordered, resources.size());
+            shared = resources.size();
+        }
+        return snapshot;
     }
 
     /**
@@ -102,21 +290,13 @@ public abstract class ResourcePager<E> {
      * @throws IOException
      */
     public boolean next() throws IOException {
-        boolean emptyPage = false;
-        PageIterator<E> iterator = createIterator(page, -1);
+        boolean more;
         try {
-            for (int i = 0; i < count && iterator.hasNext(); i++) {
-                Collection<E> resourcePage = iterator.next();
-                emptyPage = resourcePage.isEmpty();
-                if (emptyPage)
-                    break;
-                for (E resource : resourcePage) {
-                    resource = register(resource);
-                    if (resource == null)
-                        continue;
-                    resources.put(getId(resource), resource);
-                }
-            }
+            if (count > 1 && isRandomAccess() && account != null)
+                more = restore();
+            else
+                more = load();
+
             // Set page to count value if first call after call to reset()
             if (count > 1) {
                 page = count;
@@ -128,10 +308,201 @@ public abstract class ResourcePager<E> {
             hasMore = false;
             throw e.getCause();
         }
-        hasMore = iterator.hasNext() && !emptyPage;
+        hasMore = more;
+        if (hasMore)
+            prefetch();
         return hasMore;
     }
 
+    private boolean load() throws IOException {
+        if (count == 1) {
+            Page<E> fetched = getPrefetched(page);
+            if (fetched != null)
+                return add(fetched);
+        }
+
+        boolean emptyPage = false;
+        PageIterator<E> iterator = createIterator(page, -1);
+        for (int i = 0; i < count && iterator.hasNext(); i++) {
+            Collection<E> resourcePage = iterator.next();
+            emptyPage = resourcePage.isEmpty();
+            if (emptyPage)
+                break;
+            add(resourcePage);
+        }
+        return iterator.hasNext() && !emptyPage;
+    }
+
+    /**
+     * Request the pages up to {@link #count} concurrently and add them in
+     * order until a page is empty or the last page is reached
+     *
+     * @return true if more pages
+     * @throws IOException
+     */
+    private boolean restore() throws IOException {
+        final List<Future<Page<E>>> requests = new ArrayList<Future<Page<E>>>(
+                count);
+        try {
+            boolean more = true;
+            for (int i = 0; i < count && more; i++) {
+                while (requests.size() < count
+                        && requests.size() - i < maxRequests)
+                    requests.add(request(createIterator(requests.size() + 1,
+                            -1)));
+                more = add(await(requests.get(i)));
+            }
+            return more;
+        } finally {
+            for (Future<Page<E>> request : requests)
+                request.cancel(true);
+        }
+    }
+
+    private void prefetch() {
+        if (account == null)
+            return;
+
+        int depth = Math.min(prefetchDepth, maxRequests);
+        if (!isRandomAccess())
+            depth = Math.min(depth, 1);
+        synchronized (prefetched) {
+            for (int i = 0; i < depth; i++)
+                if (!prefetched.containsKey(page + i))
+                    prefetched.put(page + i,
+                            request(createIterator(page + i, -1)));
+        }
+    }
+
+    /**
+     * Get page that was requested in the background
+     *
+     * @param number
+     * @return page or null if not requested or the request failed
+     * @throws IOException
+     */
+    private Page<E> getPrefetched(final int number) throws IOException {
+        final Future<Page<E>> request;
+        synchronized (prefetched) {
+            request = prefetched.remove(number);
+        }
+        if (request == null)
+            return null;
+
+        try {
+            return await(request);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            Log.d(TAG, "Exception prefetching page " + number, e);
+            return null;
+        } catch (NoSuchPageException e) {
+            Log.d(TAG, "Exception prefetching page " + number, e);
+            return null;
+        }
+    }
+
+    private boolean add(final Page<E> page) {
+        if (page.resources.isEmpty())
+            return false;
+        add(page.resources);
+        return page.hasNext;
+    }
+
+    /**
+     * Register and add resources after those already loaded
+     * <p>
+     * Resources with the id of a loaded resource replace it at its position
+     *
+     * @param resourcePage
+     */
+    protected void add(final Collection<E> resourcePage) {
+        for (E resource : resourcePage) {
+            resource = register(resource);
+            if (resource == null)
+                continue;
+            int size = resources.size();
+            E previous = resources.put(getId(resource), resource);
+            if (previous == null)
+                append(resource, size);
+            else if (previous != resource)
+                replace(previous, resource);
+            else
+                // Stores may update registered resources in place
+                snapshot = null;
+        }
+    }
+
+    private void append(final E resource, final int index) {
+        if (index == ordered.length) {
+            Object[] grown = new Object[Math.max(16, index * 2)];
+            System.arraycopy(ordered, 0, grown, 0, index);
+            ordered = grown;
+        }
+        ordered[index] = resource;
+        snapshot = null;
+    }
+
+    /**
+     * Replace resource at the position it was first added
+     * <p>
+     * The resources are copied first when the position is visible to a
+     * snapshot so snapshots never change.
+     *
+     * @param previous
+     * @param resource
+     */
+    private void replace(final E previous, final E resource) {
+        int index = resources.size() - 1;
+        while (index >= 0 && ordered[index] != previous)
+            index--;
+        if (index < 0)
+            return;
+        if (index < shared) {
+            ordered = ordered.clone();
+            shared = 0;
+        }
+        ordered[index] = resource;
+        snapshot = null;
+    }
+
+    private Future<Page<E>> request(final PageIterator<E> iterator) {
+        final AccountScope accountScope = this.accountScope;
+        final GitHubAccount account = this.account;
+        return REQUESTS.submit(new Callable<Page<E>>() {
+
+            @Override
+            public Page<E> call() throws Exception {
+                accountScope.enterWith(account);
+                try {
+                    Collection<E> resourcePage = iterator.next();
+                    return new Page<E>(resourcePage, iterator.hasNext());
+                } finally {
+                    accountScope.exit();
+                }
+            }
+        });
+    }
+
+    private static <E> Page<E> await(final Future<Page<E>> request)
+            throws IOException {
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
     /**
      * Are more pages available to request?
      *
@@ -154,6 +525,19 @@ public abstract class ResourcePager<E> {
         return resource;
     }
 
+    /**
+     * Can pages be requested by number independently of the resources
+     * registered from the pages before them?
+     * <p>
+     * Sub-classes whose pages depend on earlier pages should override and
+     * return false so pages are only requested one at a time and in order
+     *
+     * @return true if random access, false otherwise
+     */
+    protected boolean isRandomAccess() {
+        return true;
+    }
+
     /**
      * Get id for resource
      *
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core.code;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.egit.github.core.TreeEntry;
+
+/**
+ * Fuzzy finder of files by path
+ * <p>
+ * A query matches a path when its characters appear in order in the path,
+ * ignoring case. Matches are ranked higher when the matched characters are
+ * consecutive, start path segments or words, and fall in the file name. Ties
+ * are ranked by shorter path.
+ * <p>
+ * Each path and file name is indexed with a mask of the characters it
+ * contains so most paths are rejected without being scanned, and a query that
+ * extends the previous query only scans the paths that matched the previous
+ * query.
+ * Instances are not thread-safe.
+ */
+public class FileFinder {
+
+    private static final int SCORE_MATCH = 1;
+
+    private static final int SCORE_CONSECUTIVE = 4;
+
+    private static final int SCORE_BOUNDARY = 6;
+
+    private static final int SCORE_NAME = 2;
+
+    private static final int SCORE_NAME_START = 10;
+
+    private static long getMask(final char c) {
+        if (c >= 'a' && c <= 'z')
+            return 1L << (c - 'a');
+        if (c >= '0' && c <= '9')
+            return 1L << (26 + c - '0');
+        return 1L << (36 + c % 28);
+    }
+
+    private static char toLower(final char c) {
+        if (c >= 'A' && c <= 'Z')
+            return (char) (c + ('a' - 'A'));
+        if (c < 128)
+            return c;
+        return Character.toLowerCase(c);
+    }
+
+    private static boolean isBoundary(final String path, final int index) {
+        if (index == 0)
+            return true;
+        char previous = path.charAt(index - 1);
+        switch (previous) {
+        case '/':
+        case '-':
+        case '_':
+        case '.':
+        case ' ':
+            return true;
+        default:
+            if (previous < 'a' || previous > 'z')
+                return false;
+            char current = path.charAt(index);
+            return current >= 'A' && current <= 'Z';
+        }
+    }
+
+    private final TreeEntry[] files;
+
+    private final String[] paths;
+
+    private final long[] masks;
+
+    private final long[] nameMasks;
+
+    private final int[] nameStarts;
+
+    private String lastQuery = "";
+
+    private int[] lastMatches;
+
+    private int lastMatchCount;
+
+    /**
+     * Create finder over files
+     * <p>
+     * This should not be called on the UI thread for large trees
+     *
+     * @param files
+     */
+    public FileFinder(final List<TreeEntry> files) {
+        int count = files.size();
+        this.files = files.toArray(new TreeEntry[count]);
+        paths = new String[count];
+        masks = new long[count];
+        nameMasks = new long[count];
+        nameStarts = new int[count];
+        for (int i = 0; i < count; i++) {
+            String path = this.files[i].getPath();
+            paths[i] = path;
+            int nameStart = path.lastIndexOf('/') + 1;
+            nameStarts[i] = nameStart;
+            long mask = 0;
+            for (int j = 0; j < nameStart; j++)
+                mask |= getMask(toLower(path.charAt(j)));
+            long nameMask = 0;
+            for (int j = nameStart; j < path.length(); j++)
+                nameMask |= getMask(toLower(path.charAt(j)));
+            masks[i] = mask | nameMask;
+            nameMasks[i] = nameMask;
+        }
+    }
+
+    /**
+     * Get number of files indexed
+     *
+     * @return file count
+     */
+    public int size() {
+        return files.length;
+    }
+
+    /**
+     * Find files matching query
+     *
+     * @param query
+     * @param limit
+     *            maximum number of files to return
+     * @return files ordered by descending rank
+     */
+    public List<TreeEntry> find(final String query, final int limit) {
+        final int length = query.length();
+        if (length == 0 || limit <= 0) {
+            lastQuery = "";
+            lastMatches = null;
+            return Collections.emptyList();
+        }
+
+        final char[] chars = new char[length];
+        long queryMask = 0;
+        for (int i = 0; i < length; i++) {
+            chars[i] = toLower(query.charAt(i));
+            queryMask |= getMask(chars[i]);
+        }
+
+        // Only the previous matches can match a query that extends it
+        final boolean narrowing = lastMatches != null
+                && lastQuery.length() > 0 && query.startsWith(lastQuery);
+        final int candidates = narrowing ? lastMatchCount : files.length;
+        final int[] matches = new int[candidates];
+        int matchCount = 0;
+
+        final int[] topFiles = new int[limit];
+        final int[] topScores = new int[limit];
+        int topCount = 0;
+
+        for (int c = 0; c < candidates; c++) {
+            final int file = narrowing ? lastMatches[c] : c;
+            if ((masks[file] & queryMask) != queryMask)
+                continue;
+            final int score = score(file, chars, queryMask);
+            if (score < 0)
+                continue;
+            matches[matchCount++] = file;
+
+            if (topCount == limit && !isBetter(file, score,
+                    topFiles[limit - 1], topScores[limit - 1]))
+                continue;
+            int index = topCount < limit ? topCount++ : limit - 1;
+            while (index > 0
+                    && isBetter(file, score, topFiles[index - 1],
+                            topScores[index - 1])) {
+                topFiles[index] = topFiles[index - 1];
+                topScores[index] = topScores[index - 1];
+                index--;
+            }
+            topFiles[index] = file;
+            topScores[index] = score;
+        }
+
+        lastQuery = query;
+        lastMatches = matches;
+        lastMatchCount = matchCount;
+
+        List<TreeEntry> found = new ArrayList<TreeEntry>(topCount);
+        for (int i = 0; i < topCount; i++)
+            found.add(files[topFiles[i]]);
+        return found;
+    }
+
+    private boolean isBetter(final int file, final int score,
+            final int otherFile, final int otherScore) {
+        if (score != otherScore)
+            return score > otherScore;
+        int lengthCompare = paths[file].length() - paths[otherFile].length();
+        if (lengthCompare != 0)
+            return lengthCompare < 0;
+        return paths[file].compareTo(paths[otherFile]) < 0;
+    }
+
+    /**
+     * Score path against lower case query
+     * <p>
+     * Characters are matched greedily in the file name when all of them
+     * appear there and in the whole path otherwise
+     *
+     * @param file
+     * @param query
+     * @param queryMask
+     * @return score or -1 if the path does not match
+     */
+    private int score(final int file, final char[] query,
+            final long queryMask) {
+        final String path = paths[file];
+        final int nameStart = nameStarts[file];
+        if ((nameMasks[file] & queryMask) == queryMask) {
+            int score = score(path, nameStart, nameStart, query);
+            if (score >= 0)
+                return score;
+        }
+        return score(path, 0, nameStart, query);
+    }
+
+    private static int score(final String path, final int from,
+            final int nameStart, final char[] query) {
+        final int pathLength = path.length();
+        final int length = query.length;
+        int score = 0;
+        int previous = -2;
+        int q = 0;
+        for (int i = from; i < pathLength; i++) {
+            if (toLower(path.charAt(i)) != query[q])
+                continue;
+            score += SCORE_MATCH;
+            if (i == previous + 1)
+                score += SCORE_CONSECUTIVE;
+            if (isBoundary(path, i))
+                score += SCORE_BOUNDARY;
+            if (i >= nameStart) {
+                score += SCORE_NAME;
+                if (i == nameStart && q == 0)
+                    score += SCORE_NAME_START;
+            }
+            previous = i;
+            if (++q == length)
+                return score;
+        }
+        return -1;
+    }
+}
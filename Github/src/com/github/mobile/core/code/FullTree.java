@@ -23,9 +23,12 @@ import android.text.TextUtils;
 import com.github.mobile.core.commit.CommitUtils;
 import com.github.mobile.core.ref.RefUtils;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.RandomAccess;
 
 import org.eclipse.egit.github.core.Reference;
 import org.eclipse.egit.github.core.Tree;
@@ -33,6 +36,14 @@ import org.eclipse.egit.github.core.TreeEntry;
 
 /**
  * {@link Tree} with additional information
+ * <p>
+ * Entries are indexed into flat arrays where each folder's children occupy a
+ * sorted range, folders first and then files. {@link Entry} and
+ * {@link Folder} objects are only created as they are requested.
+ * <p>
+ * A tree created from a non-recursive {@link Tree} only knows the entries of
+ * the root folder and the entries of other folders are added through
+ * {@link #load(Folder, Tree)} as they are fetched.
  */
 public class FullTree {
 
@@ -56,16 +67,10 @@ public class FullTree {
          */
         public final String name;
 
-        private Entry() {
-            this.parent = null;
-            this.entry = null;
-            this.name = null;
-        }
-
-        private Entry(TreeEntry entry, Folder parent) {
+        private Entry(TreeEntry entry, Folder parent, String name) {
             this.entry = entry;
             this.parent = parent;
-            this.name = CommitUtils.getName(entry.getPath());
+            this.name = name;
         }
 
         @Override
@@ -79,76 +84,123 @@ public class FullTree {
      */
     public static class Folder extends Entry {
 
+        private final FullTree tree;
+
+        private final int node;
+
+        private Folder(FullTree tree, int node, Folder parent) {
+            super(tree.entries[node], parent, tree.names[node]);
+
+            this.tree = tree;
+            this.node = node;
+        }
+
         /**
-         * Sub folders
+         * Are the entries of this folder loaded?
+         *
+         * @return true if loaded, false otherwise
          */
-        public final Map<String, Folder> folders = new TreeMap<String, Folder>(
-                CASE_INSENSITIVE_ORDER);
+        public boolean isLoaded() {
+            return tree.loaded[node];
+        }
 
         /**
-         * Files
+         * Get number of sub folders
+         *
+         * @return folder count
          */
-        public final Map<String, Entry> files = new TreeMap<String, Entry>(
-                CASE_INSENSITIVE_ORDER);
+        public int getFolderCount() {
+            return tree.folderCounts[node];
+        }
 
-        private Folder() {
-            super();
+        /**
+         * Get number of files
+         *
+         * @return file count
+         */
+        public int getFileCount() {
+            return tree.fileCounts[node];
         }
 
-        private Folder(TreeEntry entry, Folder parent) {
-            super(entry, parent);
+        /**
+         * Get sub folders sorted by name
+         *
+         * @return folders
+         */
+        public List<Folder> getFolders() {
+            return new Children<Folder>(tree, tree.childStarts[node],
+                    getFolderCount());
         }
 
-        private void addFile(TreeEntry entry, String[] pathSegments, int index) {
-            if (index == pathSegments.length - 1) {
-                Entry file = new Entry(entry, this);
-                files.put(file.name, file);
-            } else {
-                Folder folder = folders.get(pathSegments[index]);
-                if (folder != null)
-                    folder.addFile(entry, pathSegments, index + 1);
-            }
+        /**
+         * Get files sorted by name
+         *
+         * @return files
+         */
+        public List<Entry> getFiles() {
+            return new Children<Entry>(tree, tree.childStarts[node]
+                    + getFolderCount(), getFileCount());
         }
 
-        private void addFolder(TreeEntry entry, String[] pathSegments, int index) {
-            if (index == pathSegments.length - 1) {
-                Folder folder = new Folder(entry, this);
-                folders.put(folder.name, folder);
-            } else {
-                Folder folder = folders.get(pathSegments[index]);
-                if (folder != null)
-                    folder.addFolder(entry, pathSegments, index + 1);
+        /**
+         * Get sub folder with name
+         *
+         * @param name
+         * @return folder or null if no sub folder has the name
+         */
+        public Folder getFolder(final String name) {
+            int low = tree.childStarts[node];
+            int high = low + getFolderCount() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int compare = compareNames(tree.names[tree.children[mid]],
+                        name);
+                if (compare < 0)
+                    low = mid + 1;
+                else if (compare > 0)
+                    high = mid - 1;
+                else
+                    return (Folder) tree.getEntry(tree.children[mid]);
             }
+            return null;
         }
+    }
 
-        private void add(final TreeEntry entry) {
-            String type = entry.getType();
-            String path = entry.getPath();
-            if (TextUtils.isEmpty(path))
-                return;
-
-            if (TYPE_BLOB.equals(type)) {
-                String[] segments = path.split("/");
-                if (segments.length > 1) {
-                    Folder folder = folders.get(segments[0]);
-                    if (folder != null)
-                        folder.addFile(entry, segments, 1);
-                } else if (segments.length == 1) {
-                    Entry file = new Entry(entry, this);
-                    files.put(file.name, file);
-                }
-            } else if (TYPE_TREE.equals(type)) {
-                String[] segments = path.split("/");
-                if (segments.length > 1) {
-                    Folder folder = folders.get(segments[0]);
-                    if (folder != null)
-                        folder.addFolder(entry, segments, 1);
-                } else if (segments.length == 1) {
-                    Folder folder = new Folder(entry, this);
-                    folders.put(folder.name, folder);
-                }
-            }
+    /**
+     * Range of a folder's children in the flat child array
+     */
+    private static class Children<E extends Entry> extends AbstractList<E>
+            implements RandomAccess {
+
+        private final FullTree tree;
+
+        private final int start;
+
+        private final int size;
+
+        private Children(FullTree tree, int start, int size) {
+            this.tree = tree;
+            this.start = start;
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public E get(int location) {
+            if (location < 0 || location >= size)
+                throw new IndexOutOfBoundsException();
+            return (E) tree.getEntry(tree.children[start + location]);
         }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private static int compareNames(final String name1, final String name2) {
+        int compare = CASE_INSENSITIVE_ORDER.compare(name1, name2);
+        return compare != 0 ? compare : name1.compareTo(name2);
     }
 
     /**
@@ -172,20 +224,333 @@ public class FullTree {
     public final String branch;
 
     /**
-     * Create tree with branch
+     * Raw entries by node with the root at node 0
+     */
+    private TreeEntry[] entries;
+
+    /**
+     * Interned names by node
+     */
+    private String[] names;
+
+    /**
+     * Parent node by node
+     */
+    private int[] parents;
+
+    /**
+     * Start of each folder's range in {@link #children}
+     */
+    private int[] childStarts;
+
+    private int[] folderCounts;
+
+    private int[] fileCounts;
+
+    /**
+     * Whether each folder's entries are known
+     */
+    private boolean[] loaded;
+
+    /**
+     * Entries created so far by node
+     */
+    private Entry[] materialized;
+
+    private int nodeCount;
+
+    /**
+     * Child nodes grouped by parent, folders first and then files, each
+     * sorted by name
+     */
+    private int[] children;
+
+    private int childCount;
+
+    /**
+     * Interned names, only kept while folders remain to be loaded
+     */
+    private Map<String, String> segments;
+
+    /**
+     * Create tree with branch from a recursive {@link Tree}
      *
      * @param tree
      * @param reference
      */
     public FullTree(final Tree tree, final Reference reference) {
+        this(tree, reference, true);
+    }
+
+    /**
+     * Create tree with branch
+     *
+     * @param tree
+     * @param reference
+     * @param recursive
+     *            true if the tree contains all entries, false if it only
+     *            contains the entries of the root folder
+     */
+    public FullTree(final Tree tree, final Reference reference,
+            final boolean recursive) {
         this.tree = tree;
         this.reference = reference;
         this.branch = RefUtils.getName(reference);
 
-        root = new Folder();
-        List<TreeEntry> entries = tree.getTree();
-        if (entries != null && !entries.isEmpty())
-            for (TreeEntry entry : entries)
-                root.add(entry);
+        List<TreeEntry> treeEntries = tree.getTree();
+        int count = treeEntries != null ? treeEntries.size() : 0;
+
+        setCapacity(count + 1);
+
+        // Index folders by path so each entry's parent can be found
+        Map<String, Integer> folderNodes = new HashMap<String, Integer>();
+        segments = new HashMap<String, String>();
+        int nodes = 1;
+        for (int i = 0; i < count; i++) {
+            TreeEntry entry = treeEntries.get(i);
+            String type = entry.getType();
+            String path = entry.getPath();
+            if (TextUtils.isEmpty(path))
+                continue;
+            boolean folder = TYPE_TREE.equals(type);
+            if (!folder && !TYPE_BLOB.equals(type))
+                continue;
+
+            entries[nodes] = entry;
+            if (folder)
+                folderNodes.put(path, nodes);
+            nodes++;
+        }
+
+        // Resolve parents and count children, entries whose parent folder is
+        // missing from the tree are left unreachable
+        parents[0] = -1;
+        for (int node = 1; node < nodes; node++) {
+            String path = entries[node].getPath();
+            int lastSlash = path.lastIndexOf('/');
+            int parent = 0;
+            if (lastSlash != -1) {
+                Integer folder = folderNodes.get(path.substring(0, lastSlash));
+                if (folder == null) {
+                    parents[node] = -1;
+                    continue;
+                }
+                parent = folder;
+            }
+            parents[node] = parent;
+
+            names[node] = intern(path.substring(lastSlash + 1));
+            if (TYPE_TREE.equals(entries[node].getType())) {
+                folderCounts[parent]++;
+                loaded[node] = recursive;
+            } else
+                fileCounts[parent]++;
+        }
+        loaded[0] = true;
+        nodeCount = nodes;
+
+        int start = 0;
+        for (int node = 0; node < nodes; node++) {
+            childStarts[node] = start;
+            start += folderCounts[node] + fileCounts[node];
+        }
+        children = new int[start];
+
+        int[] folderEnds = new int[nodes];
+        int[] fileEnds = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            folderEnds[node] = childStarts[node];
+            fileEnds[node] = childStarts[node] + folderCounts[node];
+        }
+        for (int node = 1; node < nodes; node++) {
+            int parent = parents[node];
+            if (parent == -1)
+                continue;
+            if (TYPE_TREE.equals(entries[node].getType()))
+                children[folderEnds[parent]++] = node;
+            else
+                children[fileEnds[parent]++] = node;
+        }
+
+        childCount = start;
+
+        int[] scratch = new int[start];
+        for (int node = 0; node < nodes; node++)
+            sortChildren(node, scratch);
+
+        if (recursive)
+            segments = null;
+
+        root = new Folder(this, 0, null);
+        materialized[0] = root;
+    }
+
+    /**
+     * Add the entries of a folder from its non-recursive {@link Tree}
+     * <p>
+     * This must be called on the same thread that reads the folders of this
+     * tree.
+     *
+     * @param folder
+     * @param subtree
+     * @return true if added, false if the folder was already loaded
+     */
+    public boolean load(final Folder folder, final Tree subtree) {
+        final int node = folder.node;
+        if (loaded[node])
+            return false;
+
+        List<TreeEntry> treeEntries = subtree.getTree();
+        int count = treeEntries != null ? treeEntries.size() : 0;
+        if (nodeCount + count > entries.length)
+            setCapacity(Math.max(nodeCount + count, entries.length * 2));
+
+        final String prefix = folder.entry.getPath() + '/';
+        final int first = nodeCount;
+        for (int i = 0; i < count; i++) {
+            TreeEntry entry = treeEntries.get(i);
+            String type = entry.getType();
+            String name = CommitUtils.getName(entry.getPath());
+            if (TextUtils.isEmpty(name))
+                continue;
+            if (TYPE_TREE.equals(type))
+                folderCounts[node]++;
+            else if (TYPE_BLOB.equals(type))
+                fileCounts[node]++;
+            else
+                continue;
+
+            entry.setPath(prefix + name);
+            entries[nodeCount] = entry;
+            names[nodeCount] = intern(name);
+            parents[nodeCount] = node;
+            nodeCount++;
+        }
+
+        int added = nodeCount - first;
+        if (childCount + added > children.length) {
+            int[] grown = new int[Math.max(childCount + added,
+                    children.length * 2)];
+            System.arraycopy(children, 0, grown, 0, childCount);
+            children = grown;
+        }
+        childStarts[node] = childCount;
+        for (int child = first; child < nodeCount; child++)
+            if (TYPE_TREE.equals(entries[child].getType()))
+                children[childCount++] = child;
+        for (int child = first; child < nodeCount; child++)
+            if (!TYPE_TREE.equals(entries[child].getType()))
+                children[childCount++] = child;
+
+        sortChildren(node, new int[added]);
+        loaded[node] = true;
+        return true;
+    }
+
+    /**
+     * Get the raw entries of all files loaded so far
+     * <p>
+     * This must be called on the same thread that loads folders of this tree.
+     *
+     * @return list of entries
+     */
+    public List<TreeEntry> getFileEntries() {
+        List<TreeEntry> files = new ArrayList<TreeEntry>();
+        for (int node = 1; node < nodeCount; node++)
+            if (entries[node] != null
+                    && TYPE_BLOB.equals(entries[node].getType()))
+                files.add(entries[node]);
+        return files;
+    }
+
+    private String intern(final String name) {
+        String interned = segments.get(name);
+        if (interned == null) {
+            interned = name;
+            segments.put(name, name);
+        }
+        return interned;
+    }
+
+    private void setCapacity(final int capacity) {
+        TreeEntry[] newEntries = new TreeEntry[capacity];
+        String[] newNames = new String[capacity];
+        int[] newParents = new int[capacity];
+        int[] newChildStarts = new int[capacity];
+        int[] newFolderCounts = new int[capacity];
+        int[] newFileCounts = new int[capacity];
+        boolean[] newLoaded = new boolean[capacity];
+        Entry[] newMaterialized = new Entry[capacity];
+        if (nodeCount > 0) {
+            System.arraycopy(entries, 0, newEntries, 0, nodeCount);
+            System.arraycopy(names, 0, newNames, 0, nodeCount);
+            System.arraycopy(parents, 0, newParents, 0, nodeCount);
+            System.arraycopy(childStarts, 0, newChildStarts, 0, nodeCount);
+            System.arraycopy(folderCounts, 0, newFolderCounts, 0, nodeCount);
+            System.arraycopy(fileCounts, 0, newFileCounts, 0, nodeCount);
+            System.arraycopy(loaded, 0, newLoaded, 0, nodeCount);
+            System.arraycopy(materialized, 0, newMaterialized, 0, nodeCount);
+        }
+        entries = newEntries;
+        names = newNames;
+        parents = newParents;
+        childStarts = newChildStarts;
+        folderCounts = newFolderCounts;
+        fileCounts = newFileCounts;
+        loaded = newLoaded;
+        materialized = newMaterialized;
+    }
+
+    private void sortChildren(final int node, final int[] scratch) {
+        int folderStart = childStarts[node];
+        int fileStart = folderStart + folderCounts[node];
+        sort(folderStart, fileStart, scratch);
+        sort(fileStart, fileStart + fileCounts[node], scratch);
+    }
+
+    /**
+     * Merge sort range of {@link #children} by name
+     *
+     * @param from
+     * @param to
+     * @param scratch
+     *            array at least as long as the range
+     */
+    private void sort(final int from, final int to, final int[] scratch) {
+        if (to - from < 2)
+            return;
+
+        int middle = (from + to) >>> 1;
+        sort(from, middle, scratch);
+        sort(middle, to, scratch);
+        if (compareNames(names[children[middle - 1]],
+                names[children[middle]]) <= 0)
+            return;
+
+        System.arraycopy(children, from, scratch, 0, to - from);
+        int left = 0;
+        int middleOffset = middle - from;
+        int right = middleOffset;
+        int end = to - from;
+        for (int i = from; i < to; i++)
+            if (right >= end
+                    || (left < middleOffset && compareNames(
+                            names[scratch[left]], names[scratch[right]]) <= 0))
+                children[i] = scratch[left++];
+            else
+                children[i] = scratch[right++];
+    }
+
+    private Entry getEntry(final int node) {
+        Entry entry = materialized[node];
+        if (entry == null) {
+            Folder parent = (Folder) getEntry(parents[node]);
+            if (TYPE_TREE.equals(entries[node].getType()))
+                entry = new Folder(this, node, parent);
+            else
+                entry = new Entry(entries[node], parent, names[node]);
+            materialized[node] = entry;
+        }
+        return entry;
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core.code;
+
+import org.eclipse.egit.github.core.Tree;
+
+/**
+ * Tree requested recursively that records whether the API truncated it
+ */
+public class RecursiveTree extends Tree {
+
+    /** serialVersionUID */
+    private static final long serialVersionUID = -3467023745183412095L;
+
+    private boolean truncated;
+
+    /**
+     * @return true if the API left out entries because the tree is too large
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @param truncated
+     * @return this tree
+     */
+    public RecursiveTree setTruncated(final boolean truncated) {
+        this.truncated = truncated;
+        return this;
+    }
+}
@@ -19,6 +19,7 @@ import android.accounts.Account;
 import android.content.Context;
 
 import com.github.mobile.accounts.AuthenticatedUserTask;
+import com.github.mobile.core.GitObjectCache;
 import com.google.inject.Inject;
 
 import org.eclipse.egit.github.core.Blob;
@@ -37,6 +38,9 @@ public class RefreshBlobTask extends AuthenticatedUserTask<Blob> {
     @Inject
     private DataService service;
 
+    @Inject
+    private GitObjectCache cache;
+
     /**
      * @param repository
      * @param blobSha
@@ -52,6 +56,12 @@ public class RefreshBlobTask extends AuthenticatedUserTask<Blob> {
 
     @Override
     protected Blob run(Account account) throws Exception {
-        return service.getBlob(repository, blobSha);
+        Blob blob = cache.getBlob(repository, blobSha);
+        if (blob == null) {
+            blob = service.getBlob(repository, blobSha);
+            if (blob != null)
+                cache.putBlob(repository, blobSha, blob);
+        }
+        return blob;
     }
 }
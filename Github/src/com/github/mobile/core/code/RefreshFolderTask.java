@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core.code;
+
+import android.accounts.Account;
+import android.content.Context;
+import android.util.Log;
+
+import com.github.mobile.accounts.AuthenticatedUserTask;
+import com.github.mobile.core.GitObjectCache;
+import com.github.mobile.core.code.FullTree.Folder;
+import com.google.inject.Inject;
+
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.Tree;
+import org.eclipse.egit.github.core.service.DataService;
+
+/**
+ * Task to load the non-recursive tree of a folder
+ * <p>
+ * The loaded tree should be added to the folder's {@link FullTree} through
+ * {@link FullTree#load(Folder, Tree)} on the UI thread
+ */
+public class RefreshFolderTask extends AuthenticatedUserTask<Tree> {
+
+    private static final String TAG = "RefreshFolderTask";
+
+    private final Repository repository;
+
+    private final String sha;
+
+    @Inject
+    private DataService service;
+
+    @Inject
+    private GitObjectCache cache;
+
+    /**
+     * Create task to refresh folder's tree
+     *
+     * @param repository
+     * @param folder
+     * @param context
+     */
+    public RefreshFolderTask(final Repository repository, final Folder folder,
+            final Context context) {
+        super(context);
+
+        this.repository = repository;
+        this.sha = folder.entry.getSha();
+    }
+
+    @Override
+    protected Tree run(Account account) throws Exception {
+        Tree tree = cache.getTree(repository, sha, false);
+        if (tree == null) {
+            tree = service.getTree(repository, sha, false);
+            cache.putTree(repository, tree, false);
+        }
+        return tree;
+    }
+
+    @Override
+    protected void onException(Exception e) throws RuntimeException {
+        super.onException(e);
+
+        Log.d(TAG, "Exception loading folder", e);
+    }
+}
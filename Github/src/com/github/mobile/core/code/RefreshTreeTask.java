@@ -17,11 +17,14 @@ package com.github.mobile.core.code;
 
 import android.accounts.Account;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.github.mobile.accounts.AuthenticatedUserTask;
+import com.github.mobile.core.GitObjectCache;
 import com.github.mobile.core.ref.RefUtils;
+import com.github.mobile.util.PreferenceUtils;
 import com.google.inject.Inject;
 
 import java.io.IOException;
@@ -35,11 +38,30 @@ import org.eclipse.egit.github.core.service.RepositoryService;
 
 /**
  * Task to load the tree for a repository's default branch
+ * <p>
+ * The recursive tree is loaded unless the repository is known to be large in
+ * which case only the root folder is loaded and other folders must be loaded
+ * through {@link RefreshFolderTask}. Recursive trees the API truncates are
+ * also loaded one folder at a time.
  */
 public class RefreshTreeTask extends AuthenticatedUserTask<FullTree> {
 
     private static final String TAG = "RefreshTreeTask";
 
+    /**
+     * Number of entries in a recursive tree at which the repository's trees
+     * will be loaded one folder at a time
+     */
+    private static final int LAZY_ENTRY_COUNT = 10000;
+
+    /**
+     * Size in kilobytes of a repository at which its trees will be loaded one
+     * folder at a time before any tree has been observed
+     */
+    private static final int LAZY_REPOSITORY_SIZE = 100 * 1024;
+
+    private static final String PREF_LAZY_TREE = "lazyTree:";
+
     private final Repository repository;
 
     private final Reference reference;
@@ -50,6 +72,12 @@ public class RefreshTreeTask extends AuthenticatedUserTask<FullTree> {
     @Inject
     private DataService dataService;
 
+    @Inject
+    private TreeService treeService;
+
+    @Inject
+    private GitObjectCache cache;
+
     /**
      * Create task to refresh repository's tree
      *
@@ -93,17 +121,66 @@ public class RefreshTreeTask extends AuthenticatedUserTask<FullTree> {
                         "Reference does not have associated commit SHA-1");
         }
 
-        Commit commit = dataService.getCommit(repository, ref.getObject()
-                .getSha());
+        String commitSha = ref.getObject().getSha();
+        Commit commit = cache.getCommit(repository, commitSha);
+        if (commit == null) {
+            commit = dataService.getCommit(repository, commitSha);
+            if (commit != null)
+                cache.putCommit(repository, commit);
+        }
         if (commit == null || commit.getTree() == null
                 || TextUtils.isEmpty(commit.getTree().getSha()))
             throw new IOException("Commit does not have associated tree SHA-1");
 
-        Tree tree = dataService.getTree(repository, commit.getTree().getSha(),
-                true);
+        String treeSha = commit.getTree().getSha();
+        Tree tree = cache.getTree(repository, treeSha, true);
+        if (tree != null)
+            return new FullTree(tree, ref);
+
+        SharedPreferences preferences = PreferenceUtils
+                .getCodePreferences(getContext());
+        String lazyKey = PREF_LAZY_TREE + repository.generateId();
+        if (repository.getSize() >= LAZY_REPOSITORY_SIZE
+                || preferences.getBoolean(lazyKey, false))
+            return getRootFolder(treeSha, ref);
+
+        RecursiveTree recursiveTree = treeService.getRecursiveTree(repository,
+                treeSha);
+        if (recursiveTree.isTruncated()) {
+            Log.d(TAG, "Truncated tree, loading folders lazily for " + lazyKey);
+            PreferenceUtils.save(preferences.edit().putBoolean(lazyKey, true));
+            return getRootFolder(treeSha, ref);
+        }
+
+        tree = recursiveTree;
+        cache.putTree(repository, tree, true);
+        if (tree.getTree() != null
+                && tree.getTree().size() >= LAZY_ENTRY_COUNT) {
+            Log.d(TAG, "Loading folders lazily for " + lazyKey);
+            PreferenceUtils.save(preferences.edit().putBoolean(lazyKey, true));
+        }
         return new FullTree(tree, ref);
     }
 
+    /**
+     * Get tree of only the root folder, sub-folders are loaded through
+     * {@link RefreshFolderTask}
+     *
+     * @param treeSha
+     * @param ref
+     * @return tree
+     * @throws IOException
+     */
+    private FullTree getRootFolder(final String treeSha, final Reference ref)
+            throws IOException {
+        Tree tree = cache.getTree(repository, treeSha, false);
+        if (tree == null) {
+            tree = dataService.getTree(repository, treeSha, false);
+            cache.putTree(repository, tree, false);
+        }
+        return new FullTree(tree, ref, false);
+    }
+
     @Override
     protected void onException(Exception e) throws RuntimeException {
         super.onException(e);
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core.code;
+
+import static org.eclipse.egit.github.core.client.IGitHubConstants.SEGMENT_GIT;
+import static org.eclipse.egit.github.core.client.IGitHubConstants.SEGMENT_REPOS;
+import static org.eclipse.egit.github.core.client.IGitHubConstants.SEGMENT_TREES;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.eclipse.egit.github.core.IRepositoryIdProvider;
+import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.service.DataService;
+
+/**
+ * Data service that also reports whether recursive trees were truncated
+ */
+public class TreeService extends DataService {
+
+    /**
+     * Create tree service
+     */
+    public TreeService() {
+        super();
+    }
+
+    /**
+     * Create tree service
+     *
+     * @param client
+     */
+    public TreeService(GitHubClient client) {
+        super(client);
+    }
+
+    /**
+     * Get tree with all its sub-trees
+     * <p>
+     * The API truncates trees with too many entries, check
+     * {@link RecursiveTree#isTruncated()} before using the entries
+     *
+     * @param repository
+     * @param sha
+     * @return tree
+     * @throws IOException
+     */
+    public RecursiveTree getRecursiveTree(
+            final IRepositoryIdProvider repository, final String sha)
+            throws IOException {
+        final String id = getId(repository);
+        if (sha == null)
+            throw new IllegalArgumentException("SHA-1 cannot be null"); //$NON-NLS-1$
+        if (sha.length() == 0)
+            throw new IllegalArgumentException("SHA-1 cannot be empty"); //$NON-NLS-1$
+
+        StringBuilder uri = new StringBuilder(SEGMENT_REPOS);
+        uri.append('/').append(id);
+        uri.append(SEGMENT_GIT);
+        uri.append(SEGMENT_TREES);
+        uri.append('/').append(sha);
+        GitHubRequest request = createRequest();
+        request.setUri(uri);
+        request.setParams(Collections.singletonMap("recursive", "1")); //$NON-NLS-1$ //$NON-NLS-2$
+        request.setType(RecursiveTree.class);
+        return (RecursiveTree) client.get(request).getBody();
+    }
+}
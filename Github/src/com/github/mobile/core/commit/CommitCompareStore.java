@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core.commit;
+
+import android.content.Context;
+
+import com.github.mobile.RequestCodecs;
+import com.github.mobile.util.ObjectCache;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.egit.github.core.CommitFile;
+import org.eclipse.egit.github.core.IRepositoryIdProvider;
+import org.eclipse.egit.github.core.RepositoryCommitCompare;
+
+/**
+ * Persistent store of commit comparisons
+ * <p>
+ * Comparisons between two commit SHAs never change so they are kept until
+ * evicted for size. The comparison is stored without the patches of its files
+ * and the patches are stored separately in pages of {@link #PAGE_SIZE} files
+ * so they can be loaded as they are displayed.
+ */
+@Singleton
+public class CommitCompareStore {
+
+    /**
+     * Number of files per page of patches
+     */
+    public static final int PAGE_SIZE = 25;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Maximum number of bytes of comparisons to keep on disk
+     */
+    private static final long MAX_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Can the comparison of the given commits be stored?
+     * <p>
+     * Only comparisons between full SHAs can be stored since references such
+     * as branch names can move.
+     *
+     * @param base
+     * @param head
+     * @return true if storable, false otherwise
+     */
+    public static boolean isStorable(final String base, final String head) {
+        return CommitUtils.isFullSha(base) && CommitUtils.isFullSha(head);
+    }
+
+    /**
+     * Get number of pages of patches for comparison
+     *
+     * @param compare
+     * @return page count
+     */
+    public static int getPageCount(final RepositoryCommitCompare compare) {
+        List<CommitFile> files = compare.getFiles();
+        if (files == null)
+            return 0;
+        return (files.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Get files in page
+     *
+     * @param compare
+     * @param page
+     * @return files
+     */
+    public static List<CommitFile> getPage(
+            final RepositoryCommitCompare compare, final int page) {
+        List<CommitFile> files = compare.getFiles();
+        int start = page * PAGE_SIZE;
+        return files.subList(start, Math.min(start + PAGE_SIZE, files.size()));
+    }
+
+    private static String getKey(final IRepositoryIdProvider repository,
+            final String base, final String head) {
+        return repository.generateId() + '/' + base + "..." + head;
+    }
+
+    private static String getPageKey(final String key, final int page) {
+        return key + "#" + page;
+    }
+
+    private final ObjectCache cache;
+
+    /**
+     * Create store for context
+     *
+     * @param context
+     */
+    @Inject
+    public CommitCompareStore(final Context context) {
+        cache = new ObjectCache(new File(context.getCacheDir(), "compares"),
+                MAX_SIZE, FORMAT_VERSION);
+    }
+
+    /**
+     * Get stored comparison of commits
+     * <p>
+     * None of the files in the returned comparison will have their patch set
+     *
+     * @param repository
+     * @param base
+     * @param head
+     * @return comparison or null if not stored
+     */
+    public RepositoryCommitCompare getCompare(
+            final IRepositoryIdProvider repository, final String base,
+            final String head) {
+        return cache.get(getKey(repository, base, head));
+    }
+
+    /**
+     * Set the patches of the files in the page of the comparison from the
+     * store
+     *
+     * @param repository
+     * @param base
+     * @param head
+     * @param compare
+     * @param page
+     * @return true if loaded, false if the page is not stored
+     */
+    public boolean loadPatches(final IRepositoryIdProvider repository,
+            final String base, final String head,
+            final RepositoryCommitCompare compare, final int page) {
+        String[] patches = cache.get(
+                getPageKey(getKey(repository, base, head), page),
+                RequestCodecs.STRING_ARRAY);
+        if (patches == null)
+            return false;
+
+        List<CommitFile> files = getPage(compare, page);
+        if (patches.length != files.size())
+            return false;
+
+        for (int i = 0; i < patches.length; i++)
+            files.get(i).setPatch(patches[i]);
+        return true;
+    }
+
+    /**
+     * Store comparison of commits
+     * <p>
+     * The order of the comparison's files should not change once stored since
+     * patches are stored by page
+     *
+     * @param repository
+     * @param base
+     * @param head
+     * @param compare
+     * @return true if stored, false otherwise
+     */
+    public boolean putCompare(final IRepositoryIdProvider repository,
+            final String base, final String head,
+            final RepositoryCommitCompare compare) {
+        final String key = getKey(repository, base, head);
+        final int pages = getPageCount(compare);
+        for (int page = 0; page < pages; page++) {
+            List<CommitFile> files = getPage(compare, page);
+            String[] patches = new String[files.size()];
+            for (int i = 0; i < patches.length; i++)
+                patches[i] = files.get(i).getPatch();
+            if (!cache.put(getPageKey(key, page), patches,
+                    RequestCodecs.STRING_ARRAY))
+                return false;
+        }
+
+        // Store comparison with patches cleared and then restore them
+        String[] patches = new String[pages > 0 ? compare.getFiles().size()
+                : 0];
+        for (int i = 0; i < patches.length; i++) {
+            CommitFile file = compare.getFiles().get(i);
+            patches[i] = file.getPatch();
+            file.setPatch(null);
+        }
+        boolean stored = cache.put(key, compare);
+        for (int i = 0; i < patches.length; i++)
+            compare.getFiles().get(i).setPatch(patches[i]);
+        return stored;
+    }
+}
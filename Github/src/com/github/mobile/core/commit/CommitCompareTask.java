@@ -20,14 +20,24 @@ import android.content.Context;
 import android.util.Log;
 
 import com.github.mobile.accounts.AuthenticatedUserTask;
+import com.github.mobile.ui.commit.CommitFileComparator;
 import com.google.inject.Inject;
 
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.egit.github.core.CommitFile;
 import org.eclipse.egit.github.core.IRepositoryIdProvider;
 import org.eclipse.egit.github.core.RepositoryCommitCompare;
 import org.eclipse.egit.github.core.service.CommitService;
 
 /**
  * Task to compare two commits
+ * <p>
+ * Comparisons are read from and written to the {@link CommitCompareStore}
+ * when possible, in which case only the patches of the files in the first page
+ * will be set on the returned comparison and the rest should be loaded with
+ * {@link #loadPatches(RepositoryCommitCompare, int)} as they are needed.
  */
 public class CommitCompareTask extends
         AuthenticatedUserTask<RepositoryCommitCompare> {
@@ -37,6 +47,9 @@ public class CommitCompareTask extends
     @Inject
     private CommitService service;
 
+    @Inject
+    private CommitCompareStore store;
+
     private final IRepositoryIdProvider repository;
 
     private final String base;
@@ -58,9 +71,72 @@ public class CommitCompareTask extends
         this.head = head;
     }
 
+    private RepositoryCommitCompare fetch() throws Exception {
+        RepositoryCommitCompare compare = service.compare(repository, base,
+                head);
+        List<CommitFile> files = compare.getFiles();
+        if (files != null)
+            Collections.sort(files, new CommitFileComparator());
+        return compare;
+    }
+
     @Override
     protected RepositoryCommitCompare run(Account account) throws Exception {
-        return service.compare(repository, base, head);
+        if (!CommitCompareStore.isStorable(base, head))
+            return fetch();
+
+        RepositoryCommitCompare compare = store.getCompare(repository, base,
+                head);
+        if (compare != null
+                && (CommitCompareStore.getPageCount(compare) == 0 || store
+                        .loadPatches(repository, base, head, compare, 0)))
+            return compare;
+
+        compare = fetch();
+        if (store.putCompare(repository, base, head, compare)) {
+            List<CommitFile> files = compare.getFiles();
+            for (int i = CommitCompareStore.PAGE_SIZE; i < files.size(); i++)
+                files.get(i).setPatch(null);
+        }
+        return compare;
+    }
+
+    /**
+     * Load the patches of the files in the page of a comparison returned from
+     * {@link #run(Account)}
+     * <p>
+     * This method performs I/O and must be called from a background thread
+     * within an account scope.
+     *
+     * @param compare
+     * @param page
+     * @return files in page
+     * @throws Exception
+     */
+    protected List<CommitFile> loadPatches(
+            final RepositoryCommitCompare compare, final int page)
+            throws Exception {
+        List<CommitFile> files = CommitCompareStore.getPage(compare, page);
+        if (!CommitCompareStore.isStorable(base, head)
+                || store.loadPatches(repository, base, head, compare, page))
+            return files;
+
+        // Page was evicted so request and store the comparison again
+        RepositoryCommitCompare fetched = fetch();
+        store.putCompare(repository, base, head, fetched);
+        List<CommitFile> fetchedFiles = fetched.getFiles();
+        if (fetchedFiles == null
+                || fetchedFiles.size() != compare.getFiles().size())
+            return files;
+
+        int start = page * CommitCompareStore.PAGE_SIZE;
+        for (int i = 0; i < files.size(); i++) {
+            CommitFile file = files.get(i);
+            CommitFile fetchedFile = fetchedFiles.get(start + i);
+            if (file.getFilename().equals(fetchedFile.getFilename()))
+                file.setPatch(fetchedFile.getPatch());
+        }
+        return files;
     }
 
     @Override
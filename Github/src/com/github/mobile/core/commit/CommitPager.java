@@ -46,6 +46,14 @@ public abstract class CommitPager extends ResourcePager<RepositoryCommit> {
         return resource.getSha();
     }
 
+    /**
+     * Pages of commits start at the parent of the last commit registered
+     */
+    @Override
+    protected boolean isRandomAccess() {
+        return false;
+    }
+
     @Override
     protected RepositoryCommit register(final RepositoryCommit resource) {
         return store.addCommit(repository, resource);
@@ -15,6 +15,7 @@
  */
 package com.github.mobile.core.commit;
 
+import com.github.mobile.core.GitObjectCache;
 import com.github.mobile.core.ItemStore;
 
 import java.io.IOException;
@@ -34,13 +35,17 @@ public class CommitStore extends ItemStore {
 
     private final CommitService service;
 
+    private final GitObjectCache cache;
+
     /**
      * Create commit store
      *
      * @param service
+     * @param cache
      */
-    public CommitStore(final CommitService service) {
+    public CommitStore(final CommitService service, final GitObjectCache cache) {
         this.service = service;
+        this.cache = cache;
     }
 
     /**
@@ -57,6 +62,27 @@ public class CommitStore extends ItemStore {
         return repoCommits != null ? repoCommits.get(id) : null;
     }
 
+    /**
+     * Get commit from this store or from the persistent cache
+     * <p>
+     * Only commits with their files are returned since commits added from
+     * commit lists do not include them. Commits read from the persistent cache
+     * are added to this store.
+     *
+     * @param repo
+     * @param id
+     * @return commit with files or null if not stored
+     */
+    public RepositoryCommit getStoredCommit(final IRepositoryIdProvider repo,
+            final String id) {
+        RepositoryCommit commit = getCommit(repo, id);
+        if (commit != null && commit.getFiles() != null)
+            return commit;
+
+        RepositoryCommit cached = cache.getRepositoryCommit(repo, id);
+        return cached != null ? addCommit(repo, cached) : null;
+    }
+
     /**
      * Add commit to store
      *
@@ -99,6 +125,8 @@ public class CommitStore extends ItemStore {
      */
     public RepositoryCommit refreshCommit(final IRepositoryIdProvider repo,
             final String id) throws IOException {
-        return addCommit(repo, service.getCommit(repo, id));
+        RepositoryCommit commit = service.getCommit(repo, id);
+        cache.putRepositoryCommit(repo, commit);
+        return addCommit(repo, commit);
     }
 }
@@ -87,6 +87,16 @@ public class CommitUtils {
         return !TextUtils.isEmpty(sha) && sha.matches("[a-fA-F0-9]+");
     }
 
+    /**
+     * Is the given string a full, unabbreviated commit SHA-1?
+     *
+     * @param sha
+     * @return true if full SHA-1, false otherwise
+     */
+    public static boolean isFullSha(final String sha) {
+        return sha != null && sha.length() == 40 && isValidCommit(sha);
+    }
+
     /**
      * Get author of commit
      * <p>
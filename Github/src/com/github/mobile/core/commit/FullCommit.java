@@ -21,8 +21,9 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.egit.github.core.CommitComment;
 import org.eclipse.egit.github.core.CommitFile;
@@ -40,20 +41,18 @@ public class FullCommit extends ArrayList<CommitComment> implements
 
     private final List<FullCommitFile> files;
 
+    /**
+     * Files by path
+     */
+    private final Map<String, FullCommitFile> paths;
+
     /**
      * Create commit with no comments
      *
      * @param commit
      */
     public FullCommit(final RepositoryCommit commit) {
-        this.commit = commit;
-        List<CommitFile> rawFiles = commit.getFiles();
-        if (rawFiles != null && !rawFiles.isEmpty()) {
-            files = new ArrayList<FullCommitFile>(rawFiles.size());
-            for (CommitFile file : rawFiles)
-                files.add(new FullCommitFile(file));
-        } else
-            files = Collections.emptyList();
+        this(commit, null);
     }
 
     /**
@@ -67,51 +66,37 @@ public class FullCommit extends ArrayList<CommitComment> implements
         this.commit = commit;
 
         List<CommitFile> rawFiles = commit.getFiles();
-        boolean hasComments = comments != null && !comments.isEmpty();
-        boolean hasFiles = rawFiles != null && !rawFiles.isEmpty();
-        if (hasFiles) {
+        if (rawFiles != null && !rawFiles.isEmpty()) {
             files = new ArrayList<FullCommitFile>(rawFiles.size());
-            if (hasComments) {
-                for (CommitFile file : rawFiles) {
-                    Iterator<CommitComment> iterator = comments.iterator();
-                    FullCommitFile full = new FullCommitFile(file);
-                    while (iterator.hasNext()) {
-                        CommitComment comment = iterator.next();
-                        if (file.getFilename().equals(comment.getPath())) {
-                            full.add(comment);
-                            iterator.remove();
-                        }
-                    }
-                    files.add(full);
-                }
-                hasComments = !comments.isEmpty();
-            } else
-                for (CommitFile file : rawFiles)
-                    files.add(new FullCommitFile(file));
-        } else
+            paths = new HashMap<String, FullCommitFile>(rawFiles.size());
+            for (CommitFile file : rawFiles) {
+                FullCommitFile full = new FullCommitFile(file);
+                files.add(full);
+                String path = file.getFilename();
+                if (!paths.containsKey(path))
+                    paths.put(path, full);
+            }
+        } else {
             files = Collections.emptyList();
+            paths = Collections.emptyMap();
+        }
 
-        if (hasComments)
-            addAll(comments);
+        if (comments != null)
+            for (CommitComment comment : comments)
+                add(comment);
     }
 
     @Override
     public boolean add(final CommitComment comment) {
         String path = comment.getPath();
-        if (TextUtils.isEmpty(path))
-            return super.add(comment);
-        else {
-            boolean added = false;
-            for (FullCommitFile file : files)
-                if (path.equals(file.getFile().getFilename())) {
-                    file.add(comment);
-                    added = true;
-                    break;
-                }
-            if (!added)
-                added = super.add(comment);
-            return added;
+        if (!TextUtils.isEmpty(path)) {
+            FullCommitFile file = paths.get(path);
+            if (file != null) {
+                file.add(comment);
+                return true;
+            }
         }
+        return super.add(comment);
     }
 
     /**
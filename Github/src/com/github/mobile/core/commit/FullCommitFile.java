@@ -55,6 +55,18 @@ public class FullCommitFile {
                 .<CommitComment> emptyList();
     }
 
+    /**
+     * Get lines that have comments
+     *
+     * @return line numbers in ascending order
+     */
+    public int[] getCommentedLines() {
+        int[] lines = new int[comments.size()];
+        for (int i = 0; i < lines.length; i++)
+            lines[i] = comments.keyAt(i);
+        return lines;
+    }
+
     /**
      * Add comment to file
      *
@@ -68,16 +68,21 @@ public class RefreshCommitTask extends AuthenticatedUserTask<FullCommit> {
 
     @Override
     protected FullCommit run(Account account) throws Exception {
-        RepositoryCommit commit = store.refreshCommit(repository, id);
+        RepositoryCommit commit = store.getStoredCommit(repository, id);
+        // Comment count of a stored commit may be stale so always load them
+        final boolean stored = commit != null;
+        if (!stored)
+            commit = store.refreshCommit(repository, id);
         Commit rawCommit = commit.getCommit();
-        if (rawCommit != null && rawCommit.getCommentCount() > 0) {
+        if (rawCommit != null && (stored || rawCommit.getCommentCount() > 0)) {
             List<CommitComment> comments = service.getComments(repository,
                     commit.getSha());
+            rawCommit.setCommentCount(comments.size());
             for (CommitComment comment : comments) {
                 String formatted = HtmlUtils.format(comment.getBodyHtml())
                         .toString();
                 comment.setBodyHtml(formatted);
-                imageGetter.encode(comment, formatted);
+                imageGetter.render(comment.getId(), formatted);
             }
             return new FullCommit(commit, comments);
         } else
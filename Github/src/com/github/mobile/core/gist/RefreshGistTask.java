@@ -75,7 +75,7 @@ public class RefreshGistTask extends AuthenticatedUserTask<FullGist> {
             String formatted = HtmlUtils.format(comment.getBodyHtml())
                     .toString();
             comment.setBodyHtml(formatted);
-            imageGetter.encode(comment, formatted);
+            imageGetter.render(comment.getId(), formatted);
         }
         return new FullGist(gist, service.isStarred(id), comments);
     }
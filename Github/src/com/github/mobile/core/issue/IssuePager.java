@@ -17,6 +17,9 @@ package com.github.mobile.core.issue;
 
 import com.github.mobile.core.ResourcePager;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 import org.eclipse.egit.github.core.Issue;
 
 /**
@@ -39,8 +42,8 @@ public abstract class IssuePager extends ResourcePager<Issue> {
     }
 
     @Override
-    protected Issue register(Issue resource) {
-        return store.addIssue(resource);
+    protected void add(Collection<Issue> resourcePage) {
+        super.add(new ArrayList<Issue>(store.addIssues(resourcePage)));
     }
 
     @Override
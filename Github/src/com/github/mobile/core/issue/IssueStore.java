@@ -16,10 +16,15 @@
 package com.github.mobile.core.issue;
 
 import com.github.mobile.core.ItemStore;
+import com.github.mobile.persistence.IssueCache;
 import com.github.mobile.util.HtmlUtils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.egit.github.core.IRepositoryIdProvider;
@@ -32,25 +37,50 @@ import org.eclipse.egit.github.core.service.PullRequestService;
 
 /**
  * Store of loaded issues
+ * <p>
+ * Issues added to the store are written through to an {@link IssueCache} so
+ * lists of issues can be shown from the cache before they are requested.
+ * Issues may be added and read from multiple threads at once, such as while
+ * stored issues are shown as a list is loaded, so access to the issues held
+ * in memory is synchronized. Issues are written to the cache from copies
+ * taken while synchronized so they are not serialized while being updated.
  */
 public class IssueStore extends ItemStore {
 
+    /**
+     * Maximum number of issues stored for a list
+     */
+    public static final int MAX_STORED_LIST = 100;
+
+    private static IRepositoryIdProvider getRepository(final Issue issue) {
+        IRepositoryIdProvider repo = null;
+        if (issue instanceof RepositoryIssue)
+            repo = ((RepositoryIssue) issue).getRepository();
+        if (repo == null)
+            repo = RepositoryId.createFromUrl(issue.getHtmlUrl());
+        return repo;
+    }
+
     private final Map<String, ItemReferences<RepositoryIssue>> repos = new HashMap<String, ItemReferences<RepositoryIssue>>();
 
     private final IssueService issueService;
 
     private final PullRequestService pullService;
 
+    private final IssueCache cache;
+
     /**
      * Create issue store
      *
      * @param issueService
      * @param pullService
+     * @param cache
      */
     public IssueStore(final IssueService issueService,
-            final PullRequestService pullService) {
+            final PullRequestService pullService, final IssueCache cache) {
         this.issueService = issueService;
         this.pullService = pullService;
+        this.cache = cache;
     }
 
     /**
@@ -60,7 +90,8 @@ public class IssueStore extends ItemStore {
      * @param number
      * @return issue or null if not in store
      */
-    public RepositoryIssue getIssue(IRepositoryIdProvider repository, int number) {
+    public synchronized RepositoryIssue getIssue(
+            IRepositoryIdProvider repository, int number) {
         ItemReferences<RepositoryIssue> repoIssues = repos.get(repository
                 .generateId());
         return repoIssues != null ? repoIssues.get(number) : null;
@@ -73,18 +104,17 @@ public class IssueStore extends ItemStore {
      * @return issue
      */
     public RepositoryIssue addIssue(Issue issue) {
-        IRepositoryIdProvider repo = null;
-        if (issue instanceof RepositoryIssue)
-            repo = ((RepositoryIssue) issue).getRepository();
-        if (repo == null)
-            repo = RepositoryId.createFromUrl(issue.getHtmlUrl());
-        return addIssue(repo, issue);
+        return addIssue(getRepository(issue), issue);
     }
 
     private RepositoryIssue createRepositoryIssue(Issue issue) {
         if (issue instanceof RepositoryIssue)
             return (RepositoryIssue) issue;
+        else
+            return copyIssue(issue);
+    }
 
+    private static RepositoryIssue copyIssue(Issue issue) {
         RepositoryIssue repoIssue = new RepositoryIssue();
         repoIssue.setAssignee(issue.getAssignee());
         repoIssue.setBody(issue.getBody());
@@ -104,11 +134,16 @@ public class IssueStore extends ItemStore {
         repoIssue.setUpdatedAt(issue.getUpdatedAt());
         repoIssue.setUrl(issue.getUrl());
         repoIssue.setUser(issue.getUser());
+        if (issue instanceof RepositoryIssue)
+            repoIssue.setRepository(((RepositoryIssue) issue).getRepository());
         return repoIssue;
     }
 
     /**
      * Add issue to store
+     * <p>
+     * The issue is also written to the cache unless the cached issue has the
+     * same update time so this should not be called on the UI-thread
      *
      * @param repository
      * @param issue
@@ -117,6 +152,53 @@ public class IssueStore extends ItemStore {
     public RepositoryIssue addIssue(IRepositoryIdProvider repository,
             Issue issue) {
         issue.setBodyHtml(HtmlUtils.format(issue.getBodyHtml()).toString());
+        final RepositoryIssue added;
+        final RepositoryIssue snapshot;
+        synchronized (this) {
+            added = putIssue(repository, issue);
+            snapshot = copyIssue(added);
+        }
+        cache.putIssues(Collections.singletonList(repository.generateId()),
+                Collections.singletonList(snapshot));
+        return added;
+    }
+
+    /**
+     * Add page of issues to store
+     * <p>
+     * The issues are also written to the cache in a single transaction,
+     * skipping those whose cached issue has the same update time, so this
+     * should not be called on the UI-thread
+     *
+     * @param issues
+     * @return added issues in the same order
+     */
+    public List<RepositoryIssue> addIssues(
+            final Collection<? extends Issue> issues) {
+        for (Issue issue : issues)
+            issue.setBodyHtml(HtmlUtils.format(issue.getBodyHtml())
+                    .toString());
+
+        final List<RepositoryIssue> added = new ArrayList<RepositoryIssue>(
+                issues.size());
+        final List<RepositoryIssue> snapshots = new ArrayList<RepositoryIssue>(
+                issues.size());
+        final List<String> repoIds = new ArrayList<String>(issues.size());
+        synchronized (this) {
+            for (Issue issue : issues) {
+                IRepositoryIdProvider repository = getRepository(issue);
+                RepositoryIssue repoIssue = putIssue(repository, issue);
+                added.add(repoIssue);
+                snapshots.add(copyIssue(repoIssue));
+                repoIds.add(repository.generateId());
+            }
+        }
+        cache.putIssues(repoIds, snapshots);
+        return added;
+    }
+
+    private synchronized RepositoryIssue putIssue(
+            IRepositoryIdProvider repository, Issue issue) {
         RepositoryIssue current = getIssue(repository, issue.getNumber());
         if (current != null) {
             current.setAssignee(issue.getAssignee());
@@ -134,18 +216,80 @@ public class IssueStore extends ItemStore {
                 current.setRepository(((RepositoryIssue) issue).getRepository());
             return current;
         } else {
-            String repoId = repository.generateId();
-            ItemReferences<RepositoryIssue> repoIssues = repos.get(repoId);
-            if (repoIssues == null) {
-                repoIssues = new ItemReferences<RepositoryIssue>();
-                repos.put(repoId, repoIssues);
-            }
             RepositoryIssue repoIssue = createRepositoryIssue(issue);
-            repoIssues.put(issue.getNumber(), repoIssue);
+            getReferences(repository).put(issue.getNumber(), repoIssue);
             return repoIssue;
         }
     }
 
+    /**
+     * Get the issues of repository, must be called while synchronized on this
+     * store
+     *
+     * @param repository
+     * @return issues
+     */
+    private ItemReferences<RepositoryIssue> getReferences(
+            final IRepositoryIdProvider repository) {
+        String repoId = repository.generateId();
+        ItemReferences<RepositoryIssue> repoIssues = repos.get(repoId);
+        if (repoIssues == null) {
+            repoIssues = new ItemReferences<RepositoryIssue>();
+            repos.put(repoId, repoIssues);
+        }
+        return repoIssues;
+    }
+
+    /**
+     * Get the issues last stored in the cache for a list
+     * <p>
+     * Issues already in this store are returned in place of the cached
+     * issues. This method performs database I/O and should never be called
+     * on the UI-thread
+     *
+     * @param list
+     * @return non-null but possibly empty list of issues
+     */
+    public List<RepositoryIssue> getStoredIssues(final String list) {
+        List<RepositoryIssue> stored = cache.getList(list);
+        synchronized (this) {
+            for (int i = 0; i < stored.size(); i++) {
+                RepositoryIssue issue = stored.get(i);
+                IRepositoryIdProvider repository = getRepository(issue);
+                RepositoryIssue current = getIssue(repository,
+                        issue.getNumber());
+                if (current != null)
+                    stored.set(i, current);
+                else
+                    getReferences(repository).put(issue.getNumber(), issue);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Store the issues in a list to the cache
+     * <p>
+     * The issues should have been added to this store and only the first
+     * {@link #MAX_STORED_LIST} are stored. This method performs database I/O
+     * and should never be called on the UI-thread
+     *
+     * @param list
+     * @param issues
+     */
+    public void storeIssues(final String list,
+            final List<? extends Issue> issues) {
+        int count = Math.min(issues.size(), MAX_STORED_LIST);
+        List<String> repoIds = new ArrayList<String>(count);
+        List<Integer> numbers = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            Issue issue = issues.get(i);
+            repoIds.add(getRepository(issue).generateId());
+            numbers.add(issue.getNumber());
+        }
+        cache.putList(list, repoIds, numbers);
+    }
+
     /**
      * Refresh issue
      *
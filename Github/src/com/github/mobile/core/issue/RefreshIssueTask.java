@@ -76,7 +76,7 @@ public class RefreshIssueTask extends AuthenticatedUserTask<FullIssue> {
     @Override
     public FullIssue run(Account account) throws Exception {
         Issue issue = store.refreshIssue(repositoryId, issueNumber);
-        bodyImageGetter.encode(issue.getId(), issue.getBodyHtml());
+        bodyImageGetter.render(issue.getId(), issue.getBodyHtml());
         List<Comment> comments;
         if (issue.getComments() > 0)
             comments = service.getComments(repositoryId, issueNumber);
@@ -86,7 +86,7 @@ public class RefreshIssueTask extends AuthenticatedUserTask<FullIssue> {
             String formatted = HtmlUtils.format(comment.getBodyHtml())
                     .toString();
             comment.setBodyHtml(formatted);
-            commentImageGetter.encode(comment.getId(), formatted);
+            commentImageGetter.render(comment.getId(), formatted);
         }
         return new FullIssue(issue, comments);
     }
@@ -15,6 +15,7 @@
  */
 package com.github.mobile.persistence;
 
+import static com.github.mobile.RequestCodecs.ISSUE_FILTERS;
 import android.accounts.Account;
 import android.content.Context;
 import android.database.Cursor;
@@ -22,6 +23,7 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.util.Log;
 
+import com.github.mobile.RequestCodec;
 import com.github.mobile.RequestFuture;
 import com.github.mobile.RequestReader;
 import com.github.mobile.RequestWriter;
@@ -83,33 +85,35 @@ public class AccountDataManager {
     }
 
     /**
-     * Read data from file
+     * Read data from file with codec
      *
      * @param file
+     * @param codec
      * @return data
      */
-    @SuppressWarnings("unchecked")
-    private <V> V read(final File file) {
+    private <V> V read(final File file, final RequestCodec<V> codec) {
         long start = System.currentTimeMillis();
         long length = file.length();
-        Object data = new RequestReader(file, FORMAT_VERSION).read();
+        V data = new RequestReader(file, FORMAT_VERSION).read(codec);
         if (data != null)
             Log.d(TAG, MessageFormat.format(
                     "Cache hit to {0}, {1} ms to load {2} bytes",
                     file.getName(), (System.currentTimeMillis() - start),
                     length));
-        return (V) data;
+        return data;
     }
 
     /**
-     * Write data to file
+     * Write data to file with codec
      *
      * @param file
      * @param data
+     * @param codec
      * @return this manager
      */
-    private AccountDataManager write(File file, Object data) {
-        new RequestWriter(file, FORMAT_VERSION).write(data);
+    private <V> AccountDataManager write(File file, V data,
+            RequestCodec<V> codec) {
+        new RequestWriter(file, FORMAT_VERSION).write(data, codec);
         return this;
     }
 
@@ -178,6 +182,20 @@ public class AccountDataManager {
                 .loadOrRequest(resource);
     }
 
+    /**
+     * Get stored repositories for given {@link User} that match the given text
+     * <p/>
+     * This method only reads from the cache database and should never be
+     * called on the UI-thread
+     *
+     * @param user
+     * @param text
+     * @return non-null but possibly empty list of repositories
+     */
+    public List<Repository> searchRepos(final User user, final String text) {
+        return dbCache.load(allRepos.under(user).matching(text));
+    }
+
     /**
      * Get bookmarked issue filters
      * <p/>
@@ -188,7 +206,7 @@ public class AccountDataManager {
      */
     public Collection<IssueFilter> getIssueFilters() {
         final File cache = new File(root, "issue_filters.ser");
-        Collection<IssueFilter> cached = read(cache);
+        Collection<IssueFilter> cached = read(cache, ISSUE_FILTERS);
         if (cached != null)
             return cached;
         return Collections.emptyList();
@@ -227,11 +245,11 @@ public class AccountDataManager {
      */
     public void addIssueFilter(IssueFilter filter) {
         final File cache = new File(root, "issue_filters.ser");
-        Collection<IssueFilter> filters = read(cache);
+        Collection<IssueFilter> filters = read(cache, ISSUE_FILTERS);
         if (filters == null)
             filters = new HashSet<IssueFilter>();
         if (filters.add(filter))
-            write(cache, filters);
+            write(cache, filters, ISSUE_FILTERS);
     }
 
     /**
@@ -272,9 +290,9 @@ public class AccountDataManager {
      */
     public void removeIssueFilter(IssueFilter filter) {
         final File cache = new File(root, "issue_filters.ser");
-        Collection<IssueFilter> filters = read(cache);
+        Collection<IssueFilter> filters = read(cache, ISSUE_FILTERS);
         if (filters != null && filters.remove(filter))
-            write(cache, filters);
+            write(cache, filters, ISSUE_FILTERS);
     }
 
     /**
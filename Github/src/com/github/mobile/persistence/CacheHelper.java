@@ -15,21 +15,33 @@
  */
 package com.github.mobile.persistence;
 
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.HONEYCOMB;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 
 /**
  * Helper class to create & upgrade database cache tables
  */
+@Singleton
 public class CacheHelper extends SQLiteOpenHelper {
 
     /**
-     * Version constant to increment when the database should be rebuilt
+     * Version constant to increment when a migration step is added to
+     * {@link #migrate(SQLiteDatabase, int)}
      */
-    private static final int VERSION = 8;
+    private static final int VERSION = 14;
+
+    /**
+     * Oldest version that can be migrated, databases created before this
+     * version are rebuilt
+     */
+    private static final int BASE_VERSION = 8;
 
     /**
      * Name of database file
@@ -37,26 +49,113 @@ public class CacheHelper extends SQLiteOpenHelper {
     private static final String NAME = "cache.db";
 
     /**
+     * Bind string value or null to statement
+     *
+     * @param statement
+     * @param index
+     * @param value
+     */
+    public static void bind(final SQLiteStatement statement, final int index,
+            final String value) {
+        if (value != null)
+            statement.bindString(index, value);
+        else
+            statement.bindNull(index);
+    }
+
+    /**
+     * Create helper for the application's context
+     * <p>
+     * A single helper and its open database are shared for the lifetime of
+     * the application and should not be closed by callers
+     *
      * @param context
      */
     @Inject
     public CacheHelper(final Context context) {
-        super(context, NAME, null, VERSION);
+        super(context.getApplicationContext(), NAME, null, VERSION);
+    }
+
+    @Override
+    public void onOpen(final SQLiteDatabase db) {
+        super.onOpen(db);
+
+        if (SDK_INT >= HONEYCOMB && !db.isReadOnly())
+            db.enableWriteAheadLogging();
     }
 
+    /**
+     * Creates the tables as of {@link #BASE_VERSION} and then applies every
+     * migration step so new and upgraded databases share one schema
+     */
     @Override
     public void onCreate(final SQLiteDatabase db) {
         db.execSQL("CREATE TABLE orgs (id INTEGER PRIMARY KEY);");
         db.execSQL("CREATE TABLE users (id INTEGER PRIMARY KEY, name TEXT, avatarurl TEXT);");
         db.execSQL("CREATE TABLE repos (id INTEGER PRIMARY KEY, repoId INTEGER, orgId INTEGER, name TEXT, ownerId INTEGER, private INTEGER, fork INTEGER, description TEXT, forks INTEGER, watchers INTEGER, language TEXT, hasIssues INTEGER, mirrorUrl TEXT);");
+        migrate(db, BASE_VERSION, VERSION);
     }
 
     @Override
     public void onUpgrade(final SQLiteDatabase db, final int oldVersion,
             final int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS orgs");
-        db.execSQL("DROP TABLE IF EXISTS users");
-        db.execSQL("DROP TABLE IF EXISTS repos");
-        onCreate(db);
+        if (oldVersion < BASE_VERSION) {
+            db.execSQL("DROP TABLE IF EXISTS orgs");
+            db.execSQL("DROP TABLE IF EXISTS users");
+            db.execSQL("DROP TABLE IF EXISTS repos");
+            db.execSQL("DROP TABLE IF EXISTS repos_fts");
+            db.execSQL("DROP TABLE IF EXISTS issues");
+            db.execSQL("DROP TABLE IF EXISTS issue_lists");
+            db.execSQL("DROP TABLE IF EXISTS events");
+            onCreate(db);
+        } else
+            migrate(db, oldVersion, newVersion);
+    }
+
+    private void migrate(final SQLiteDatabase db, final int oldVersion,
+            final int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++)
+            migrate(db, version);
+    }
+
+    /**
+     * Apply the step that upgrades the schema to the given version
+     * <p>
+     * Steps must preserve existing rows
+     *
+     * @param db
+     * @param version
+     */
+    private void migrate(final SQLiteDatabase db, final int version) {
+        switch (version) {
+        case 9:
+            db.execSQL("ALTER TABLE repos ADD COLUMN updatedAt INTEGER;");
+            break;
+        case 10:
+            db.execSQL("CREATE INDEX IF NOT EXISTS repos_org ON repos (orgId, repoId);");
+            db.execSQL("CREATE INDEX IF NOT EXISTS repos_owner ON repos (ownerId);");
+            break;
+        case 11:
+            // Full-text index of repos rows keyed by their id
+            db.execSQL("CREATE VIRTUAL TABLE repos_fts USING fts3 (name, owner, description, language);");
+            db.execSQL("INSERT INTO repos_fts (docid, name, owner, description, language) SELECT repos.id, repos.name, users.name, repos.description, repos.language FROM repos LEFT JOIN users ON (repos.ownerId = users.id);");
+            break;
+        case 12:
+            db.execSQL("CREATE TABLE issues (repoId TEXT, number INTEGER, updatedAt INTEGER, issue BLOB, PRIMARY KEY (repoId, number));");
+            db.execSQL("CREATE TABLE issue_lists (list TEXT, position INTEGER, repoId TEXT, number INTEGER, PRIMARY KEY (list, position));");
+            break;
+        case 13:
+            db.execSQL("CREATE TABLE events (feed TEXT, id TEXT, createdAt INTEGER, event BLOB, PRIMARY KEY (feed, id));");
+            db.execSQL("CREATE INDEX IF NOT EXISTS events_created ON events (feed, createdAt);");
+            break;
+        case 14:
+            // Repositories are only looked up by organization and joined to
+            // their owners by the users primary key so this index is unused
+            db.execSQL("DROP INDEX IF EXISTS repos_owner;");
+            break;
+        default:
+            throw new IllegalStateException("No migration to version "
+                    + version);
+        }
     }
 }
@@ -19,6 +19,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.google.inject.Inject;
@@ -27,6 +28,8 @@ import com.google.inject.Provider;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 /**
  * Given a PersistableResource, this class will take support loading/storing
@@ -87,17 +90,33 @@ public class DatabaseCache {
     public <E> List<E> loadOrRequest(PersistableResource<E> persistableResource)
             throws IOException {
         SQLiteOpenHelper helper = helperProvider.get();
-        try {
-            List<E> items = loadFromDB(helper, persistableResource);
-            if (items != null) {
-                Log.d(TAG, "CACHE HIT: Found " + items.size() + " items for "
-                        + persistableResource);
-                return items;
-            }
-            return requestAndStore(helper, persistableResource);
-        } finally {
-            helper.close();
+        long start = SystemClock.elapsedRealtime();
+        List<E> items = loadFromDB(helper, persistableResource);
+        if (items != null) {
+            Log.d(TAG, "CACHE HIT: Found " + items.size() + " items for "
+                    + persistableResource + " in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+            return items;
         }
+        return requestAndStore(helper, persistableResource);
+    }
+
+    /**
+     * Load given resources from the database without requesting them
+     *
+     * @param persistableResource
+     * @return non-null but possibly empty list of resources
+     */
+    public <E> List<E> load(final PersistableResource<E> persistableResource) {
+        SQLiteOpenHelper helper = helperProvider.get();
+        long start = SystemClock.elapsedRealtime();
+        List<E> items = loadFromDB(helper, persistableResource);
+        if (items == null)
+            items = new ArrayList<E>();
+        Log.d(TAG, "Loaded " + items.size() + " items for "
+                + persistableResource + " in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        return items;
     }
 
     /**
@@ -109,11 +128,29 @@ public class DatabaseCache {
      */
     public <E> List<E> requestAndStore(
             PersistableResource<E> persistableResource) throws IOException {
-        SQLiteOpenHelper helper = helperProvider.get();
+        return requestAndStore(helperProvider.get(), persistableResource);
+    }
+
+    /**
+     * Store already requested items for several resources in a single
+     * transaction
+     *
+     * @param batch
+     */
+    public <E> void store(
+            final Map<? extends PersistableResource<E>, List<E>> batch) {
+        final SQLiteDatabase db = getWritable(helperProvider.get());
+        if (db == null)
+            return;
+
+        db.beginTransaction();
         try {
-            return requestAndStore(helper, persistableResource);
+            for (Entry<? extends PersistableResource<E>, List<E>> entry : batch
+                    .entrySet())
+                entry.getKey().store(db, entry.getValue());
+            db.setTransactionSuccessful();
         } finally {
-            helper.close();
+            db.endTransaction();
         }
     }
 
@@ -126,6 +163,7 @@ public class DatabaseCache {
         if (db == null)
             return items;
 
+        long start = SystemClock.elapsedRealtime();
         db.beginTransaction();
         try {
             persistableResource.store(db, items);
@@ -133,6 +171,9 @@ public class DatabaseCache {
         } finally {
             db.endTransaction();
         }
+        Log.d(TAG, "Stored " + items.size() + " items for "
+                + persistableResource + " in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
         return items;
     }
 
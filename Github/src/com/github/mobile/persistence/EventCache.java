@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.persistence;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.github.mobile.SerializableCodec;
+import com.github.mobile.accounts.GitHubAccount;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.egit.github.core.event.Event;
+
+/**
+ * Cache of the events in news feeds stored in the cache database
+ * <p>
+ * Events never change once created so they are stored once by feed and id
+ * along with the time they were created. Feeds are stored separately for
+ * each account and only the most recent {@link #MAX_EVENTS} events created
+ * within the last {@link #MAX_AGE} milliseconds are kept.
+ */
+@Singleton
+public class EventCache {
+
+    private static final String TAG = "EventCache";
+
+    /**
+     * Maximum number of events to keep in each feed
+     * <p>
+     * This matches the number of events the API returns for a feed
+     */
+    public static final int MAX_EVENTS = 300;
+
+    /**
+     * Maximum age in milliseconds of the events to keep
+     */
+    public static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+
+    private static final String INSERT_EVENT = "INSERT OR IGNORE INTO events (feed, id, createdAt, event) VALUES (?, ?, ?, ?)";
+
+    private static final String TRIM_FEED = "DELETE FROM events WHERE feed=? AND rowid NOT IN (SELECT rowid FROM events WHERE feed=? ORDER BY createdAt DESC LIMIT "
+            + MAX_EVENTS + ")";
+
+    private static long getCreatedAt(final Event event) {
+        Date createdAt = event.getCreatedAt();
+        return createdAt != null ? createdAt.getTime() : 0;
+    }
+
+    private static byte[] toBytes(final Event event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SerializableCodec<Event>().write(event, new DataOutputStream(
+                bytes));
+        return bytes.toByteArray();
+    }
+
+    private static Event fromBytes(final byte[] bytes) {
+        try {
+            return new SerializableCodec<Event>().read(new DataInputStream(
+                    new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            Log.d(TAG, "Exception reading stored event", e);
+            return null;
+        }
+    }
+
+    @Inject
+    private Provider<CacheHelper> helperProvider;
+
+    @Inject
+    private Provider<GitHubAccount> accountProvider;
+
+    private SQLiteDatabase getDatabase() {
+        try {
+            return helperProvider.get().getWritableDatabase();
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Exception opening cache database", e);
+            return null;
+        }
+    }
+
+    private String getKey(final String feed) {
+        return accountProvider.get().getUsername() + '/' + feed;
+    }
+
+    /**
+     * Get the stored events in the feed of the current account, newest first
+     * <p>
+     * This method performs database I/O and should never be called on the
+     * UI-thread
+     *
+     * @param feed
+     * @return non-null but possibly empty list of events
+     */
+    public List<Event> getEvents(final String feed) {
+        final SQLiteDatabase db = getDatabase();
+        if (db == null)
+            return new ArrayList<Event>();
+
+        Cursor cursor = db.query("events", new String[] { "event" },
+                "feed=? AND createdAt>=?", new String[] { getKey(feed),
+                        Long.toString(System.currentTimeMillis() - MAX_AGE) },
+                null, null, "createdAt DESC", Integer.toString(MAX_EVENTS));
+        try {
+            List<Event> events = new ArrayList<Event>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                Event event = fromBytes(cursor.getBlob(0));
+                if (event != null)
+                    events.add(event);
+            }
+            return events;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Store the events that are not already stored in the feed of the current
+     * account and trim the stored events by age and count
+     * <p>
+     * This method performs database I/O and should never be called on the
+     * UI-thread
+     *
+     * @param feed
+     * @param events
+     */
+    public void putEvents(final String feed, final Collection<Event> events) {
+        final SQLiteDatabase db = getDatabase();
+        if (db == null)
+            return;
+
+        final String key = getKey(feed);
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = db.compileStatement(INSERT_EVENT);
+            try {
+                for (Event event : events) {
+                    if (event.getId() == null)
+                        continue;
+                    final byte[] bytes;
+                    try {
+                        bytes = toBytes(event);
+                    } catch (IOException e) {
+                        Log.d(TAG, "Exception writing event", e);
+                        continue;
+                    }
+                    insert.bindString(1, key);
+                    insert.bindString(2, event.getId());
+                    insert.bindLong(3, getCreatedAt(event));
+                    insert.bindBlob(4, bytes);
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+            db.delete("events", "createdAt<?", new String[] { Long
+                    .toString(System.currentTimeMillis() - MAX_AGE) });
+            db.execSQL(TRIM_FEED, new Object[] { key, key });
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.persistence;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.github.mobile.SerializableCodec;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.egit.github.core.RepositoryIssue;
+
+/**
+ * Cache of issues and of the issues in lists stored in the cache database
+ * <p>
+ * Issues are stored by repository and number along with the time they were
+ * last updated so storing an issue that has not been updated is skipped.
+ * Lists store the repository and number of their issues in order.
+ */
+@Singleton
+public class IssueCache {
+
+    private static final String TAG = "IssueCache";
+
+    /**
+     * Maximum number of issues to keep that are not in a stored list
+     */
+    private static final int MAX_UNLISTED = 500;
+
+    private static final String SELECT_UPDATED_AT = "SELECT updatedAt FROM issues WHERE repoId=? AND number=?";
+
+    private static final String REPLACE_ISSUE = "INSERT OR REPLACE INTO issues (repoId, number, updatedAt, issue) VALUES (?, ?, ?, ?)";
+
+    private static final String INSERT_LIST_ISSUE = "INSERT INTO issue_lists (list, position, repoId, number) VALUES (?, ?, ?, ?)";
+
+    private static final String PRUNE_ISSUES = "DELETE FROM issues WHERE NOT EXISTS (SELECT 1 FROM issue_lists WHERE issue_lists.repoId = issues.repoId AND issue_lists.number = issues.number) AND rowid NOT IN (SELECT rowid FROM issues ORDER BY updatedAt DESC LIMIT "
+            + MAX_UNLISTED + ")";
+
+    private static long getUpdatedAt(final RepositoryIssue issue) {
+        Date updatedAt = issue.getUpdatedAt();
+        return updatedAt != null ? updatedAt.getTime() : 0;
+    }
+
+    private static byte[] toBytes(final RepositoryIssue issue)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SerializableCodec<RepositoryIssue>().write(issue,
+                new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static RepositoryIssue fromBytes(final byte[] bytes) {
+        try {
+            return new SerializableCodec<RepositoryIssue>()
+                    .read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            Log.d(TAG, "Exception reading stored issue", e);
+            return null;
+        }
+    }
+
+    @Inject
+    private Provider<CacheHelper> helperProvider;
+
+    private SQLiteDatabase getDatabase() {
+        try {
+            return helperProvider.get().getWritableDatabase();
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Exception opening cache database", e);
+            return null;
+        }
+    }
+
+    /**
+     * Store the issues that do not have the same update time as the stored
+     * issue in one transaction
+     * <p>
+     * The issues are serialized while they are stored so they should not be
+     * changed concurrently. This method performs database I/O and should
+     * never be called on the UI-thread
+     *
+     * @param repoIds
+     *            repository id of each issue
+     * @param issues
+     * @return number of issues stored
+     */
+    public int putIssues(final List<String> repoIds,
+            final List<RepositoryIssue> issues) {
+        final SQLiteDatabase db = getDatabase();
+        if (db == null)
+            return 0;
+
+        int stored = 0;
+        db.beginTransaction();
+        try {
+            SQLiteStatement select = db.compileStatement(SELECT_UPDATED_AT);
+            SQLiteStatement replace = db.compileStatement(REPLACE_ISSUE);
+            try {
+                for (int i = 0; i < issues.size(); i++) {
+                    RepositoryIssue issue = issues.get(i);
+                    String repoId = repoIds.get(i);
+                    long updatedAt = getUpdatedAt(issue);
+                    if (updatedAt != 0
+                            && getUpdatedAt(select, repoId, issue) == updatedAt)
+                        continue;
+
+                    final byte[] bytes;
+                    try {
+                        bytes = toBytes(issue);
+                    } catch (IOException e) {
+                        Log.d(TAG, "Exception writing issue", e);
+                        continue;
+                    }
+                    replace.bindString(1, repoId);
+                    replace.bindLong(2, issue.getNumber());
+                    replace.bindLong(3, updatedAt);
+                    replace.bindBlob(4, bytes);
+                    replace.executeInsert();
+                    stored++;
+                }
+            } finally {
+                select.close();
+                replace.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return stored;
+    }
+
+    private static long getUpdatedAt(final SQLiteStatement select,
+            final String repoId, final RepositoryIssue issue) {
+        select.bindString(1, repoId);
+        select.bindLong(2, issue.getNumber());
+        try {
+            return select.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Store the repository and number of the issues in a list replacing the
+     * issues previously stored in the list
+     * <p>
+     * The issues themselves should already be stored using
+     * {@link #putIssues(List, List)}. This method performs
+     * database I/O and should never be called on the UI-thread
+     *
+     * @param list
+     * @param repoIds
+     *            repository id of each issue
+     * @param numbers
+     *            number of each issue
+     */
+    public void putList(final String list, final List<String> repoIds,
+            final List<Integer> numbers) {
+        final SQLiteDatabase db = getDatabase();
+        if (db == null)
+            return;
+
+        db.beginTransaction();
+        try {
+            db.delete("issue_lists", "list=?", new String[] { list });
+            SQLiteStatement insert = db.compileStatement(INSERT_LIST_ISSUE);
+            try {
+                for (int i = 0; i < repoIds.size(); i++) {
+                    insert.bindString(1, list);
+                    insert.bindLong(2, i);
+                    insert.bindString(3, repoIds.get(i));
+                    insert.bindLong(4, numbers.get(i));
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+            db.execSQL(PRUNE_ISSUES);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Get the stored issues in a list in order
+     * <p>
+     * This method performs database I/O and should never be called on the
+     * UI-thread
+     *
+     * @param list
+     * @return non-null but possibly empty list of issues
+     */
+    public List<RepositoryIssue> getList(final String list) {
+        final SQLiteDatabase db = getDatabase();
+        if (db == null)
+            return new ArrayList<RepositoryIssue>();
+
+        Cursor cursor = db.rawQuery(
+                "SELECT issues.issue FROM issue_lists JOIN issues ON (issue_lists.repoId = issues.repoId AND issue_lists.number = issues.number) WHERE issue_lists.list=? ORDER BY issue_lists.position",
+                new String[] { list });
+        try {
+            List<RepositoryIssue> issues = new ArrayList<RepositoryIssue>(
+                    cursor.getCount());
+            while (cursor.moveToNext()) {
+                RepositoryIssue issue = fromBytes(cursor.getBlob(0));
+                if (issue != null)
+                    issues.add(issue);
+            }
+            return issues;
+        } finally {
+            cursor.close();
+        }
+    }
+}
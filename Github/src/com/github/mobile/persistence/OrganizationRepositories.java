@@ -15,10 +15,10 @@
  */
 package com.github.mobile.persistence;
 
-import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 
 import com.github.mobile.accounts.GitHubAccount;
 import com.google.inject.Inject;
@@ -28,9 +28,14 @@ import com.google.inject.assistedinject.Assisted;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 import org.eclipse.egit.github.core.Repository;
 import org.eclipse.egit.github.core.User;
@@ -43,6 +48,48 @@ import org.eclipse.egit.github.core.service.WatcherService;
 public class OrganizationRepositories implements
         PersistableResource<Repository> {
 
+    private static final String INSERT_REPO = "INSERT INTO repos (name, ownerId, private, fork, description, forks, watchers, language, hasIssues, mirrorUrl, updatedAt, orgId, repoId) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    static final String UPDATE_REPO = "UPDATE repos SET name=?, ownerId=?, private=?, fork=?, description=?, forks=?, watchers=?, language=?, hasIssues=?, mirrorUrl=?, updatedAt=? WHERE orgId=? AND repoId=?";
+
+    private static final String REPLACE_USER = "INSERT OR REPLACE INTO users (id, name, avatarurl) VALUES (?, ?, ?)";
+
+    static final String DELETE_REPO = "DELETE FROM repos WHERE orgId=? AND repoId=?";
+
+    static final String SELECT_UPDATES = "SELECT repoId, id, updatedAt FROM repos WHERE orgId=?";
+
+    private static final String INSERT_INDEX = "INSERT INTO repos_fts (docid, name, owner, description, language) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_INDEX = "DELETE FROM repos_fts WHERE docid=?";
+
+    /**
+     * Pattern of characters the full-text index does not store in tokens
+     */
+    private static final Pattern SEPARATORS = Pattern
+            .compile("[\\x00-\\x2F\\x3A-\\x40\\x5B-\\x60\\x7B-\\x7F]+");
+
+    /**
+     * Get full-text query that matches the words of the given text as
+     * prefixes of words in the indexed columns
+     *
+     * @param text
+     * @return query or null if the text has no words
+     */
+    private static String getMatchQuery(final String text) {
+        if (text == null)
+            return null;
+
+        StringBuilder query = new StringBuilder();
+        for (String word : SEPARATORS.split(text)) {
+            if (word.length() == 0)
+                continue;
+            if (query.length() > 0)
+                query.append(' ');
+            query.append(word).append('*');
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+
     /**
      * Creation factory
      */
@@ -65,6 +112,16 @@ public class OrganizationRepositories implements
 
     private final Provider<GitHubAccount> accountProvider;
 
+    private int inserted;
+
+    private int updated;
+
+    private int deleted;
+
+    private int unchanged;
+
+    private String query;
+
     /**
      * Create repositories cache for a given organization
      *
@@ -83,18 +140,55 @@ public class OrganizationRepositories implements
         this.accountProvider = accountProvider;
     }
 
+    /**
+     * Only load the stored repositories that match the given text
+     * <p>
+     * Words in the text match the start of words in the name, owner,
+     * description and language of a repository
+     *
+     * @param text
+     * @return this resource
+     */
+    public OrganizationRepositories matching(final String text) {
+        query = getMatchQuery(text);
+        return this;
+    }
+
+    /**
+     * Get query of the stored repositories loaded by
+     * {@link #getCursor(SQLiteDatabase)}
+     *
+     * @return query
+     */
+    String getQuery() {
+        String selection = "repos.orgId=?";
+        if (query != null)
+            selection += " AND repos.id IN (SELECT docid FROM repos_fts WHERE repos_fts MATCH ?)";
+        return SQLiteQueryBuilder.buildQueryString(false,
+                "repos JOIN users ON (repos.ownerId = users.id)",
+                new String[] { "repos.repoId, repos.name", "users.id",
+                        "users.name", "users.avatarurl", "repos.private",
+                        "repos.fork", "repos.description", "repos.forks",
+                        "repos.watchers", "repos.language",
+                        "repos.hasIssues", "repos.mirrorUrl" }, selection,
+                null, null, null, null);
+    }
+
+    /**
+     * Get arguments of {@link #getQuery()}
+     *
+     * @return arguments
+     */
+    String[] getQueryArgs() {
+        if (query != null)
+            return new String[] { Integer.toString(org.getId()), query };
+        else
+            return new String[] { Integer.toString(org.getId()) };
+    }
+
     @Override
     public Cursor getCursor(SQLiteDatabase readableDatabase) {
-        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-        builder.setTables("repos JOIN users ON (repos.ownerId = users.id)");
-        return builder.query(readableDatabase, new String[] {
-                "repos.repoId, repos.name", "users.id", "users.name",
-                "users.avatarurl", "repos.private", "repos.fork",
-                "repos.description", "repos.forks", "repos.watchers",
-                "repos.language", "repos.hasIssues", "repos.mirrorUrl" },
-                "repos.orgId=?",
-                new String[] { Integer.toString(org.getId()) }, null, null,
-                null);
+        return readableDatabase.rawQuery(getQuery(), getQueryArgs());
     }
 
     @Override
@@ -121,41 +215,179 @@ public class OrganizationRepositories implements
         return repo;
     }
 
+    /**
+     * Get time of the last change to the repository
+     *
+     * @param repo
+     * @return time in milliseconds or 0 if unknown
+     */
+    private static long getUpdatedAt(final Repository repo) {
+        Date updatedAt = repo.getUpdatedAt();
+        Date pushedAt = repo.getPushedAt();
+        long updated = updatedAt != null ? updatedAt.getTime() : 0;
+        long pushed = pushedAt != null ? pushedAt.getTime() : 0;
+        return Math.max(updated, pushed);
+    }
+
+    /**
+     * Load the row id and update time of every repository currently stored
+     * for this organization
+     *
+     * @param db
+     * @return map of repository id to row id and update time
+     */
+    private Map<Long, long[]> getStoredUpdates(final SQLiteDatabase db) {
+        Map<Long, long[]> stored = new HashMap<Long, long[]>();
+        Cursor cursor = db.rawQuery(SELECT_UPDATES,
+                new String[] { Integer.toString(org.getId()) });
+        try {
+            while (cursor.moveToNext())
+                stored.put(cursor.getLong(0), new long[] { cursor.getLong(1),
+                        cursor.getLong(2) });
+        } finally {
+            cursor.close();
+        }
+        return stored;
+    }
+
+    /**
+     * Store repositories by applying the difference between the given list
+     * and the rows currently stored for this organization
+     * <p>
+     * Rows whose update time has not changed are left untouched, rows no
+     * longer present are deleted. The full-text index is updated for every
+     * row inserted, updated or deleted.
+     */
     @Override
     public void store(SQLiteDatabase db, List<Repository> repos) {
-        db.delete("repos", "orgId=?",
-                new String[] { Integer.toString(org.getId()) });
-        if (repos.isEmpty())
-            return;
-
-        ContentValues values = new ContentValues(12);
-        for (Repository repo : repos) {
-            values.clear();
-
-            User owner = repo.getOwner();
-            values.put("repoId", repo.getId());
-            values.put("name", repo.getName());
-            values.put("orgId", org.getId());
-            values.put("ownerId", owner.getId());
-            values.put("private", repo.isPrivate() ? 1 : 0);
-            values.put("fork", repo.isFork() ? 1 : 0);
-            values.put("description", repo.getDescription());
-            values.put("forks", repo.getForks());
-            values.put("watchers", repo.getWatchers());
-            values.put("language", repo.getLanguage());
-            values.put("hasIssues", repo.isHasIssues() ? 1 : 0);
-            values.put("mirrorUrl", repo.getMirrorUrl());
-            db.replace("repos", null, values);
-
-            values.clear();
-
-            values.put("id", owner.getId());
-            values.put("name", owner.getLogin());
-            values.put("avatarurl", owner.getAvatarUrl());
-            db.replace("users", null, values);
+        inserted = 0;
+        updated = 0;
+        deleted = 0;
+        unchanged = 0;
+
+        final Map<Long, long[]> stored = getStoredUpdates(db);
+
+        final SQLiteStatement insert = db.compileStatement(INSERT_REPO);
+        final SQLiteStatement update = db.compileStatement(UPDATE_REPO);
+        final SQLiteStatement replaceUser = db.compileStatement(REPLACE_USER);
+        final SQLiteStatement delete = db.compileStatement(DELETE_REPO);
+        final SQLiteStatement insertIndex = db.compileStatement(INSERT_INDEX);
+        final SQLiteStatement deleteIndex = db.compileStatement(DELETE_INDEX);
+        try {
+            for (Repository repo : repos) {
+                final long updatedAt = getUpdatedAt(repo);
+                final long[] storedRepo = stored.remove(repo.getId());
+                if (storedRepo != null && updatedAt != 0
+                        && storedRepo[1] == updatedAt) {
+                    unchanged++;
+                    continue;
+                }
+
+                User owner = repo.getOwner();
+                final long row;
+                if (storedRepo != null) {
+                    row = storedRepo[0];
+                    bindRepo(update, repo, updatedAt).execute();
+                    deleteIndex.bindLong(1, row);
+                    deleteIndex.execute();
+                    updated++;
+                } else {
+                    row = bindRepo(insert, repo, updatedAt).executeInsert();
+                    inserted++;
+                }
+
+                insertIndex.clearBindings();
+                insertIndex.bindLong(1, row);
+                CacheHelper.bind(insertIndex, 2, repo.getName());
+                CacheHelper.bind(insertIndex, 3, owner.getLogin());
+                CacheHelper.bind(insertIndex, 4, repo.getDescription());
+                CacheHelper.bind(insertIndex, 5, repo.getLanguage());
+                insertIndex.executeInsert();
+
+                replaceUser.bindLong(1, owner.getId());
+                CacheHelper.bind(replaceUser, 2, owner.getLogin());
+                CacheHelper.bind(replaceUser, 3, owner.getAvatarUrl());
+                replaceUser.execute();
+            }
+
+            for (Entry<Long, long[]> storedRepo : stored.entrySet()) {
+                delete.bindLong(1, org.getId());
+                delete.bindLong(2, storedRepo.getKey());
+                delete.execute();
+                deleteIndex.bindLong(1, storedRepo.getValue()[0]);
+                deleteIndex.execute();
+                deleted++;
+            }
+        } finally {
+            insert.close();
+            update.close();
+            replaceUser.close();
+            delete.close();
+            insertIndex.close();
+            deleteIndex.close();
         }
     }
 
+    /**
+     * Bind repository to an {@link #INSERT_REPO} or {@link #UPDATE_REPO}
+     * statement
+     *
+     * @param statement
+     * @param repo
+     * @param updatedAt
+     * @return statement
+     */
+    private SQLiteStatement bindRepo(final SQLiteStatement statement,
+            final Repository repo, final long updatedAt) {
+        statement.clearBindings();
+        CacheHelper.bind(statement, 1, repo.getName());
+        statement.bindLong(2, repo.getOwner().getId());
+        statement.bindLong(3, repo.isPrivate() ? 1 : 0);
+        statement.bindLong(4, repo.isFork() ? 1 : 0);
+        CacheHelper.bind(statement, 5, repo.getDescription());
+        statement.bindLong(6, repo.getForks());
+        statement.bindLong(7, repo.getWatchers());
+        CacheHelper.bind(statement, 8, repo.getLanguage());
+        statement.bindLong(9, repo.isHasIssues() ? 1 : 0);
+        CacheHelper.bind(statement, 10, repo.getMirrorUrl());
+        statement.bindLong(11, updatedAt);
+        statement.bindLong(12, org.getId());
+        statement.bindLong(13, repo.getId());
+        return statement;
+    }
+
+    /**
+     * @return number of rows inserted by the last call to
+     *         {@link #store(SQLiteDatabase, List)}
+     */
+    public int getInserted() {
+        return inserted;
+    }
+
+    /**
+     * @return number of rows updated by the last call to
+     *         {@link #store(SQLiteDatabase, List)}
+     */
+    public int getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return number of rows deleted by the last call to
+     *         {@link #store(SQLiteDatabase, List)}
+     */
+    public int getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return number of rows left unchanged by the last call to
+     *         {@link #store(SQLiteDatabase, List)}
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
     @Override
     public List<Repository> request() throws IOException {
         if (isAuthenticatedUser()) {
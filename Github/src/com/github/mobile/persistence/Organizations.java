@@ -15,10 +15,10 @@
  */
 package com.github.mobile.persistence;
 
-import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 
 import com.google.inject.Inject;
 
@@ -35,6 +35,10 @@ import org.eclipse.egit.github.core.service.UserService;
  */
 public class Organizations implements PersistableResource<User> {
 
+    private static final String REPLACE_ORG = "INSERT OR REPLACE INTO orgs (id) VALUES (?)";
+
+    private static final String REPLACE_USER = "INSERT OR REPLACE INTO users (id, name, avatarurl) VALUES (?, ?, ?)";
+
     private final UserService userService;
 
     private final OrganizationService orgService;
@@ -76,16 +80,21 @@ public class Organizations implements PersistableResource<User> {
         if (orgs.isEmpty())
             return;
 
-        ContentValues values = new ContentValues(3);
-        for (User user : orgs) {
-            values.clear();
-
-            values.put("id", user.getId());
-            db.replace("orgs", null, values);
+        final SQLiteStatement replaceOrg = db.compileStatement(REPLACE_ORG);
+        final SQLiteStatement replaceUser = db.compileStatement(REPLACE_USER);
+        try {
+            for (User user : orgs) {
+                replaceOrg.bindLong(1, user.getId());
+                replaceOrg.execute();
 
-            values.put("name", user.getLogin());
-            values.put("avatarurl", user.getAvatarUrl());
-            db.replace("users", null, values);
+                replaceUser.bindLong(1, user.getId());
+                CacheHelper.bind(replaceUser, 2, user.getLogin());
+                CacheHelper.bind(replaceUser, 3, user.getAvatarUrl());
+                replaceUser.execute();
+            }
+        } finally {
+            replaceOrg.close();
+            replaceUser.close();
         }
     }
 
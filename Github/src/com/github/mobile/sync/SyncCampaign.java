@@ -15,28 +15,62 @@
  */
 package com.github.mobile.sync;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import android.content.SyncResult;
 import android.database.SQLException;
 import android.util.Log;
 
+import com.github.mobile.ResponseCache;
+import com.github.mobile.accounts.AccountScope;
+import com.github.mobile.accounts.GitHubAccount;
 import com.github.mobile.persistence.DatabaseCache;
 import com.github.mobile.persistence.OrganizationRepositories;
 import com.github.mobile.persistence.Organizations;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 
 import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.eclipse.egit.github.core.Repository;
 import org.eclipse.egit.github.core.User;
 
 /**
  * A cancelable sync operation to synchronize data for a given account
+ * <p>
+ * Repositories for several organizations are requested concurrently while
+ * the calling thread stores completed requests in batched transactions
  */
 public class SyncCampaign implements Runnable {
 
     private static final String TAG = "SyncCampaign";
 
+    /**
+     * Maximum number of organizations to request concurrently
+     */
+    private static final int FETCH_THREADS = 4;
+
+    /**
+     * Maximum number of organizations to store in a single transaction
+     */
+    private static final int BATCH_SIZE = 8;
+
+    /**
+     * Time to wait for a request to complete before checking for cancellation
+     */
+    private static final long POLL_INTERVAL = 250;
+
     /**
      * Factory to create campaign
      */
@@ -51,6 +85,28 @@ public class SyncCampaign implements Runnable {
         SyncCampaign create(SyncResult syncResult);
     }
 
+    /**
+     * Repositories requested for an organization
+     */
+    private static class Fetch {
+
+        private final User org;
+
+        private final OrganizationRepositories resource;
+
+        private final List<Repository> repos;
+
+        private final long bytes;
+
+        private Fetch(final User org, final OrganizationRepositories resource,
+                final List<Repository> repos, final long bytes) {
+            this.org = org;
+            this.resource = resource;
+            this.repos = repos;
+            this.bytes = bytes;
+        }
+    }
+
     @Inject
     private DatabaseCache cache;
 
@@ -60,9 +116,20 @@ public class SyncCampaign implements Runnable {
     @Inject
     private Organizations persistedOrgs;
 
+    @Inject
+    private ResponseCache responses;
+
+    @Inject
+    private AccountScope accountScope;
+
+    @Inject
+    private Provider<GitHubAccount> accountProvider;
+
     private final SyncResult syncResult;
 
-    private boolean cancelled = false;
+    private volatile boolean cancelled = false;
+
+    private volatile ExecutorService fetchers;
 
     /**
      * Create campaign for result
@@ -91,31 +158,143 @@ public class SyncCampaign implements Runnable {
         }
 
         Log.d(TAG, "Syncing " + orgs.size() + " users and orgs");
-        for (User org : orgs) {
-            if (cancelled)
+        if (cancelled || orgs.isEmpty())
+            return;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math
+                .min(FETCH_THREADS, orgs.size()));
+        fetchers = executor;
+        try {
+            CompletionService<Fetch> completion = new ExecutorCompletionService<Fetch>(
+                    executor);
+            final GitHubAccount account = accountProvider.get();
+            for (User org : orgs)
+                completion.submit(createFetch(account, org));
+            storeFetches(completion, orgs.size());
+        } finally {
+            executor.shutdownNow();
+            fetchers = null;
+        }
+
+        if (!cancelled)
+            Log.d(TAG, "Sync campaign finished");
+    }
+
+    private Callable<Fetch> createFetch(final GitHubAccount account,
+            final User org) {
+        final OrganizationRepositories resource = repos.under(org);
+        return new Callable<Fetch>() {
+
+            @Override
+            public Fetch call() throws Exception {
+                accountScope.enterWith(account);
+                try {
+                    Log.d(TAG, "Syncing repos for " + org.getLogin());
+                    final long bytes = responses.getThreadBytesReceived();
+                    final List<Repository> fetched = resource.request();
+                    return new Fetch(org, resource, fetched, responses
+                            .getThreadBytesReceived() - bytes);
+                } finally {
+                    accountScope.exit();
+                }
+            }
+        };
+    }
+
+    /**
+     * Store requests as they complete, draining any other completed requests
+     * into the same transaction
+     *
+     * @param completion
+     * @param count
+     */
+    private void storeFetches(final CompletionService<Fetch> completion,
+            final int count) {
+        int remaining = count;
+        final Map<OrganizationRepositories, List<Repository>> batch = new LinkedHashMap<OrganizationRepositories, List<Repository>>();
+        final Map<OrganizationRepositories, Fetch> fetches = new LinkedHashMap<OrganizationRepositories, Fetch>();
+        while (remaining > 0 && !cancelled) {
+            Future<Fetch> future;
+            try {
+                future = completion.poll(POLL_INTERVAL, MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 return;
+            }
+
+            while (future != null) {
+                remaining--;
+                Fetch fetch = getFetch(future);
+                if (fetch != null) {
+                    batch.put(fetch.resource, fetch.repos);
+                    fetches.put(fetch.resource, fetch);
+                }
+                future = batch.size() < BATCH_SIZE ? completion.poll() : null;
+            }
+
+            if (batch.isEmpty() || cancelled)
+                continue;
 
-            Log.d(TAG, "Syncing repos for " + org.getLogin());
             try {
-                cache.requestAndStore(repos.under(org));
-                syncResult.stats.numUpdates++;
-            } catch (IOException e) {
-                syncResult.stats.numIoExceptions++;
-                Log.d(TAG, "Exception requesting repositories", e);
+                cache.store(batch);
+                for (Fetch fetch : fetches.values()) {
+                    syncResult.stats.numUpdates++;
+                    recordStats(fetch);
+                }
             } catch (SQLException e) {
+                syncResult.stats.numIoExceptions += batch.size();
+                Log.d(TAG, "Exception storing repositories", e);
+            }
+            batch.clear();
+            fetches.clear();
+        }
+    }
+
+    private Fetch getFetch(final Future<Fetch> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (!cancelled) {
                 syncResult.stats.numIoExceptions++;
-                Log.d(TAG, "Exception requesting repositories", e);
+                Log.d(TAG, "Exception requesting repositories", e.getCause());
             }
+            return null;
         }
+    }
 
-        Log.d(TAG, "Sync campaign finished");
+    /**
+     * Record the rows changed by storing the fetch
+     * <p>
+     * {@link android.content.SyncStats#numUpdates} counts each list of orgs
+     * and repositories stored so the number of updated rows is only logged
+     *
+     * @param fetch
+     */
+    private void recordStats(final Fetch fetch) {
+        final OrganizationRepositories resource = fetch.resource;
+        syncResult.stats.numInserts += resource.getInserted();
+        syncResult.stats.numDeletes += resource.getDeleted();
+        syncResult.stats.numSkippedEntries += resource.getUnchanged();
+        Log.d(TAG, MessageFormat.format(
+                "Synced {0}: {1} bytes, {2} inserted, {3} updated,"
+                        + " {4} deleted, {5} unchanged", fetch.org.getLogin(),
+                fetch.bytes, resource.getInserted(), resource.getUpdated(),
+                resource.getDeleted(), resource.getUnchanged()));
     }
 
     /**
      * Cancel campaign
+     * <p>
+     * Outstanding requests are interrupted and nothing further is stored
      */
     public void cancel() {
         cancelled = true;
+        ExecutorService executor = fetchers;
+        if (executor != null)
+            executor.shutdownNow();
         Log.d(TAG, "Cancelled");
     }
 }
@@ -225,11 +225,26 @@ public abstract class ItemListFragment<E> extends DialogFragment implements
             return;
         }
 
-        this.items = items;
-        getListAdapter().getWrappedAdapter().setItems(items.toArray());
+        if (!isUnchanged(items)) {
+            this.items = items;
+            getListAdapter().getWrappedAdapter().setItems(items.toArray());
+        }
         showList();
     }
 
+    /**
+     * Are the loaded items known to be the same as the items displayed?
+     * <p>
+     * Sub-classes may override to skip updating the adapter when a loader
+     * delivers items that have not changed
+     *
+     * @param items
+     * @return true if unchanged, false otherwise
+     */
+    protected boolean isUnchanged(final List<E> items) {
+        return false;
+    }
+
     /**
      * Create adapter to display items
      *
@@ -289,7 +304,7 @@ public abstract class ItemListFragment<E> extends DialogFragment implements
      * Refresh the list with the progress bar showing
      */
     protected void refreshWithProgress() {
-        items.clear();
+        items = Collections.emptyList();
         setListShown(false);
         refresh();
     }
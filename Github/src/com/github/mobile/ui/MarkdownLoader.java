@@ -18,11 +18,11 @@ package com.github.mobile.ui;
 import static org.eclipse.egit.github.core.service.MarkdownService.MODE_GFM;
 import android.accounts.Account;
 import android.content.Context;
-import android.text.Html.ImageGetter;
 import android.util.Log;
 
 import com.github.mobile.accounts.AuthenticatedUserLoader;
 import com.github.mobile.util.HtmlUtils;
+import com.github.mobile.util.HttpImageGetter;
 import com.google.inject.Inject;
 
 import java.io.IOException;
@@ -37,7 +37,7 @@ public class MarkdownLoader extends AuthenticatedUserLoader<CharSequence> {
 
     private static final String TAG = "MarkdownLoader";
 
-    private final ImageGetter imageGetter;
+    private final HttpImageGetter imageGetter;
 
     private final IRepositoryIdProvider repository;
 
@@ -56,7 +56,7 @@ public class MarkdownLoader extends AuthenticatedUserLoader<CharSequence> {
      * @param encode
      */
     public MarkdownLoader(Context context, IRepositoryIdProvider repository,
-            String raw, ImageGetter imageGetter, boolean encode) {
+            String raw, HttpImageGetter imageGetter, boolean encode) {
         super(context);
 
         this.repository = repository;
@@ -79,9 +79,10 @@ public class MarkdownLoader extends AuthenticatedUserLoader<CharSequence> {
             else
                 html = service.getHtml(raw, MODE_GFM);
 
-            if (encode)
+            if (encode) {
+                imageGetter.prefetch(html);
                 return HtmlUtils.encode(html, imageGetter);
-            else
+            } else
                 return html;
         } catch (IOException e) {
             Log.d(TAG, "Loading rendered markdown failed", e);
@@ -34,16 +34,19 @@ import com.github.kevinsawicki.wishlist.ViewFinder;
 import com.github.mobile.R.id;
 import com.github.mobile.R.layout;
 import com.github.mobile.R.string;
+import com.github.mobile.core.ResourcePager;
 import com.github.mobile.core.gist.GistEventMatcher;
 import com.github.mobile.core.issue.IssueEventMatcher;
 import com.github.mobile.core.repo.RepositoryEventMatcher;
 import com.github.mobile.core.user.UserEventMatcher;
 import com.github.mobile.core.user.UserEventMatcher.UserPair;
+import com.github.mobile.persistence.EventCache;
 import com.github.mobile.ui.commit.CommitCompareViewActivity;
 import com.github.mobile.ui.commit.CommitViewActivity;
 import com.github.mobile.ui.gist.GistsViewActivity;
 import com.github.mobile.ui.issue.IssuesViewActivity;
 import com.github.mobile.ui.repo.RepositoryViewActivity;
+import com.github.mobile.ui.user.EventPager;
 import com.github.mobile.ui.user.NewsListAdapter;
 import com.github.mobile.util.AvatarLoader;
 import com.google.inject.Inject;
@@ -97,6 +100,21 @@ public abstract class NewsFragment extends PagedItemFragment<Event> {
     @Inject
     protected EventService service;
 
+    /**
+     * Cache of the events in news feeds
+     */
+    @Inject
+    protected EventCache eventCache;
+
+    @Override
+    protected List<Event> loadStoredItems() {
+        ResourcePager<Event> pager = this.pager;
+        if (pager instanceof EventPager)
+            return ((EventPager) pager).getStoredEvents();
+        else
+            return null;
+    }
+
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
@@ -15,6 +15,7 @@
  */
 package com.github.mobile.ui;
 
+import android.accounts.Account;
 import android.app.Activity;
 import android.os.Bundle;
 import android.support.v4.content.Loader;
@@ -23,7 +24,12 @@ import android.widget.AbsListView.OnScrollListener;
 import android.widget.ListView;
 
 import com.github.mobile.ThrowableLoader;
+import com.github.mobile.accounts.AccountScope;
+import com.github.mobile.accounts.AuthenticatedUserTask;
+import com.github.mobile.accounts.GitHubAccount;
 import com.github.mobile.core.ResourcePager;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
 
 import java.io.IOException;
 import java.util.List;
@@ -44,6 +50,23 @@ public abstract class PagedItemFragment<E> extends ItemListFragment<E>
 
     private ResourceLoadingIndicator loadingIndicator;
 
+    @Inject
+    private AccountScope accountScope;
+
+    @Inject
+    private Provider<GitHubAccount> accountProvider;
+
+    /**
+     * Has a page been loaded since this fragment was created?
+     */
+    private boolean pageLoaded;
+
+    /**
+     * Has loading a page failed since the list was last refreshed or the user
+     * last started scrolling?
+     */
+    private boolean pageFailed;
+
     /**
      * Create pager that provides resources
      *
@@ -58,6 +81,32 @@ public abstract class PagedItemFragment<E> extends ItemListFragment<E>
      */
     protected abstract int getLoadingMessage();
 
+    /**
+     * Load the items last stored with {@link #storeItems(List)} to show until
+     * the first page is loaded
+     * <p>
+     * Sub-classes may override. Called on a background thread with the
+     * account scope entered
+     *
+     * @return items or null if none stored
+     */
+    protected List<E> loadStoredItems() {
+        return null;
+    }
+
+    /**
+     * Store the items loaded from the pager so they can be shown the next
+     * time this fragment is created
+     * <p>
+     * Sub-classes may override. Called on a background thread with the
+     * account scope entered
+     *
+     * @param items
+     */
+    protected void storeItems(List<E> items) {
+        // Intentionally left blank
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -84,6 +133,33 @@ public abstract class PagedItemFragment<E> extends ItemListFragment<E>
         super.onActivityCreated(savedInstanceState);
 
         getListView().setOnScrollListener(this);
+
+        if (items.isEmpty())
+            showStoredItems();
+    }
+
+    private void showStoredItems() {
+        new AuthenticatedUserTask<List<E>>(getActivity()) {
+
+            @Override
+            protected List<E> run(Account account) throws Exception {
+                return loadStoredItems();
+            }
+
+            @Override
+            protected void onSuccess(List<E> stored) throws Exception {
+                super.onSuccess(stored);
+
+                // Loaded pages replace stored items
+                if (pageLoaded || stored == null || stored.isEmpty()
+                        || !isUsable())
+                    return;
+
+                items = stored;
+                getListAdapter().getWrappedAdapter().setItems(stored.toArray());
+                showList();
+            }
+        }.execute();
     }
 
     @Override
@@ -92,15 +168,20 @@ public abstract class PagedItemFragment<E> extends ItemListFragment<E>
 
             @Override
             public List<E> loadData() throws IOException {
+                pager.setAccount(accountScope, accountProvider.get());
                 pager.next();
-                return pager.getResources();
+                List<E> resources = pager.getResources();
+                storeItems(resources);
+                return resources;
             }
         };
     }
 
     @Override
     public void onScrollStateChanged(AbsListView view, int scrollState) {
-        // Intentionally left blank
+        // Retry a failed page once the user scrolls again
+        if (scrollState == SCROLL_STATE_TOUCH_SCROLL)
+            pageFailed = false;
     }
 
     @Override
@@ -108,6 +189,8 @@ public abstract class PagedItemFragment<E> extends ItemListFragment<E>
             int visibleItemCount, int totalItemCount) {
         if (!isUsable())
             return;
+        if (pageFailed)
+            return;
         if (!pager.hasMore())
             return;
         if (getLoaderManager().hasRunningLoaders())
@@ -120,6 +203,7 @@ public abstract class PagedItemFragment<E> extends ItemListFragment<E>
     @Override
     protected void forceRefresh() {
         pager.clear();
+        pageFailed = false;
 
         super.forceRefresh();
     }
@@ -131,8 +215,23 @@ public abstract class PagedItemFragment<E> extends ItemListFragment<E>
         refresh();
     }
 
+    /**
+     * Lists of resources from the pager never change and the pager returns the
+     * same list until resources are added or replaced
+     */
+    @Override
+    protected boolean isUnchanged(final List<E> items) {
+        return items == this.items;
+    }
+
     @Override
     public void onLoadFinished(Loader<List<E>> loader, List<E> items) {
+        // Keep showing stored items when loading fails
+        if (!(loader instanceof ThrowableLoader)
+                || ((ThrowableLoader<List<E>>) loader).getException() == null)
+            pageLoaded = true;
+        else
+            pageFailed = true;
         loadingIndicator.setVisible(pager.hasMore());
 
         super.onLoadFinished(loader, items);
@@ -142,6 +241,7 @@ public abstract class PagedItemFragment<E> extends ItemListFragment<E>
     protected void refreshWithProgress() {
         pager.reset();
         pager = createPager();
+        pageFailed = false;
 
         super.refreshWithProgress();
     }
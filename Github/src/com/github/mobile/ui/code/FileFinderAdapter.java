@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.ui.code;
+
+import android.app.Activity;
+import android.view.View;
+
+import com.github.kevinsawicki.wishlist.SingleTypeAdapter;
+import com.github.mobile.R.id;
+import com.github.mobile.R.layout;
+import com.github.mobile.core.code.FileFinder;
+import com.github.mobile.core.commit.CommitUtils;
+import com.github.mobile.util.TypefaceUtils;
+
+import org.eclipse.egit.github.core.TreeEntry;
+
+/**
+ * Adapter to display files found by a {@link FileFinder}
+ */
+public class FileFinderAdapter extends SingleTypeAdapter<TreeEntry> {
+
+    /**
+     * @param activity
+     */
+    public FileFinderAdapter(final Activity activity) {
+        super(activity, layout.file_finder_item);
+    }
+
+    @Override
+    protected int[] getChildViewIds() {
+        return new int[] { id.tv_name, id.tv_folder, id.tv_file_icon };
+    }
+
+    @Override
+    protected View initialize(View view) {
+        view = super.initialize(view);
+
+        TypefaceUtils.setOcticons(textView(view, 2));
+        return view;
+    }
+
+    @Override
+    protected void update(final int position, final TreeEntry file) {
+        String path = file.getPath();
+        int lastSlash = path.lastIndexOf('/');
+        setText(0, CommitUtils.getName(path));
+        setText(1, lastSlash != -1 ? path.substring(0, lastSlash) : "");
+    }
+}
@@ -19,14 +19,18 @@ import static android.app.Activity.RESULT_OK;
 import static com.github.mobile.Intents.EXTRA_REPOSITORY;
 import static com.github.mobile.RequestCodes.REF_UPDATE;
 import android.app.Activity;
+import android.content.Context;
 import android.os.Bundle;
+import android.text.Editable;
 import android.text.method.LinkMovementMethod;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.ViewGroup;
+import android.view.inputmethod.InputMethodManager;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
+import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
@@ -40,15 +44,18 @@ import com.github.mobile.R.id;
 import com.github.mobile.R.layout;
 import com.github.mobile.R.menu;
 import com.github.mobile.R.string;
+import com.github.mobile.core.code.FileFinder;
 import com.github.mobile.core.code.FullTree;
 import com.github.mobile.core.code.FullTree.Entry;
 import com.github.mobile.core.code.FullTree.Folder;
+import com.github.mobile.core.code.RefreshFolderTask;
 import com.github.mobile.core.code.RefreshTreeTask;
 import com.github.mobile.core.ref.RefUtils;
 import com.github.mobile.ui.DialogFragment;
 import com.github.mobile.ui.DialogFragmentActivity;
 import com.github.mobile.ui.HeaderFooterListAdapter;
 import com.github.mobile.ui.StyledText;
+import com.github.mobile.ui.TextWatcherAdapter;
 import com.github.mobile.ui.ref.BranchFileViewActivity;
 import com.github.mobile.ui.ref.CodeTreeAdapter;
 import com.github.mobile.ui.ref.RefDialog;
@@ -57,18 +64,43 @@ import com.github.mobile.util.ToastUtils;
 import com.github.mobile.util.TypefaceUtils;
 import com.google.inject.Inject;
 
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import org.eclipse.egit.github.core.Reference;
 import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.Tree;
+import org.eclipse.egit.github.core.TreeEntry;
 import org.eclipse.egit.github.core.service.DataService;
 
+import roboguice.util.RoboAsyncTask;
+
 /**
  * Fragment to display a repository's source code tree
  */
 public class RepositoryCodeFragment extends DialogFragment implements
         OnItemClickListener {
 
+    /**
+     * Maximum number of sub folders to load in the background when a folder
+     * is shown
+     */
+    private static final int PREFETCH_FOLDERS = 8;
+
+    /**
+     * Maximum number of files to show when finding files
+     */
+    private static final int FOUND_FILES = 50;
+
+    /**
+     * Executor that builds file finders and runs their queries in order
+     */
+    private static final Executor FINDER = Executors.newSingleThreadExecutor();
+
     private FullTree tree;
 
     private ListView listView;
@@ -91,6 +123,25 @@ public class RepositoryCodeFragment extends DialogFragment implements
 
     private Folder folder;
 
+    /**
+     * Folder to show once it has been loaded
+     */
+    private Folder pendingFolder;
+
+    private final Set<Folder> loadingFolders = new HashSet<Folder>();
+
+    private EditText findText;
+
+    private ListView findList;
+
+    private FileFinderAdapter findAdapter;
+
+    private boolean finding;
+
+    private FileFinder fileFinder;
+
+    private FullTree finderTree;
+
     private Repository repository;
 
     @Inject
@@ -117,12 +168,15 @@ public class RepositoryCodeFragment extends DialogFragment implements
 
     @Override
     public void onCreateOptionsMenu(Menu optionsMenu, MenuInflater inflater) {
-        inflater.inflate(menu.refresh, optionsMenu);
+        inflater.inflate(menu.repo_code, optionsMenu);
     }
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
+        case id.m_find:
+            showFinder();
+            return true;
         case id.m_refresh:
             if (tree != null)
                 refreshTree(new Reference().setRef(tree.reference.getRef()));
@@ -136,7 +190,7 @@ public class RepositoryCodeFragment extends DialogFragment implements
 
     private void showLoading(final boolean loading) {
         ViewUtils.setGone(progressView, !loading);
-        ViewUtils.setGone(listView, loading);
+        ViewUtils.setGone(listView, loading || finding);
         ViewUtils.setGone(branchFooterView, loading);
     }
 
@@ -159,14 +213,14 @@ public class RepositoryCodeFragment extends DialogFragment implements
                         current = current.parent;
                     }
                     Folder refreshed = fullTree.root;
-                    while (!stack.isEmpty()) {
-                        refreshed = refreshed.folders
-                                .get(stack.removeFirst().name);
+                    while (!stack.isEmpty() && refreshed.isLoaded()) {
+                        refreshed = refreshed.getFolder(stack.removeFirst()
+                                .name);
                         if (refreshed == null)
                             break;
                     }
                     if (refreshed != null)
-                        setFolder(fullTree, refreshed);
+                        openFolder(fullTree, refreshed);
                     else
                         setFolder(fullTree, fullTree.root);
                 }
@@ -223,6 +277,19 @@ public class RepositoryCodeFragment extends DialogFragment implements
         adapter = new HeaderFooterListAdapter<CodeTreeAdapter>(listView,
                 new CodeTreeAdapter(activity));
 
+        findText = finder.find(id.et_find);
+        findText.addTextChangedListener(new TextWatcherAdapter() {
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                find(s.toString());
+            }
+        });
+        findList = finder.find(id.lv_find);
+        findList.setOnItemClickListener(this);
+        findAdapter = new FileFinderAdapter(activity);
+        findList.setAdapter(findAdapter);
+
         branchFooterView = finder.find(id.rl_branch);
         branchView = finder.find(id.tv_branch);
         branchIconView = finder.find(id.tv_branch_icon);
@@ -246,12 +313,95 @@ public class RepositoryCodeFragment extends DialogFragment implements
         listView.setAdapter(adapter);
     }
 
+    private void showFinder() {
+        if (tree == null)
+            return;
+
+        finding = true;
+        ViewUtils.setGone(listView, true);
+        ViewUtils.setGone(findText, false);
+        ViewUtils.setGone(findList, false);
+        findText.requestFocus();
+        InputMethodManager manager = (InputMethodManager) getActivity()
+                .getSystemService(Context.INPUT_METHOD_SERVICE);
+        manager.showSoftInput(findText, InputMethodManager.SHOW_IMPLICIT);
+
+        // Lazily loaded trees gain files as folders are opened
+        final FullTree indexed = tree;
+        final List<TreeEntry> files = indexed.getFileEntries();
+        if (fileFinder != null && finderTree == indexed
+                && fileFinder.size() == files.size()) {
+            find(findText.getText().toString());
+            return;
+        }
+
+        fileFinder = null;
+        finderTree = indexed;
+        new RoboAsyncTask<FileFinder>(getActivity(), FINDER) {
+
+            @Override
+            public FileFinder call() throws Exception {
+                return new FileFinder(files);
+            }
+
+            @Override
+            protected void onSuccess(FileFinder built) throws Exception {
+                super.onSuccess(built);
+
+                if (finderTree != indexed)
+                    return;
+                fileFinder = built;
+                find(findText.getText().toString());
+            }
+        }.execute();
+    }
+
+    private void hideFinder() {
+        finding = false;
+        InputMethodManager manager = (InputMethodManager) getActivity()
+                .getSystemService(Context.INPUT_METHOD_SERVICE);
+        manager.hideSoftInputFromWindow(findText.getWindowToken(), 0);
+        ViewUtils.setGone(findText, true);
+        ViewUtils.setGone(findList, true);
+        ViewUtils.setGone(listView,
+                progressView.getVisibility() == View.VISIBLE);
+    }
+
+    private void find(final String query) {
+        final FileFinder current = fileFinder;
+        if (current == null || !finding)
+            return;
+
+        new RoboAsyncTask<List<TreeEntry>>(getActivity(), FINDER) {
+
+            @Override
+            public List<TreeEntry> call() throws Exception {
+                return current.find(query, FOUND_FILES);
+            }
+
+            @Override
+            protected void onSuccess(List<TreeEntry> files) throws Exception {
+                super.onSuccess(files);
+
+                // Drop results of queries that have since been replaced
+                if (fileFinder == current
+                        && query.equals(findText.getText().toString()))
+                    findAdapter.setItems(files);
+            }
+        }.execute();
+    }
+
     /**
      * Back up the currently viewed folder to its parent
      *
      * @return true if directory changed, false otherwise
      */
     public boolean onBackPressed() {
+        if (finding) {
+            hideFinder();
+            return true;
+        }
+
         if (folder != null && folder.parent != null) {
             setFolder(tree, folder.parent);
             return true;
@@ -259,6 +409,73 @@ public class RepositoryCodeFragment extends DialogFragment implements
             return false;
     }
 
+    private void openFolder(final FullTree tree, final Folder folder) {
+        if (folder.isLoaded()) {
+            pendingFolder = null;
+            setFolder(tree, folder);
+        } else {
+            this.tree = tree;
+            pendingFolder = folder;
+            showLoading(true);
+            loadFolder(tree, folder);
+        }
+    }
+
+    private void loadFolder(final FullTree tree, final Folder folder) {
+        if (!loadingFolders.add(folder))
+            return;
+
+        new RefreshFolderTask(repository, folder, getActivity()) {
+
+            @Override
+            protected void onSuccess(final Tree subtree) throws Exception {
+                super.onSuccess(subtree);
+
+                tree.load(folder, subtree);
+                if (tree != RepositoryCodeFragment.this.tree)
+                    return;
+
+                if (folder == pendingFolder) {
+                    pendingFolder = null;
+                    setFolder(tree, folder);
+                } else if (folder.parent == RepositoryCodeFragment.this.folder)
+                    adapter.getWrappedAdapter().notifyDataSetChanged();
+            }
+
+            @Override
+            protected void onException(Exception e) throws RuntimeException {
+                super.onException(e);
+
+                if (folder != pendingFolder)
+                    return;
+
+                pendingFolder = null;
+                showLoading(false);
+                ToastUtils.show(getActivity(), e, string.error_code_load);
+            }
+
+            @Override
+            protected void onFinally() throws RuntimeException {
+                super.onFinally();
+
+                loadingFolders.remove(folder);
+            }
+        }.execute();
+    }
+
+    private void prefetchFolders(final FullTree tree, final Folder folder) {
+        List<Folder> folders = folder.getFolders();
+        int prefetched = 0;
+        for (int i = 0; i < folders.size(); i++) {
+            Folder child = folders.get(i);
+            if (child.isLoaded())
+                continue;
+            loadFolder(tree, child);
+            if (++prefetched == PREFETCH_FOLDERS)
+                break;
+        }
+    }
+
     private void setFolder(final FullTree tree, final Folder folder) {
         this.folder = folder;
         this.tree = tree;
@@ -306,17 +523,27 @@ public class RepositoryCodeFragment extends DialogFragment implements
 
         adapter.getWrappedAdapter().setItems(folder);
         listView.setSelection(0);
+
+        prefetchFolders(tree, folder);
     }
 
     @Override
     public void onItemClick(AdapterView<?> parent, View view, int position,
             long id) {
+        if (parent == findList) {
+            TreeEntry file = (TreeEntry) parent.getItemAtPosition(position);
+            if (tree != null && file != null)
+                startActivity(BranchFileViewActivity.createIntent(repository,
+                        tree.branch, file.getPath(), file.getSha()));
+            return;
+        }
+
         Entry entry = (Entry) parent.getItemAtPosition(position);
         if (tree == null || entry == null)
             return;
 
         if (entry instanceof Folder)
-            setFolder(tree, (Folder) entry);
+            openFolder(tree, (Folder) entry);
         else
             startActivity(BranchFileViewActivity.createIntent(repository,
                     tree.branch, entry.entry.getPath(), entry.entry.getSha()));
@@ -25,6 +25,8 @@ import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.ListView;
@@ -39,6 +41,7 @@ import com.github.mobile.R.id;
 import com.github.mobile.R.layout;
 import com.github.mobile.R.menu;
 import com.github.mobile.R.string;
+import com.github.mobile.core.commit.CommitCompareStore;
 import com.github.mobile.core.commit.CommitCompareTask;
 import com.github.mobile.core.commit.CommitUtils;
 import com.github.mobile.ui.DialogFragment;
@@ -49,7 +52,6 @@ import com.google.inject.Inject;
 
 import java.text.MessageFormat;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.egit.github.core.CommitFile;
@@ -82,6 +84,19 @@ public class CommitCompareListFragment extends DialogFragment implements
 
     private RepositoryCommitCompare compare;
 
+    /**
+     * Number of pages of files added to the list
+     */
+    private int pagesShown;
+
+    private boolean loadingPage;
+
+    /**
+     * Has loading the next page failed since the list was updated or the user
+     * last started scrolling?
+     */
+    private boolean pageFailed;
+
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
@@ -127,10 +142,7 @@ public class CommitCompareListFragment extends DialogFragment implements
                     throws Exception {
                 RepositoryCommitCompare compare = super.run(account);
 
-                List<CommitFile> files = compare.getFiles();
-                diffStyler.setFiles(files);
-                if (files != null)
-                    Collections.sort(files, new CommitFileComparator());
+                diffStyler.setFiles(compare.getFiles());
                 return compare;
             }
 
@@ -186,14 +198,67 @@ public class CommitCompareListFragment extends DialogFragment implements
 
         CommitFileListAdapter rootAdapter = adapter.getWrappedAdapter();
         rootAdapter.clear();
+        pagesShown = 0;
+        pageFailed = false;
         List<CommitFile> files = compare.getFiles();
         if (files != null && !files.isEmpty()) {
             addFileStatHeader(files, inflater);
-            for (CommitFile file : files)
+            for (CommitFile file : CommitCompareStore.getPage(compare, 0))
                 rootAdapter.addItem(file);
+            pagesShown = 1;
         }
     }
 
+    /**
+     * Load the patches of the next page of files and add them to the list
+     */
+    private void showNextPage() {
+        if (loadingPage || pageFailed || compare == null
+                || pagesShown >= CommitCompareStore.getPageCount(compare))
+            return;
+
+        loadingPage = true;
+        final RepositoryCommitCompare current = compare;
+        final int page = pagesShown;
+        new CommitCompareTask(getActivity(), repository, base, head) {
+
+            @Override
+            protected RepositoryCommitCompare run(Account account)
+                    throws Exception {
+                loadPatches(current, page);
+                return current;
+            }
+
+            @Override
+            protected void onSuccess(RepositoryCommitCompare loaded)
+                    throws Exception {
+                super.onSuccess(loaded);
+
+                loadingPage = false;
+                if (loaded != compare || !isUsable())
+                    return;
+
+                List<CommitFile> files = CommitCompareStore.getPage(loaded,
+                        page);
+                diffStyler.addFiles(files);
+                CommitFileListAdapter rootAdapter = adapter
+                        .getWrappedAdapter();
+                for (CommitFile file : files)
+                    rootAdapter.addItem(file);
+                pagesShown = page + 1;
+            }
+
+            @Override
+            protected void onException(Exception e) throws RuntimeException {
+                super.onException(e);
+
+                loadingPage = false;
+                pageFailed = true;
+                ToastUtils.show(getActivity(), e, string.error_commits_load);
+            }
+        }.execute();
+    }
+
     private void addFileStatHeader(List<CommitFile> files,
             LayoutInflater inflater) {
         View fileHeader = inflater.inflate(
@@ -213,6 +278,22 @@ public class CommitCompareListFragment extends DialogFragment implements
         LayoutInflater inflater = getActivity().getLayoutInflater();
 
         list.setOnItemClickListener(this);
+        list.setOnScrollListener(new OnScrollListener() {
+
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                // Retry a failed page once the user scrolls again
+                if (scrollState == SCROLL_STATE_TOUCH_SCROLL)
+                    pageFailed = false;
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem,
+                    int visibleItemCount, int totalItemCount) {
+                if (firstVisibleItem + visibleItemCount * 2 >= totalItemCount)
+                    showNextPage();
+            }
+        });
 
         adapter = new HeaderFooterListAdapter<CommitFileListAdapter>(list,
                 new CommitFileListAdapter(inflater, diffStyler, null, null));
@@ -250,15 +331,20 @@ public class CommitCompareListFragment extends DialogFragment implements
                     file));
     }
 
-    private void openLine(AdapterView<?> parent, int position) {
-        Object item = null;
-        while (--position >= 0) {
-            item = parent.getItemAtPosition(position);
-            if (item instanceof CommitFile) {
-                openFile((CommitFile) item);
-                return;
-            }
-        }
+    private void openFile(int position, final CommitFile file) {
+        CommitFileListAdapter rootAdapter = adapter.getWrappedAdapter();
+        position -= list.getHeaderViewsCount();
+        if (rootAdapter.isCollapsed(position))
+            rootAdapter.setCollapsed(position, false);
+        else
+            openFile(file);
+    }
+
+    private void openLine(int position) {
+        CommitFile file = adapter.getWrappedAdapter().getFile(
+                position - list.getHeaderViewsCount());
+        if (file != null)
+            openFile(file);
     }
 
     @Override
@@ -268,8 +354,8 @@ public class CommitCompareListFragment extends DialogFragment implements
         if (item instanceof RepositoryCommit)
             openCommit((RepositoryCommit) item);
         else if (item instanceof CommitFile)
-            openFile((CommitFile) item);
+            openFile(position, (CommitFile) item);
         else if (item instanceof CharSequence)
-            openLine(parent, position);
+            openLine(position);
     }
 }
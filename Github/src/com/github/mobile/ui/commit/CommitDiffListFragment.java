@@ -135,6 +135,8 @@ public class CommitDiffListFragment extends DialogFragment implements
         Bundle args = getArguments();
         base = args.getString(EXTRA_BASE);
         repository = (Repository) args.getSerializable(EXTRA_REPOSITORY);
+
+        commentImageGetter.setContentType("commit_comment");
     }
 
     @Override
@@ -165,12 +167,19 @@ public class CommitDiffListFragment extends DialogFragment implements
             Commit rawCommit = commit.getCommit();
             if (rawCommit != null)
                 rawCommit.setCommentCount(rawCommit.getCommentCount() + 1);
-            commentImageGetter.encode(comment, comment.getBodyHtml());
+            commentImageGetter.encode(comment.getId(), comment.getBodyHtml());
             updateItems(comments, files);
         } else
             refreshCommit();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        commentImageGetter.cancelRenders();
+    }
+
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (RESULT_OK == resultCode && COMMENT_CREATE == requestCode
@@ -459,6 +468,15 @@ public class CommitDiffListFragment extends DialogFragment implements
         dialog.show();
     }
 
+    private void openFile(int position, CommitFile file) {
+        CommitFileListAdapter rootAdapter = adapter.getWrappedAdapter();
+        position -= list.getHeaderViewsCount();
+        if (rootAdapter.isCollapsed(position))
+            rootAdapter.setCollapsed(position, false);
+        else
+            openFile(file);
+    }
+
     private void openFile(CommitFile file) {
         if (!TextUtils.isEmpty(file.getFilename())
                 && !TextUtils.isEmpty(file.getSha()))
@@ -467,34 +485,19 @@ public class CommitDiffListFragment extends DialogFragment implements
     }
 
     /**
-     * Select previous file by scanning backwards from the current position
+     * Show options for the line at the given position or the line the line
+     * comment at the given position is on
      *
      * @param position
-     * @param item
-     * @param parent
      */
-    private void selectPreviousFile(int position, Object item,
-            AdapterView<?> parent) {
-        CharSequence line;
-        if (item instanceof CharSequence)
-            line = (CharSequence) item;
-        else
-            line = null;
-
-        int linePosition = 0;
-        while (--position >= 0) {
-            item = parent.getItemAtPosition(position);
-
-            if (item instanceof CommitFile) {
-                if (line != null)
-                    showFileOptions(line, linePosition, (CommitFile) item);
-                break;
-            } else if (item instanceof CharSequence)
-                if (line != null)
-                    linePosition++;
-                else
-                    line = (CharSequence) item;
-        }
+    private void selectLine(int position) {
+        CommitFileListAdapter rootAdapter = adapter.getWrappedAdapter();
+        position -= list.getHeaderViewsCount();
+        CommitFile file = rootAdapter.getFile(position);
+        int line = rootAdapter.getLine(position);
+        if (file != null && line != -1)
+            showFileOptions(diffStyler.get(file.getFilename()).get(line),
+                    line, file);
     }
 
     @Override
@@ -505,11 +508,11 @@ public class CommitDiffListFragment extends DialogFragment implements
             startActivity(CommitViewActivity.createIntent(repository,
                     ((Commit) item).getSha()));
         else if (item instanceof CommitFile)
-            openFile((CommitFile) item);
+            openFile(position, (CommitFile) item);
         else if (item instanceof CharSequence)
-            selectPreviousFile(position, item, parent);
+            selectLine(position);
         else if (item instanceof CommitComment)
             if (!TextUtils.isEmpty(((CommitComment) item).getPath()))
-                selectPreviousFile(position, item, parent);
+                selectLine(position);
     }
 }
@@ -31,6 +31,7 @@ import com.github.mobile.util.AvatarLoader;
 import com.github.mobile.util.HttpImageGetter;
 import com.github.mobile.util.TimeUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.egit.github.core.CommitComment;
@@ -38,6 +39,9 @@ import org.eclipse.egit.github.core.CommitFile;
 
 /**
  * Adapter to display a list of files changed in commits
+ * <p>
+ * Diff lines are not stored as individual items but as ranges of the lines of
+ * each file, and the text of a line is only created when its row is displayed.
  */
 public class CommitFileListAdapter extends MultiTypeAdapter {
 
@@ -49,6 +53,72 @@ public class CommitFileListAdapter extends MultiTypeAdapter {
 
     private static final int TYPE_COMMENT = 3;
 
+    /**
+     * Files with more changed lines than this are collapsed until expanded
+     */
+    private static final int COLLAPSE_THRESHOLD = 500;
+
+    /**
+     * File in the adapter
+     */
+    private static class FileRows {
+
+        private final CommitFile file;
+
+        private final List<CharSequence> lines;
+
+        private boolean collapsed;
+
+        private FileRows(final CommitFile file, final List<CharSequence> lines) {
+            this.file = file;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Consecutive rows of the adapter, either a single item or a range of the
+     * lines of a file
+     */
+    private static class Segment {
+
+        private final int type;
+
+        private final Object item;
+
+        private final FileRows file;
+
+        private final int line;
+
+        private final int size;
+
+        /**
+         * @param type
+         * @param item
+         * @param file
+         *            file the segment belongs to, may be null
+         * @param line
+         *            first line of the file in the segment, or the line a
+         *            line comment is on
+         * @param size
+         *            number of rows in the segment
+         */
+        private Segment(final int type, final Object item,
+                final FileRows file, final int line, final int size) {
+            this.type = type;
+            this.item = item;
+            this.file = file;
+            this.line = line;
+            this.size = size;
+        }
+
+        private int getSize() {
+            if (type != TYPE_FILE_HEADER && file != null && file.collapsed)
+                return 0;
+            else
+                return size;
+        }
+    }
+
     private final DiffStyler diffStyler;
 
     private final HttpImageGetter imageGetter;
@@ -59,6 +129,15 @@ public class CommitFileListAdapter extends MultiTypeAdapter {
 
     private final int removeTextColor;
 
+    private final List<Segment> segments = new ArrayList<Segment>();
+
+    /**
+     * First row of each segment, null when segments have changed
+     */
+    private int[] positions;
+
+    private int count;
+
     /**
      * @param inflater
      * @param diffStyler
@@ -84,22 +163,112 @@ public class CommitFileListAdapter extends MultiTypeAdapter {
         return 4;
     }
 
+    private void updatePositions() {
+        if (positions != null)
+            return;
+
+        final int size = segments.size();
+        positions = new int[size];
+        count = 0;
+        for (int i = 0; i < size; i++) {
+            positions[i] = count;
+            count += segments.get(i).getSize();
+        }
+    }
+
+    /**
+     * Get index of segment containing position
+     *
+     * @param position
+     * @return index
+     */
+    private int getSegmentIndex(final int position) {
+        updatePositions();
+
+        // Find last segment starting at or before position, segments that
+        // are empty always start at the same position as the segment after
+        // them so are never found for a position in range
+        int low = 0;
+        int high = positions.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (positions[middle] <= position)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+    private Segment getSegment(final int position) {
+        return segments.get(getSegmentIndex(position));
+    }
+
+    @Override
+    public int getCount() {
+        updatePositions();
+        return count;
+    }
+
+    @Override
+    public Object getItem(final int position) {
+        final int index = getSegmentIndex(position);
+        final Segment segment = segments.get(index);
+        if (segment.type == TYPE_FILE_LINE)
+            return segment.file.lines.get(segment.line + position
+                    - positions[index]);
+        else
+            return segment.item;
+    }
+
+    @Override
+    public int getItemViewType(final int position) {
+        return getSegment(position).type;
+    }
+
     @Override
     public long getItemId(int position) {
-        switch (getItemViewType(position)) {
+        Segment segment = getSegment(position);
+        switch (segment.type) {
         case TYPE_FILE_HEADER:
-            String sha = ((CommitFile) getItem(position)).getSha();
+            String sha = ((CommitFile) segment.item).getSha();
             if (!TextUtils.isEmpty(sha))
                 return sha.hashCode();
             else
-                return super.getItemId(position);
+                return segment.item.hashCode();
         case TYPE_COMMENT:
         case TYPE_LINE_COMMENT:
-            return ((CommitComment) getItem(position)).getId();
+            return ((CommitComment) segment.item).getId();
         default:
-            return super.getItemId(position);
+            return position;
         }
+    }
 
+    @Override
+    public CommitFileListAdapter clear() {
+        segments.clear();
+        positions = null;
+        super.clear();
+        return this;
+    }
+
+    private void addSegment(final Segment segment) {
+        segments.add(segment);
+        positions = null;
+    }
+
+    private FileRows addHeader(final CommitFile file) {
+        FileRows rows = new FileRows(file, diffStyler.get(file.getFilename()));
+        rows.collapsed = file.getAdditions() + file.getDeletions()
+                > COLLAPSE_THRESHOLD;
+        addSegment(new Segment(TYPE_FILE_HEADER, file, rows, 0, 1));
+        return rows;
+    }
+
+    private void addLines(final FileRows rows, final int start, final int end) {
+        if (end > start)
+            addSegment(new Segment(TYPE_FILE_LINE, null, rows, start, end
+                    - start));
     }
 
     /**
@@ -108,15 +277,20 @@ public class CommitFileListAdapter extends MultiTypeAdapter {
      * @param file
      */
     public void addItem(final FullCommitFile file) {
-        addItem(TYPE_FILE_HEADER, file.getFile());
-        List<CharSequence> lines = diffStyler.get(file.getFile().getFilename());
-        int number = 0;
-        for (CharSequence line : lines) {
-            addItem(TYPE_FILE_LINE, line);
-            for (CommitComment comment : file.get(number))
-                addItem(TYPE_LINE_COMMENT, comment);
-            number++;
+        FileRows rows = addHeader(file.getFile());
+        int size = rows.lines.size();
+        int start = 0;
+        for (int line : file.getCommentedLines()) {
+            if (line >= size)
+                break;
+            addLines(rows, start, line + 1);
+            for (CommitComment comment : file.get(line))
+                addSegment(new Segment(TYPE_LINE_COMMENT, comment, rows, line,
+                        1));
+            start = line + 1;
         }
+        addLines(rows, start, size);
+        notifyDataSetChanged();
     }
 
     /**
@@ -125,8 +299,9 @@ public class CommitFileListAdapter extends MultiTypeAdapter {
      * @param file
      */
     public void addItem(final CommitFile file) {
-        addItem(TYPE_FILE_HEADER, file);
-        addItems(TYPE_FILE_LINE, diffStyler.get(file.getFilename()));
+        FileRows rows = addHeader(file);
+        addLines(rows, 0, rows.lines.size());
+        notifyDataSetChanged();
     }
 
     /**
@@ -135,7 +310,68 @@ public class CommitFileListAdapter extends MultiTypeAdapter {
      * @param comment
      */
     public void addComment(final CommitComment comment) {
-        addItem(TYPE_COMMENT, comment);
+        addSegment(new Segment(TYPE_COMMENT, comment, null, -1, 1));
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Get file of the header, line or line comment at position
+     *
+     * @param position
+     * @return file or null if position is not in a file
+     */
+    public CommitFile getFile(final int position) {
+        FileRows rows = getSegment(position).file;
+        return rows != null ? rows.file : null;
+    }
+
+    /**
+     * Get the line number in its file of the line at position, or of the line
+     * a line comment at position is on
+     *
+     * @param position
+     * @return line number or -1 if position is not a line or line comment
+     */
+    public int getLine(final int position) {
+        final int index = getSegmentIndex(position);
+        final Segment segment = segments.get(index);
+        switch (segment.type) {
+        case TYPE_FILE_LINE:
+            return segment.line + position - positions[index];
+        case TYPE_LINE_COMMENT:
+            return segment.line;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * Is the file of the header at position collapsed?
+     *
+     * @param position
+     * @return true if collapsed, false otherwise
+     */
+    public boolean isCollapsed(final int position) {
+        FileRows rows = getSegment(position).file;
+        return rows != null && rows.collapsed;
+    }
+
+    /**
+     * Expand or collapse the lines of the file of the header at position
+     *
+     * @param position
+     * @param collapsed
+     * @return this adapter
+     */
+    public CommitFileListAdapter setCollapsed(final int position,
+            final boolean collapsed) {
+        FileRows rows = getSegment(position).file;
+        if (rows != null && rows.collapsed != collapsed) {
+            rows.collapsed = collapsed;
+            positions = null;
+            notifyDataSetChanged();
+        }
+        return this;
     }
 
     @Override
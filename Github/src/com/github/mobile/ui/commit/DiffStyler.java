@@ -22,12 +22,13 @@ import android.widget.TextView;
 import com.github.mobile.R.color;
 import com.github.mobile.R.drawable;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 
 import org.eclipse.egit.github.core.CommitFile;
 
@@ -36,6 +37,43 @@ import org.eclipse.egit.github.core.CommitFile;
  */
 public class DiffStyler {
 
+    /**
+     * Lines of a patch backed by the offsets of each line in the patch so a
+     * line's text is only created when it is requested
+     */
+    private static class PatchLines extends AbstractList<CharSequence>
+            implements RandomAccess {
+
+        private final String patch;
+
+        /**
+         * Start offset of each line followed by one past the end of the last
+         * line
+         */
+        private final int[] starts;
+
+        private final int size;
+
+        private PatchLines(final String patch, final int[] starts,
+                final int size) {
+            this.patch = patch;
+            this.starts = starts;
+            this.size = size;
+        }
+
+        @Override
+        public CharSequence get(final int location) {
+            if (location < 0 || location >= size)
+                throw new IndexOutOfBoundsException();
+            return patch.substring(starts[location], starts[location + 1] - 1);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
     private final Map<String, List<CharSequence>> diffs = new HashMap<String, List<CharSequence>>();
 
     private final int markerColor;
@@ -100,6 +138,16 @@ public class DiffStyler {
      */
     public DiffStyler setFiles(final Collection<CommitFile> files) {
         diffs.clear();
+        return addFiles(files);
+    }
+
+    /**
+     * Add files to styler
+     *
+     * @param files
+     * @return this styler
+     */
+    public DiffStyler addFiles(final Collection<CommitFile> files) {
         if (files == null || files.isEmpty())
             return this;
 
@@ -111,19 +159,29 @@ public class DiffStyler {
             int start = 0;
             int length = patch.length();
             int end = nextLine(patch, start, length);
-            List<CharSequence> lines = new ArrayList<CharSequence>();
+            int[] starts = new int[32];
+            int count = 0;
             while (start < length) {
-                lines.add(patch.substring(start, end));
+                if (count + 1 == starts.length) {
+                    int[] grown = new int[starts.length * 2];
+                    System.arraycopy(starts, 0, grown, 0, count);
+                    starts = grown;
+                }
+                starts[count++] = start;
                 start = end + 1;
                 end = nextLine(patch, start, length);
             }
-            diffs.put(file.getFilename(), lines);
+            starts[count] = start;
+            diffs.put(file.getFilename(), new PatchLines(patch, starts, count));
         }
         return this;
     }
 
     /**
      * Get lines for file path
+     * <p>
+     * The text of each line is created when it is requested from the returned
+     * list
      *
      * @param file
      * @return styled text
@@ -120,6 +120,8 @@ public class GistFragment extends DialogFragment implements OnItemClickListener
         super.onCreate(savedInstanceState);
 
         gistId = getArguments().getString(EXTRA_GIST_ID);
+
+        imageGetter.setContentType("gist_comment");
     }
 
     @Override
@@ -324,6 +326,13 @@ public class GistFragment extends DialogFragment implements OnItemClickListener
         }.execute();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        imageGetter.cancelRenders();
+    }
+
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (RESULT_OK == resultCode && COMMENT_CREATE == requestCode
@@ -23,14 +23,18 @@ import android.widget.ListView;
 
 import com.github.kevinsawicki.wishlist.SingleTypeAdapter;
 import com.github.mobile.R.string;
+import com.github.mobile.accounts.GitHubAccount;
 import com.github.mobile.core.ResourcePager;
 import com.github.mobile.core.issue.IssueStore;
 import com.github.mobile.ui.PagedItemFragment;
 import com.github.mobile.util.AvatarLoader;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.eclipse.egit.github.core.RepositoryIssue;
 import org.eclipse.egit.github.core.client.PageIterator;
@@ -55,6 +59,9 @@ public class DashboardIssueFragment extends PagedItemFragment<RepositoryIssue> {
     @Inject
     private AvatarLoader avatars;
 
+    @Inject
+    private Provider<GitHubAccount> accountProvider;
+
     private Map<String, String> filterData;
 
     @SuppressWarnings("unchecked")
@@ -84,13 +91,31 @@ public class DashboardIssueFragment extends PagedItemFragment<RepositoryIssue> {
                         - getListAdapter().getHeadersCount()), ISSUE_VIEW);
     }
 
+    @SuppressWarnings("unchecked")
+    private String getStoredListKey() {
+        Map<String, String> filter = (Map<String, String>) getArguments()
+                .getSerializable(ARG_FILTER);
+        return "dashboard:" + accountProvider.get().getUsername() + '?'
+                + new TreeMap<String, String>(filter);
+    }
+
+    @Override
+    protected List<RepositoryIssue> loadStoredItems() {
+        return store.getStoredIssues(getStoredListKey());
+    }
+
+    @Override
+    protected void storeItems(List<RepositoryIssue> items) {
+        store.storeIssues(getStoredListKey(), items);
+    }
+
     @Override
     protected ResourcePager<RepositoryIssue> createPager() {
         return new ResourcePager<RepositoryIssue>() {
 
             @Override
-            protected RepositoryIssue register(RepositoryIssue resource) {
-                return store.addIssue(resource);
+            protected void add(Collection<RepositoryIssue> resourcePage) {
+                super.add(store.addIssues(resourcePage));
             }
 
             @Override
@@ -181,6 +181,9 @@ public class IssueFragment extends DialogFragment {
         user = (User) args.getSerializable(EXTRA_USER);
         isCollaborator = args.getBoolean(EXTRA_IS_COLLABORATOR, false);
 
+        bodyImageGetter.setContentType("issue");
+        commentImageGetter.setContentType("issue_comment");
+
         DialogFragmentActivity dialogActivity = (DialogFragmentActivity) getActivity();
 
         milestoneTask = new EditMilestoneTask(dialogActivity, repositoryId,
@@ -531,6 +534,14 @@ public class IssueFragment extends DialogFragment {
         updateStateItem(issue);
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        bodyImageGetter.cancelRenders();
+        commentImageGetter.cancelRenders();
+    }
+
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (RESULT_OK != resultCode || data == null)
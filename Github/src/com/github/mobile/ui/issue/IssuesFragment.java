@@ -51,8 +51,10 @@ import com.github.mobile.util.AvatarLoader;
 import com.github.mobile.util.ToastUtils;
 import com.google.inject.Inject;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.TreeMap;
 
 import org.eclipse.egit.github.core.Issue;
 import org.eclipse.egit.github.core.Label;
@@ -255,6 +257,21 @@ public class IssuesFragment extends PagedItemFragment<Issue> {
         super.onActivityResult(requestCode, resultCode, data);
     }
 
+    private String getStoredListKey() {
+        return "repo:" + repository.generateId() + '?'
+                + new TreeMap<String, String>(filter.toFilterMap());
+    }
+
+    @Override
+    protected List<Issue> loadStoredItems() {
+        return new ArrayList<Issue>(store.getStoredIssues(getStoredListKey()));
+    }
+
+    @Override
+    protected void storeItems(List<Issue> items) {
+        store.storeIssues(getStoredListKey(), items);
+    }
+
     @Override
     protected ResourcePager<Issue> createPager() {
         return new IssuePager(store) {
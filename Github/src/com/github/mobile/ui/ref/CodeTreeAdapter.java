@@ -90,8 +90,8 @@ public class CodeTreeAdapter extends MultiTypeAdapter {
     public void setItems(final Folder root) {
         clear();
 
-        addItems(TYPE_TREE, root.folders.values());
-        addItems(TYPE_BLOB, root.files.values());
+        addItems(TYPE_TREE, root.getFolders());
+        addItems(TYPE_BLOB, root.getFiles());
     }
 
     @Override
@@ -112,7 +112,8 @@ public class CodeTreeAdapter extends MultiTypeAdapter {
         case TYPE_BLOB:
             return new int[] { id.tv_file, id.tv_size };
         case TYPE_TREE:
-            return new int[] { id.tv_folder, id.tv_folders, id.tv_files };
+            return new int[] { id.tv_folder, id.tv_folders, id.tv_files,
+                    id.tv_folders_icon, id.tv_files_icon };
         default:
             return null;
         }
@@ -161,8 +162,14 @@ public class CodeTreeAdapter extends MultiTypeAdapter {
         case TYPE_TREE:
             Folder folder = (Folder) item;
             setText(0, CommitUtils.getName(folder.name));
-            setNumber(1, folder.folders.size());
-            setNumber(2, folder.files.size());
+            // Counts are unknown until the folder has been loaded
+            boolean loaded = folder.isLoaded();
+            for (int i = 1; i <= 4; i++)
+                setGone(i, !loaded);
+            if (loaded) {
+                setNumber(1, folder.getFolderCount());
+                setNumber(2, folder.getFileCount());
+            }
             break;
         }
     }
@@ -19,6 +19,7 @@ import static java.lang.String.CASE_INSENSITIVE_ORDER;
 import android.content.Context;
 import android.os.AsyncTask;
 
+import com.github.mobile.RequestCodecs;
 import com.github.mobile.RequestReader;
 import com.github.mobile.RequestWriter;
 
@@ -68,7 +69,8 @@ public class RecentRepositories implements Comparator<Repository>, Serializable
     }
 
     private void load() {
-        LinkedHashSet<Long> loaded = new RequestReader(file, VERSION).read();
+        LinkedHashSet<Long> loaded = new RequestReader(file, VERSION)
+                .read(RequestCodecs.LONG_SET);
         if (loaded == null)
             loaded = new LinkedHashSet<Long>();
         ids = loaded;
@@ -157,7 +159,8 @@ public class RecentRepositories implements Comparator<Repository>, Serializable
     public RecentRepositories save() {
         final LinkedHashSet<Long> save = ids;
         if (save != null)
-            new RequestWriter(file, VERSION).write(save);
+            new RequestWriter(file, VERSION).write(save,
+                    RequestCodecs.LONG_SET);
         return this;
     }
 
@@ -21,23 +21,35 @@ import static com.github.mobile.ResultCodes.RESOURCE_CHANGED;
 import static java.util.Locale.US;
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.v4.content.Loader;
+import android.text.Editable;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.view.ViewGroup;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.EditText;
 import android.widget.ListView;
 
+import com.actionbarsherlock.view.Menu;
+import com.actionbarsherlock.view.MenuInflater;
+import com.actionbarsherlock.view.MenuItem;
 import com.github.kevinsawicki.wishlist.SingleTypeAdapter;
 import com.github.kevinsawicki.wishlist.ViewFinder;
+import com.github.kevinsawicki.wishlist.ViewUtils;
 import com.github.mobile.R.id;
 import com.github.mobile.R.layout;
+import com.github.mobile.R.menu;
 import com.github.mobile.R.string;
 import com.github.mobile.ThrowableLoader;
 import com.github.mobile.persistence.AccountDataManager;
 import com.github.mobile.ui.HeaderFooterListAdapter;
 import com.github.mobile.ui.ItemListFragment;
 import com.github.mobile.ui.LightAlertDialog;
+import com.github.mobile.ui.TextWatcherAdapter;
 import com.github.mobile.ui.user.OrganizationSelectionListener;
 import com.github.mobile.ui.user.OrganizationSelectionProvider;
 import com.github.mobile.ui.user.UserViewActivity;
@@ -46,17 +58,26 @@ import com.google.inject.Inject;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.egit.github.core.Repository;
 import org.eclipse.egit.github.core.User;
 
+import roboguice.util.RoboAsyncTask;
+
 /**
  * Fragment to display a list of {@link Repository} instances
  */
 public class RepositoryListFragment extends ItemListFragment<Repository>
         implements OrganizationSelectionListener {
 
+    /**
+     * Executor for filtering repositories so only one query runs at a time
+     */
+    private static final Executor FILTER = Executors.newSingleThreadExecutor();
+
     @Inject
     private AccountDataManager cache;
 
@@ -67,6 +88,10 @@ public class RepositoryListFragment extends ItemListFragment<Repository>
 
     private RecentRepositories recentRepos;
 
+    private EditText filterText;
+
+    private boolean filtering;
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -76,6 +101,127 @@ public class RepositoryListFragment extends ItemListFragment<Repository>
             outState.putSerializable(EXTRA_USER, org);
     }
 
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+            Bundle savedInstanceState) {
+        return inflater.inflate(layout.repo_list, null);
+    }
+
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        filterText = (EditText) view.findViewById(id.et_filter);
+        filterText.addTextChangedListener(new TextWatcherAdapter() {
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                filter(s.toString());
+            }
+        });
+        if (filtering)
+            ViewUtils.setGone(filterText, false);
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu optionsMenu, MenuInflater inflater) {
+        inflater.inflate(menu.repo_list, optionsMenu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (!isUsable())
+            return false;
+
+        switch (item.getItemId()) {
+        case id.m_filter:
+            if (filtering)
+                hideFilter();
+            else
+                showFilter();
+            return true;
+        default:
+            return super.onOptionsItemSelected(item);
+        }
+    }
+
+    private void showFilter() {
+        filtering = true;
+        ViewUtils.setGone(filterText, false);
+        filterText.requestFocus();
+        InputMethodManager manager = (InputMethodManager) getActivity()
+                .getSystemService(Context.INPUT_METHOD_SERVICE);
+        manager.showSoftInput(filterText, InputMethodManager.SHOW_IMPLICIT);
+        filter(filterText.getText().toString());
+    }
+
+    private void hideFilter() {
+        filtering = false;
+        InputMethodManager manager = (InputMethodManager) getActivity()
+                .getSystemService(Context.INPUT_METHOD_SERVICE);
+        manager.hideSoftInputFromWindow(filterText.getWindowToken(), 0);
+        ViewUtils.setGone(filterText, true);
+        showRepositories(items);
+    }
+
+    /**
+     * Show the stored repositories that match the query
+     * <p>
+     * Repositories are matched against the full-text index of the cache
+     * database so no requests are made
+     *
+     * @param query
+     */
+    private void filter(final String query) {
+        final User currentOrg = org.get();
+        if (!filtering || currentOrg == null)
+            return;
+        if (query.trim().length() == 0) {
+            showRepositories(items);
+            return;
+        }
+
+        final RecentRepositories recent = recentRepos;
+        new RoboAsyncTask<List<Repository>>(getActivity(), FILTER) {
+
+            @Override
+            public List<Repository> call() throws Exception {
+                List<Repository> repos = cache.searchRepos(currentOrg, query);
+                if (recent != null)
+                    Collections.sort(repos, recent);
+                return repos;
+            }
+
+            @Override
+            protected void onSuccess(List<Repository> repos) throws Exception {
+                super.onSuccess(repos);
+
+                // Drop results of queries that have since been replaced
+                if (filtering && isUsable() && currentOrg == org.get()
+                        && query.equals(filterText.getText().toString()))
+                    showRepositories(repos);
+            }
+        }.execute();
+    }
+
+    private void showRepositories(final List<Repository> repos) {
+        HeaderFooterListAdapter<SingleTypeAdapter<Repository>> adapter = getListAdapter();
+        if (adapter == null)
+            return;
+
+        updateHeaders(repos);
+        adapter.getWrappedAdapter().setItems(repos.toArray());
+    }
+
+    @Override
+    public void onLoadFinished(Loader<List<Repository>> loader,
+            List<Repository> items) {
+        super.onLoadFinished(loader, items);
+
+        if (filtering && filterText != null)
+            filter(filterText.getText().toString());
+    }
+
     @Override
     protected void configureList(Activity activity, ListView listView) {
         super.configureList(activity, listView);
@@ -47,7 +47,12 @@ public class RepositoryNewsFragment extends NewsFragment {
 
     @Override
     protected ResourcePager<Event> createPager() {
-        return new EventPager() {
+        return new EventPager(eventCache) {
+
+            @Override
+            protected String getFeed() {
+                return "repo/" + repo.generateId();
+            }
 
             @Override
             public PageIterator<Event> createIterator(int page, int size) {
@@ -16,14 +16,131 @@
 package com.github.mobile.ui.user;
 
 import com.github.mobile.core.ResourcePager;
+import com.github.mobile.persistence.EventCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.egit.github.core.event.Event;
 
 /**
  * Pager over events
+ * <p>
+ * Pagers created with an {@link EventCache} store the events of their feed and
+ * on the first call to {@link #next()} only request pages until reaching the
+ * newest stored event, the stored events then follow the requested ones.
  */
 public abstract class EventPager extends ResourcePager<Event> {
 
+    /**
+     * Number of events in each page of a feed
+     */
+    private static final int PAGE_SIZE = 30;
+
+    /**
+     * Maximum number of pages to request before reaching the stored events
+     */
+    private static final int MAX_CATCH_UP_PAGES = EventCache.MAX_EVENTS
+            / PAGE_SIZE;
+
+    private final EventCache cache;
+
+    /**
+     * Create pager that does not store events
+     */
+    public EventPager() {
+        this(null);
+    }
+
+    /**
+     * Create pager that stores the events of its feed in the cache
+     *
+     * @param cache
+     */
+    public EventPager(final EventCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Get the key the events of this pager's feed are stored under
+     * <p>
+     * Sub-classes created with a cache should override. Called on a background
+     * thread.
+     *
+     * @return feed or null to not store events
+     */
+    protected String getFeed() {
+        return null;
+    }
+
+    /**
+     * Get the stored events of this pager's feed
+     * <p>
+     * This method performs database I/O and should never be called on the
+     * UI-thread
+     *
+     * @return events or null if not stored
+     */
+    public List<Event> getStoredEvents() {
+        String feed = cache != null ? getFeed() : null;
+        return feed != null ? cache.getEvents(feed) : null;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        final String feed = cache != null ? getFeed() : null;
+        if (feed == null)
+            return super.next();
+
+        final int loaded = size();
+        final List<Event> stored = loaded == 0 ? cache.getEvents(feed) : null;
+        if (stored == null || stored.isEmpty()) {
+            boolean more = super.next();
+            store(feed, loaded);
+            return more;
+        }
+
+        // Request the newest pages until one contains the newest stored event
+        // without prefetching pages that the stored events may make unneeded
+        count = 1;
+        final String newest = stored.get(0).getId();
+        final int prefetchDepth = getPrefetchDepth();
+        setPrefetchDepth(0);
+        boolean more;
+        try {
+            more = super.next();
+            for (int pages = 1; more && pages < MAX_CATCH_UP_PAGES
+                    && !resources.containsKey(newest); pages++)
+                more = super.next();
+        } finally {
+            setPrefetchDepth(prefetchDepth);
+        }
+        store(feed, 0);
+        if (!resources.containsKey(newest))
+            return more;
+
+        List<Event> missing = new ArrayList<Event>(stored.size());
+        for (Event event : stored)
+            if (!resources.containsKey(event.getId()))
+                missing.add(event);
+        add(missing);
+
+        // Continue from the page holding the oldest stored event, events
+        // requested again are dropped by id
+        page = Math.max(page, size() / PAGE_SIZE + 1);
+        if (size() >= EventCache.MAX_EVENTS)
+            more = false;
+        hasMore = more;
+        return more;
+    }
+
+    private void store(final String feed, final int from) {
+        List<Event> events = getResources();
+        if (events.size() > from)
+            cache.putEvents(feed, events.subList(from, events.size()));
+    }
+
     @Override
     protected Object getId(Event resource) {
         return resource.getId();
@@ -171,7 +171,7 @@ public class HomeDropdownListAdapter extends SingleTypeAdapter<Object> {
 
     private void setActionIcon(ImageView image, int drawable) {
         image.setImageResource(drawable);
-        image.setTag(id.iv_avatar, null);
+        avatars.unbind(image);
     }
 
     @Override
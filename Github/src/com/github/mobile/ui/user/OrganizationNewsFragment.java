@@ -28,7 +28,12 @@ public class OrganizationNewsFragment extends UserNewsFragment {
 
     @Override
     protected ResourcePager<Event> createPager() {
-        return new EventPager() {
+        return new EventPager(eventCache) {
+
+            @Override
+            protected String getFeed() {
+                return "org/" + org.getLogin();
+            }
 
             @Override
             public PageIterator<Event> createIterator(int page, int size) {
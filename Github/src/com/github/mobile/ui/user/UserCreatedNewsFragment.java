@@ -27,7 +27,12 @@ public class UserCreatedNewsFragment extends UserNewsFragment {
 
     @Override
     protected ResourcePager<Event> createPager() {
-        return new EventPager() {
+        return new EventPager(eventCache) {
+
+            @Override
+            protected String getFeed() {
+                return "created/" + org.getLogin();
+            }
 
             @Override
             public PageIterator<Event> createIterator(int page, int size) {
@@ -27,7 +27,12 @@ public class UserReceivedNewsFragment extends UserNewsFragment {
 
     @Override
     protected ResourcePager<Event> createPager() {
-        return new EventPager() {
+        return new EventPager(eventCache) {
+
+            @Override
+            protected String getFeed() {
+                return "received/" + org.getLogin();
+            }
 
             @Override
             public PageIterator<Event> createIterator(int page, int size) {
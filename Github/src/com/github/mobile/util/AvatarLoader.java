@@ -15,41 +15,51 @@
  */
 package com.github.mobile.util;
 
+import static android.graphics.Bitmap.CompressFormat.JPEG;
 import static android.graphics.Bitmap.CompressFormat.PNG;
 import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.graphics.Bitmap.Config.RGB_565;
 import static android.view.View.VISIBLE;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
 import android.text.TextUtils;
 import android.util.Log;
 import android.widget.ImageView;
 
 import com.actionbarsherlock.app.ActionBar;
 import com.github.kevinsawicki.http.HttpRequest;
+import com.github.kevinsawicki.http.HttpRequest.HttpRequestException;
 import com.github.mobile.R.drawable;
 import com.github.mobile.R.id;
 import com.github.mobile.core.search.SearchUser;
 import com.google.inject.Inject;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.LinkedHashMap;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.egit.github.core.CommitUser;
 import org.eclipse.egit.github.core.Contributor;
 import org.eclipse.egit.github.core.User;
 
-import roboguice.util.RoboAsyncTask;
-
 /**
  * Avatar utilities
  */
@@ -59,45 +69,274 @@ public class AvatarLoader {
 
     private static final float CORNER_RADIUS_IN_DIP = 3;
 
-    private static final int CACHE_SIZE = 75;
+    /**
+     * Size of the largest avatar view, avatars are decoded no larger than
+     * needed to fill it
+     */
+    private static final float MAX_AVATAR_SIZE_IN_DIP = 40;
 
-    private static abstract class FetchAvatarTask extends
-            RoboAsyncTask<BitmapDrawable> {
+    /**
+     * Maximum number of bytes of avatar images to keep on disk
+     */
+    private static final long DISK_CACHE_SIZE = 4 * 1024 * 1024;
 
-        private static final Executor EXECUTOR = Executors
-                .newFixedThreadPool(1);
+    /**
+     * Decoded avatars shared by all loaders, bounded by bitmap bytes and keyed
+     * by avatar URL
+     */
+    private static final LruCache<String, Bitmap> MEMORY_CACHE = new LruCache<String, Bitmap>(
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 16,
+                    Integer.MAX_VALUE)) {
 
-        private FetchAvatarTask(Context context) {
-            super(context, EXECUTOR);
+        @Override
+        protected int sizeOf(final String key, final Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
         }
+    };
 
-        @Override
-        protected void onException(Exception e) throws RuntimeException {
-            Log.d(TAG, "Avatar load failed", e);
+    private static FileCache diskCache;
+
+    /**
+     * Get disk cache of processed avatars, creating it if needed
+     * <p>
+     * This method performs file I/O and should never be called on the
+     * UI-thread
+     *
+     * @param context
+     * @return cache
+     */
+    private static synchronized FileCache getDiskCache(final Context context) {
+        if (diskCache == null) {
+            final File cacheDir = context.getCacheDir();
+            deleteLegacyAvatars(new File(cacheDir, "avatars/github.com"));
+            diskCache = new FileCache(new File(cacheDir, "avatar-cache"),
+                    DISK_CACHE_SIZE);
         }
+        return diskCache;
     }
 
-    private final float cornerRadius;
+    /**
+     * Delete avatars stored in per-user directories by earlier versions
+     *
+     * @param dir
+     */
+    private static void deleteLegacyAvatars(final File dir) {
+        final File[] userDirs = dir.listFiles();
+        if (userDirs == null)
+            return;
+
+        for (File userDir : userDirs) {
+            final File[] avatars = userDir.listFiles();
+            if (avatars != null)
+                for (File avatar : avatars)
+                    avatar.delete();
+            userDir.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Get statistics for the memory and disk avatar caches
+     *
+     * @return statistics
+     */
+    public static String getCacheStats() {
+        final FileCache disk;
+        synchronized (AvatarLoader.class) {
+            disk = diskCache;
+        }
+        return MEMORY_CACHE + " size=" + MEMORY_CACHE.size() + " evictions="
+                + MEMORY_CACHE.evictionCount() + ", " + disk;
+    }
+
+    /**
+     * Number of threads downloading avatars concurrently
+     */
+    private static final int NETWORK_THREADS = 3;
+
+    /**
+     * Downloads, most recently requested first so avatars for rows that are
+     * currently visible load before rows that have been scrolled past
+     */
+    private static final ThreadPoolExecutor NETWORK = new ThreadPoolExecutor(
+            NETWORK_THREADS, NETWORK_THREADS, 0, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<Runnable>());
+
+    /**
+     * Disk reads, decoding and processing of downloaded avatars
+     */
+    private static final Executor DECODER = Executors
+            .newSingleThreadExecutor();
+
+    private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * In-flight requests by avatar URL, only accessed from the UI-thread
+     */
+    private static final Map<String, AvatarRequest> REQUESTS = new HashMap<String, AvatarRequest>();
+
+    private static long sequence;
+
+    /**
+     * Destination of a loaded avatar
+     */
+    private interface Target {
+
+        /**
+         * @return true if the avatar should still be delivered to this target
+         */
+        boolean isWanted();
+
+        /**
+         * Deliver avatar to this target
+         *
+         * @param avatar
+         */
+        void set(Bitmap avatar);
+    }
+
+    /**
+     * Request for a single avatar URL shared by every target waiting on it
+     * <p>
+     * The request is dropped before downloading or decoding if none of its
+     * targets still want it, such as when all of its views have been
+     * recycled for other rows
+     */
+    private class AvatarRequest implements Runnable, Comparable<AvatarRequest> {
+
+        private final String url;
+
+        private final List<Target> targets = new CopyOnWriteArrayList<Target>();
+
+        private volatile long priority;
 
-    private final Map<Object, BitmapDrawable> loaded = new LinkedHashMap<Object, BitmapDrawable>(
-            CACHE_SIZE, 1.0F) {
+        private AvatarRequest(final String url) {
+            this.url = url;
+        }
+
+        private boolean isWanted() {
+            for (Target target : targets)
+                if (target.isWanted())
+                    return true;
+            return false;
+        }
 
-        private static final long serialVersionUID = -4191624209581976720L;
+        private void start() {
+            DECODER.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (!isWanted()) {
+                        drop();
+                        return;
+                    }
+
+                    Bitmap avatar = null;
+                    try {
+                        avatar = getImageBy(url);
+                    } catch (RuntimeException e) {
+                        Log.d(TAG, "Avatar load failed", e);
+                    }
+                    if (avatar != null)
+                        finish(avatar);
+                    else
+                        NETWORK.execute(AvatarRequest.this);
+                }
+            });
+        }
 
         @Override
-        protected boolean removeEldestEntry(
-                Map.Entry<Object, BitmapDrawable> eldest) {
-            return size() >= CACHE_SIZE;
+        public void run() {
+            if (!isWanted()) {
+                drop();
+                return;
+            }
+
+            final byte[] rawAvatar;
+            try {
+                rawAvatar = download(url);
+            } catch (RuntimeException e) {
+                Log.d(TAG, "Avatar download failed", e);
+                finish(null);
+                return;
+            }
+            if (rawAvatar == null) {
+                finish(null);
+                return;
+            }
+
+            DECODER.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    Bitmap avatar = null;
+                    try {
+                        avatar = process(url, rawAvatar);
+                    } catch (RuntimeException e) {
+                        Log.d(TAG, "Avatar decode failed", e);
+                    }
+                    finish(avatar);
+                }
+            });
         }
-    };
 
-    private final Context context;
+        /**
+         * Drop this request since none of its targets want it
+         * <p>
+         * Targets may join this request on the UI-thread after the check made
+         * in the background so the request is started again if one of them
+         * wants it by the time it would be dropped
+         */
+        private void drop() {
+            HANDLER.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (REQUESTS.get(url) != AvatarRequest.this)
+                        return;
+                    if (isWanted())
+                        start();
+                    else
+                        REQUESTS.remove(url);
+                }
+            });
+        }
+
+        private void finish(final Bitmap avatar) {
+            HANDLER.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (REQUESTS.get(url) == AvatarRequest.this)
+                        REQUESTS.remove(url);
+                    if (avatar == null)
+                        return;
 
-    private final File avatarDir;
+                    MEMORY_CACHE.put(url, avatar);
+                    for (Target target : targets)
+                        if (target.isWanted())
+                            target.set(avatar);
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(final AvatarRequest another) {
+            if (priority > another.priority)
+                return -1;
+            if (priority < another.priority)
+                return 1;
+            return 0;
+        }
+    }
+
+    private final float cornerRadius;
+
+    private final Context context;
 
     private final Drawable loadingAvatar;
 
-    private final Options options;
+    private final int avatarSize;
 
     /**
      * Create avatar helper
@@ -111,92 +350,116 @@ public class AvatarLoader {
         loadingAvatar = context.getResources().getDrawable(
                 drawable.gravatar_icon);
 
-        avatarDir = new File(context.getCacheDir(), "avatars/github.com");
-        if (!avatarDir.isDirectory())
-            avatarDir.mkdirs();
-
         float density = context.getResources().getDisplayMetrics().density;
         cornerRadius = CORNER_RADIUS_IN_DIP * density;
 
-        options = new Options();
-        options.inDither = false;
-        options.inPreferredConfig = ARGB_8888;
+        avatarSize = Math.round(MAX_AVATAR_SIZE_IN_DIP * density);
     }
 
-    private BitmapDrawable getImageBy(final String userId, final String filename) {
-        File avatarFile = new File(avatarDir + "/" + userId, filename);
-
-        if (!avatarFile.exists() || avatarFile.length() == 0)
+    private Bitmap getImageBy(final String avatarUrl) {
+        FileCache cache = getDiskCache(context);
+        File avatarFile = cache.get(avatarUrl);
+        if (avatarFile == null)
             return null;
 
-        Bitmap bitmap = decode(avatarFile);
-        if (bitmap != null)
-            return new BitmapDrawable(context.getResources(), bitmap);
-        else {
-            avatarFile.delete();
-            return null;
-        }
+        Options bounds = new Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(avatarFile.getAbsolutePath(), bounds);
+        Bitmap bitmap = BitmapFactory.decodeFile(avatarFile.getAbsolutePath(),
+                getDecodeOptions(bounds));
+        if (bitmap == null)
+            cache.remove(avatarUrl);
+        return bitmap;
     }
 
-    private void deleteCachedUserAvatars(final File userAvatarDir) {
-        if (userAvatarDir.isDirectory())
-          for (File userAvatar : userAvatarDir.listFiles())
-              userAvatar.delete();
-        userAvatarDir.delete();
+    /**
+     * Get options to decode an image with the given bounds to the largest
+     * power of two reduction that is still at least {@link #avatarSize}
+     *
+     * @param bounds
+     * @return options
+     */
+    private Options getDecodeOptions(final Options bounds) {
+        Options options = new Options();
+        options.inDither = false;
+        options.inSampleSize = ImageUtils.getSampleSize(bounds.outWidth,
+                bounds.outHeight, avatarSize);
+        if ("image/jpeg".equals(bounds.outMimeType))
+            options.inPreferredConfig = RGB_565;
+        else
+            options.inPreferredConfig = ARGB_8888;
+        return options;
     }
 
-    private Bitmap decode(final File file) {
-        return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+    private Drawable getLoaded(final String avatarUrl) {
+        Bitmap bitmap = MEMORY_CACHE.get(avatarUrl);
+        return bitmap != null ? createDrawable(bitmap) : null;
     }
 
-    private String getAvatarFilenameForUrl(final String avatarUrl) {
-        return GravatarUtils.getHash(avatarUrl);
+    private Drawable createDrawable(final Bitmap avatar) {
+        return new RoundedAvatarDrawable(avatar, cornerRadius);
     }
 
     /**
-     * Fetch avatar from URL
+     * Download avatar from URL
      *
      * @param url
-     * @param cachedAvatarFilename
-     * @return bitmap
+     * @return image bytes or null if the download failed
      */
-    protected BitmapDrawable fetchAvatar(final String url,
-            final String userId, final String cachedAvatarFilename) {
-        File userAvatarDir = new File(avatarDir, userId);
-        deleteCachedUserAvatars(userAvatarDir);
-        userAvatarDir.mkdirs();
-
-        File rawAvatar = new File(userAvatarDir, cachedAvatarFilename + "-raw");
-        HttpRequest request = HttpRequest.get(url);
-        if (request.ok())
-            request.receive(rawAvatar);
-
-        if (!rawAvatar.exists() || rawAvatar.length() == 0)
-            return null;
+    protected byte[] download(final String url) {
+        try {
+            HttpRequest request = HttpRequest.get(url);
+            if (!request.ok())
+                return null;
 
-        Bitmap bitmap = decode(rawAvatar);
-        if (bitmap == null) {
-            rawAvatar.delete();
+            byte[] image = request.bytes();
+            return image.length > 0 ? image : null;
+        } catch (HttpRequestException e) {
+            Log.d(TAG, "Exception downloading avatar", e);
             return null;
         }
+    }
 
-        bitmap = ImageUtils.roundCorners(bitmap, cornerRadius);
-        if (bitmap == null) {
-            rawAvatar.delete();
+    /**
+     * Decode downloaded avatar at {@link #avatarSize} and store the decoded
+     * thumbnail in the disk cache
+     * <p>
+     * Images that are already small enough are stored as downloaded rather
+     * than being encoded again
+     *
+     * @param url
+     * @param rawAvatar
+     * @return bitmap
+     */
+    protected Bitmap process(final String url, final byte[] rawAvatar) {
+        Options bounds = new Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(rawAvatar, 0, rawAvatar.length, bounds);
+        Options options = getDecodeOptions(bounds);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(rawAvatar, 0,
+                rawAvatar.length, options);
+        if (bitmap == null)
             return null;
-        }
 
-        File roundedAvatar = new File(userAvatarDir, cachedAvatarFilename);
-        FileOutputStream output = null;
+        FileCache cache = getDiskCache(context);
+        File thumbnail = null;
+        OutputStream output = null;
         try {
-            output = new FileOutputStream(roundedAvatar);
-            if (bitmap.compress(PNG, 100, output))
-                return new BitmapDrawable(context.getResources(), bitmap);
-            else
-                return null;
+            thumbnail = cache.createTempFile();
+            output = new BufferedOutputStream(new FileOutputStream(thumbnail));
+            if (options.inSampleSize == 1)
+                output.write(rawAvatar);
+            else if (bitmap.hasAlpha()) {
+                if (!bitmap.compress(PNG, 100, output))
+                    return bitmap;
+            } else if (!bitmap.compress(JPEG, 90, output))
+                return bitmap;
+            output.close();
+            output = null;
+            cache.commit(thumbnail, url);
+            thumbnail = null;
         } catch (IOException e) {
-            Log.d(TAG, "Exception writing rounded avatar", e);
-            return null;
+            Log.d(TAG, "Exception writing avatar thumbnail", e);
         } finally {
             if (output != null)
                 try {
@@ -204,8 +467,38 @@ public class AvatarLoader {
                 } catch (IOException e) {
                     // Ignored
                 }
-            rawAvatar.delete();
+            if (thumbnail != null)
+                thumbnail.delete();
+        }
+        return bitmap;
+    }
+
+    /**
+     * Request avatar for target, joining an in-flight request for the same
+     * URL if there is one
+     * <p>
+     * This method must be called on the UI-thread
+     *
+     * @param avatarUrl
+     * @param target
+     */
+    private void request(final String avatarUrl, final Target target) {
+        AvatarRequest request = REQUESTS.get(avatarUrl);
+        if (request != null) {
+            request.targets.add(target);
+            // Re-queue with a higher priority if still waiting to download
+            if (NETWORK.remove(request)) {
+                request.priority = ++sequence;
+                NETWORK.execute(request);
+            }
+            return;
         }
+
+        request = new AvatarRequest(avatarUrl);
+        request.priority = ++sequence;
+        request.targets.add(target);
+        REQUESTS.put(avatarUrl, request);
+        request.start();
     }
 
     /**
@@ -240,30 +533,24 @@ public class AvatarLoader {
         if (TextUtils.isEmpty(avatarUrl))
             return this;
 
-        BitmapDrawable loadedImage = loaded.get(userId);
+        Drawable loadedImage = getLoaded(avatarUrl);
         if (loadedImage != null) {
             actionBar.setLogo(loadedImage);
             return this;
         }
 
-        new FetchAvatarTask(context) {
+        request(avatarUrl, new Target() {
 
             @Override
-            public BitmapDrawable call() throws Exception {
-                final String avatarFilename = getAvatarFilenameForUrl(getAvatarUrl(user));
-                final BitmapDrawable image = getImageBy(userId, avatarFilename);
-                if (image != null)
-                    return image;
-                else
-                    return fetchAvatar(avatarUrl, userId, avatarFilename);
+            public boolean isWanted() {
+                return userId.equals(getId(userReference.get()));
             }
 
             @Override
-            protected void onSuccess(BitmapDrawable image) throws Exception {
-                if (userId.equals(getId(userReference.get())))
-                    actionBar.setLogo(image);
+            public void set(final Bitmap avatar) {
+                actionBar.setLogo(createDrawable(avatar));
             }
-        }.execute();
+        });
 
         return this;
     }
@@ -273,13 +560,46 @@ public class AvatarLoader {
     }
 
     private AvatarLoader setImage(final Drawable image, final ImageView view,
-            Object tag) {
+            String userId) {
         view.setImageDrawable(image);
-        view.setTag(id.iv_avatar, tag);
+        getBinding(view).set(userId);
         view.setVisibility(VISIBLE);
         return this;
     }
 
+    /**
+     * Get the id of the user whose avatar the view is waiting on
+     * <p>
+     * The returned reference is stored as the view's tag so requests can
+     * check it from background threads without touching the view
+     *
+     * @param view
+     * @return binding
+     */
+    @SuppressWarnings("unchecked")
+    private static AtomicReference<String> getBinding(final ImageView view) {
+        final Object tag = view.getTag(id.iv_avatar);
+        if (tag instanceof AtomicReference)
+            return (AtomicReference<String>) tag;
+
+        final AtomicReference<String> binding = new AtomicReference<String>();
+        view.setTag(id.iv_avatar, binding);
+        return binding;
+    }
+
+    /**
+     * Stop delivering any avatar still loading for view
+     * <p>
+     * This method must be called on the UI-thread
+     *
+     * @param view
+     * @return this helper
+     */
+    public AvatarLoader unbind(final ImageView view) {
+        getBinding(view).set(null);
+        return this;
+    }
+
     private String getAvatarUrl(String id) {
         if (!TextUtils.isEmpty(id))
             return "https://secure.gravatar.com/avatar/" + id + "?d=404";
@@ -333,12 +653,12 @@ public class AvatarLoader {
         if (TextUtils.isEmpty(avatarUrl))
             return setImage(loadingAvatar, view);
 
-        BitmapDrawable loadedImage = loaded.get(userId);
+        Drawable loadedImage = getLoaded(avatarUrl);
         if (loadedImage != null)
             return setImage(loadedImage, view);
 
         setImage(loadingAvatar, view, userId);
-        fetchAvatarTask(avatarUrl, userId, view).execute();
+        request(avatarUrl, new ViewTarget(view, userId));
 
         return this;
     }
@@ -361,12 +681,12 @@ public class AvatarLoader {
 
         final String userId = user.getEmail();
 
-        BitmapDrawable loadedImage = loaded.get(userId);
+        Drawable loadedImage = getLoaded(avatarUrl);
         if (loadedImage != null)
             return setImage(loadedImage, view);
 
         setImage(loadingAvatar, view, userId);
-        fetchAvatarTask(avatarUrl, userId, view).execute();
+        request(avatarUrl, new ViewTarget(view, userId));
 
         return this;
     }
@@ -389,12 +709,12 @@ public class AvatarLoader {
 
         final String contributorId = contributor.getLogin();
 
-        BitmapDrawable loadedImage = loaded.get(contributorId);
+        Drawable loadedImage = getLoaded(avatarUrl);
         if (loadedImage != null)
             return setImage(loadedImage, view);
 
         setImage(loadingAvatar, view, contributorId);
-        fetchAvatarTask(avatarUrl, contributorId, view).execute();
+        request(avatarUrl, new ViewTarget(view, contributorId));
 
         return this;
     }
@@ -417,41 +737,38 @@ public class AvatarLoader {
 
         final String userId = user.getId();
 
-        BitmapDrawable loadedImage = loaded.get(userId);
+        Drawable loadedImage = getLoaded(avatarUrl);
         if (loadedImage != null)
             return setImage(loadedImage, view);
 
         setImage(loadingAvatar, view, userId);
-        fetchAvatarTask(avatarUrl, userId, view).execute();
+        request(avatarUrl, new ViewTarget(view, userId));
 
         return this;
     }
 
-    private FetchAvatarTask fetchAvatarTask(final String avatarUrl,
-            final String userId, final ImageView view) {
-        return new FetchAvatarTask(context) {
+    private class ViewTarget implements Target {
 
-            @Override
-            public BitmapDrawable call() throws Exception {
-                if (!userId.equals(view.getTag(id.iv_avatar)))
-                    return null;
-
-                final String avatarFilename = getAvatarFilenameForUrl(avatarUrl);
-                final BitmapDrawable image = getImageBy(userId, avatarFilename);
-                if (image != null)
-                    return image;
-                else
-                    return fetchAvatar(avatarUrl, userId, avatarFilename);
-            }
+        private final ImageView view;
 
-            @Override
-            protected void onSuccess(final BitmapDrawable image) throws Exception {
-                if (image == null)
-                    return;
-                loaded.put(userId, image);
-                if (userId.equals(view.getTag(id.iv_avatar)))
-                    setImage(image, view);
-            }
-        };
+        private final AtomicReference<String> binding;
+
+        private final String userId;
+
+        private ViewTarget(final ImageView view, final String userId) {
+            this.view = view;
+            this.userId = userId;
+            binding = getBinding(view);
+        }
+
+        @Override
+        public boolean isWanted() {
+            return userId.equals(binding.get());
+        }
+
+        @Override
+        public void set(final Bitmap avatar) {
+            setImage(createDrawable(avatar), view);
+        }
     }
 }
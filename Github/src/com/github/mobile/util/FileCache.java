@@ -0,0 +1,264 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size-bounded directory of files keyed by string
+ * <p>
+ * Files are evicted least recently used first, using each file's last
+ * modified time as the record of when it was last read or written.
+ * <p>
+ * Entries are written to a temporary file first and then committed with a
+ * rename so readers never see partially written files.
+ */
+public class FileCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Committed file with its length and last modified time read once so
+     * sorting is not affected by files read or written concurrently
+     */
+    private static class Entry {
+
+        private final File file;
+
+        private final long length;
+
+        private final long modified;
+
+        private Entry(final File file) {
+            this.file = file;
+            length = file.length();
+            modified = file.lastModified();
+        }
+    }
+
+    private static final Comparator<Entry> OLDEST_FIRST = new Comparator<Entry>() {
+
+        @Override
+        public int compare(final Entry lhs, final Entry rhs) {
+            if (lhs.modified < rhs.modified)
+                return -1;
+            if (lhs.modified > rhs.modified)
+                return 1;
+            return 0;
+        }
+    };
+
+    private static String digest(final String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(value.getBytes("UTF-8"));
+            return String.format("%040x", new BigInteger(1, bytes));
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    private final File dir;
+
+    private final long maxSize;
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private final AtomicInteger evictions = new AtomicInteger();
+
+    private long size = -1;
+
+    /**
+     * Create cache in directory that holds at most the given number of bytes
+     *
+     * @param dir
+     * @param maxSize
+     */
+    public FileCache(final File dir, final long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    private File getFile(final String key) {
+        String name = digest(key);
+        return name != null ? new File(dir, name) : null;
+    }
+
+    /**
+     * Get file for key
+     *
+     * @param key
+     * @return existing file or null if not cached
+     */
+    public File get(final String key) {
+        final File file = getFile(key);
+        if (file == null || !file.exists() || file.length() == 0) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Create a temporary file to write a new entry to before passing it to
+     * {@link #commit(File, String)}
+     *
+     * @return file
+     * @throws IOException
+     */
+    public File createTempFile() throws IOException {
+        if (!dir.exists())
+            dir.mkdirs();
+        return File.createTempFile("entry", TEMP_SUFFIX, dir);
+    }
+
+    /**
+     * Store temporary file as the entry for key
+     *
+     * @param temp
+     * @param key
+     * @return committed file or null if the commit failed
+     */
+    public File commit(final File temp, final String key) {
+        final File file = getFile(key);
+        if (file == null) {
+            temp.delete();
+            return null;
+        }
+
+        final long previous = file.length();
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return null;
+        }
+
+        trim(file.length() - previous);
+        return file;
+    }
+
+    /**
+     * Remove entry for key
+     *
+     * @param key
+     * @return this cache
+     */
+    public FileCache remove(final String key) {
+        final File file = getFile(key);
+        if (file != null) {
+            final long length = file.length();
+            if (file.delete())
+                trim(-length);
+        }
+        return this;
+    }
+
+    /**
+     * Get committed entries, skipping temporary files still being written
+     *
+     * @return entries or null if the directory could not be listed
+     */
+    private Entry[] listEntries() {
+        final File[] files = dir.listFiles();
+        if (files == null)
+            return null;
+
+        final Entry[] entries = new Entry[files.length];
+        int count = 0;
+        for (File file : files)
+            if (!file.getName().endsWith(TEMP_SUFFIX))
+                entries[count++] = new Entry(file);
+        if (count == entries.length)
+            return entries;
+
+        final Entry[] committed = new Entry[count];
+        System.arraycopy(entries, 0, committed, 0, count);
+        return committed;
+    }
+
+    private synchronized void trim(final long delta) {
+        Entry[] entries;
+        if (size < 0) {
+            entries = listEntries();
+            if (entries == null)
+                return;
+            size = 0;
+            for (Entry entry : entries)
+                size += entry.length;
+        } else {
+            size += delta;
+            if (size <= maxSize)
+                return;
+            entries = listEntries();
+            if (entries == null)
+                return;
+        }
+        if (size <= maxSize)
+            return;
+
+        Arrays.sort(entries, OLDEST_FIRST);
+        for (Entry entry : entries) {
+            if (size <= maxSize * 3 / 4)
+                break;
+            if (entry.file.delete()) {
+                size -= entry.length;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return number of lookups that found an entry
+     */
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of lookups that did not find an entry
+     */
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of entries evicted to stay under the maximum size
+     */
+    public int getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[dir=" + dir + ",maxSize="
+                + maxSize + ",hits=" + hits + ",misses=" + misses
+                + ",evictions=" + evictions + ']';
+    }
+}
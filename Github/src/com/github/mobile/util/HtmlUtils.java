@@ -89,12 +89,8 @@ public class HtmlUtils {
 
     private static final String EMAIL_START = "<div class=\"email-fragment\">";
 
-    private static final String EMAIL_END = "</div>";
-
     private static final String HIDDEN_REPLY_START = "<div class=\"email-hidden-reply\" style=\" display:none\">";
 
-    private static final String HIDDEN_REPLY_END = "</div>";
-
     private static final String BREAK = "<br>";
 
     private static final String PARAGRAPH_START = "<p>";
@@ -111,8 +107,6 @@ public class HtmlUtils {
 
     private static final String PRE_END = "</pre>";
 
-    private static final String CODE_START = "<code>";
-
     private static final String CODE_END = "</code>";
 
     private static class ListSeparator {
@@ -297,209 +291,361 @@ public class HtmlUtils {
         if (html.length() == 0)
             return "";
 
-        StringBuilder formatted = new StringBuilder(html);
+        return new Formatter(html, SDK_INT < ICE_CREAM_SANDWICH).format();
+    }
 
-        // Remove e-mail toggle link
-        strip(formatted, TOGGLE_START, TOGGLE_END);
+    /**
+     * Formatter that rewrites the HTML in a single pass over the input
+     * <p>
+     * E-mail toggles, signatures and hidden replies are stripped, quoted
+     * replies become block quotes, paragraphs become breaks, whitespace in
+     * pre elements is made non-breaking, and e-mail fragment tags are removed
+     * with their newlines replaced by breaks.
+     */
+    private static class Formatter {
 
-        // Remove signature
-        strip(formatted, SIGNATURE_START, SIGNATURE_END);
+        private final String html;
 
-        // Replace div with e-mail content with block quote
-        replace(formatted, REPLY_START, REPLY_END, BLOCKQUOTE_START,
-                BLOCKQUOTE_END);
+        private final int length;
 
-        // Remove hidden div
-        strip(formatted, HIDDEN_REPLY_START, HIDDEN_REPLY_END);
+        private final boolean swapStyles;
 
-        // Replace paragraphs with breaks
-        if (replace(formatted, PARAGRAPH_START, BREAK))
-            replace(formatted, PARAGRAPH_END, BREAK);
+        private final int preLimit;
 
-        formatPres(formatted);
+        private final int emailLimit;
 
-        formatEmailFragments(formatted);
+        private final StringBuilder output;
 
-        formatIncorrectStyles(formatted);
+        private int replyDepth;
 
-        trim(formatted);
+        private boolean hidden;
 
-        formatted.insert(0, ROOT_START);
-        formatted.append(ROOT_END);
+        private boolean pre;
 
-        return formatted;
-    }
+        private int preStart;
+
+        private boolean preCodeEnded;
+
+        private int pendingBreak = -1;
+
+        private boolean email;
+
+        private int emailStart;
 
-    private static void formatIncorrectStyles(final StringBuilder input) {
-        // em and strong tag styles are swapped on pre-4.0 so swap them back
-        // using alternate tags that don't exhibit the incorrect styling.
-        // http://code.google.com/p/android/issues/detail?id=3473
-        if (SDK_INT < ICE_CREAM_SANDWICH) {
-            replaceTag(input, "em", "i");
-            replaceTag(input, "strong", "b");
+        private boolean paragraphs;
+
+        private int[] paragraphEnds;
+
+        private int paragraphEndCount;
+
+        private boolean em;
+
+        private boolean strong;
+
+        private int[] styleEnds;
+
+        private int styleEndCount;
+
+        /**
+         * Create formatter for HTML
+         *
+         * @param html
+         * @param swapStyles
+         *            true to replace em and strong tags with i and b tags
+         */
+        Formatter(final String html, final boolean swapStyles) {
+            this(html, swapStyles, html.length(), html.length());
         }
-    }
 
-    private static StringBuilder strip(final StringBuilder input,
-            final String prefix, final String suffix) {
-        int start = input.indexOf(prefix);
-        while (start != -1) {
-            int end = input.indexOf(suffix, start + prefix.length());
-            if (end == -1)
-                end = input.length();
-            input.delete(start, end + suffix.length());
-            start = input.indexOf(prefix, start);
+        /**
+         * Create formatter for HTML that leaves pre elements and e-mail
+         * fragments starting at or after the given limits unformatted
+         *
+         * @param html
+         * @param swapStyles
+         * @param preLimit
+         * @param emailLimit
+         */
+        private Formatter(final String html, final boolean swapStyles,
+                final int preLimit, final int emailLimit) {
+            this.html = html;
+            this.swapStyles = swapStyles;
+            this.preLimit = preLimit;
+            this.emailLimit = emailLimit;
+            length = html.length();
+            output = new StringBuilder(length + length / 8
+                    + ROOT_START.length() + ROOT_END.length());
         }
-        return input;
-    }
 
-    private static boolean replace(final StringBuilder input,
-            final String from, final String to) {
-        int start = input.indexOf(from);
-        if (start == -1)
-            return false;
-
-        final int fromLength = from.length();
-        final int toLength = to.length();
-        while (start != -1) {
-            input.replace(start, start + fromLength, to);
-            start = input.indexOf(from, start + toLength);
+        private boolean at(final int index, final String token) {
+            return html.startsWith(token, index);
         }
-        return true;
-    }
 
-    private static void replaceTag(final StringBuilder input,
-            final String from, final String to) {
-        if (replace(input, '<' + from + '>', '<' + to + '>'))
-            replace(input, "</" + from + '>', "</" + to + '>');
-    }
+        private int skip(final int index, final String start, final String end) {
+            final int found = html.indexOf(end, index + start.length());
+            return found != -1 ? found + end.length() : length;
+        }
+
+        /**
+         * Get index after the end of the signature starting at index
+         * <p>
+         * Signatures end at the first closing div that is not in a toggle
+         *
+         * @param index
+         * @return index
+         */
+        private int skipSignature(final int index) {
+            int from = index + SIGNATURE_START.length();
+            while (true) {
+                int end = html.indexOf(SIGNATURE_END, from);
+                int toggle = html.indexOf(TOGGLE_START, from);
+                if (toggle == -1 || (end != -1 && end < toggle))
+                    return end != -1 ? end + SIGNATURE_END.length() : length;
+                from = skip(toggle, TOGGLE_START, TOGGLE_END);
+            }
+        }
 
-    private static StringBuilder replace(final StringBuilder input,
-            final String fromStart, final String fromEnd, final String toStart,
-            final String toEnd) {
-        int start = input.indexOf(fromStart);
-        if (start == -1)
-            return input;
-
-        final int fromStartLength = fromStart.length();
-        final int fromEndLength = fromEnd.length();
-        final int toStartLength = toStart.length();
-        while (start != -1) {
-            input.replace(start, start + fromStartLength, toStart);
-            int end = input.indexOf(fromEnd, start + toStartLength);
-            if (end != -1)
-                input.replace(end, end + fromEndLength, toEnd);
-
-            start = input.indexOf(fromStart);
+        private void endPre() {
+            if (pendingBreak == output.length())
+                output.setLength(pendingBreak - BREAK.length());
+            pendingBreak = -1;
+        }
+
+        private static int[] record(int[] positions, final int count,
+                final int position) {
+            if (positions == null)
+                positions = new int[8];
+            else if (count == positions.length) {
+                int[] grown = new int[count * 2];
+                System.arraycopy(positions, 0, grown, 0, count);
+                positions = grown;
+            }
+            positions[count] = position;
+            return positions;
+        }
+
+        private void endStyle(final String tag) {
+            styleEnds = record(styleEnds, styleEndCount++, output.length());
+            output.append(tag);
         }
-        return input;
-    }
 
-    private static StringBuilder formatPres(final StringBuilder input) {
-        int start = input.indexOf(PRE_START);
-        final int spaceAdvance = SPACE.length() - 1;
-        final int breakAdvance = BREAK.length() - 1;
-        while (start != -1) {
-            int end = input.indexOf(PRE_END, start + PRE_START.length());
-            if (end == -1)
-                break;
-
-            // Skip over code element
-            if (input.indexOf(CODE_START, start) == start)
-                start += CODE_START.length();
-            if (input.indexOf(CODE_END, start) == end - CODE_END.length())
-                end -= CODE_END.length();
-
-            for (int i = start; i < end; i++) {
-                switch (input.charAt(i)) {
+        /**
+         * Format tag at index
+         *
+         * @param index
+         * @return index after the tag, or index if no tag was formatted
+         */
+        private int formatTag(final int index) {
+            if (at(index, TOGGLE_START))
+                return skip(index, TOGGLE_START, TOGGLE_END);
+
+            if (at(index, SIGNATURE_START))
+                return skipSignature(index);
+
+            if (at(index, REPLY_START)) {
+                replyDepth++;
+                if (!hidden)
+                    output.append(BLOCKQUOTE_START);
+                return index + REPLY_START.length();
+            }
+
+            if (at(index, REPLY_END)) {
+                if (replyDepth > 0) {
+                    replyDepth--;
+                    if (!hidden)
+                        output.append(BLOCKQUOTE_END);
+                } else if (hidden)
+                    hidden = false;
+                else if (email) {
+                    email = false;
+                    // Newline before the fragment end is not the last in a pre
+                    pendingBreak = -1;
+                } else
+                    output.append(REPLY_END);
+                return index + REPLY_END.length();
+            }
+
+            if (hidden)
+                return index;
+
+            if (at(index, HIDDEN_REPLY_START)) {
+                hidden = true;
+                return index + HIDDEN_REPLY_START.length();
+            }
+
+            if (at(index, PARAGRAPH_START)) {
+                paragraphs = true;
+                output.append(BREAK);
+                return index + PARAGRAPH_START.length();
+            }
+
+            if (at(index, PARAGRAPH_END)) {
+                paragraphEnds = record(paragraphEnds, paragraphEndCount++,
+                        output.length());
+                output.append(BREAK);
+                return index + PARAGRAPH_END.length();
+            }
+
+            if (pre) {
+                if (at(index, PRE_END)) {
+                    endPre();
+                    pre = false;
+                    output.append(PRE_END);
+                    return index + PRE_END.length();
+                }
+                // Pre elements wrapping a code element end at the code end
+                if (!preCodeEnded && at(index, CODE_END)) {
+                    preCodeEnded = true;
+                    if (at(index + CODE_END.length(), PRE_END)) {
+                        endPre();
+                        pre = false;
+                        output.append(CODE_END).append(PRE_END);
+                        return index + CODE_END.length() + PRE_END.length();
+                    }
+                }
+            } else if (index < preLimit && at(index, PRE_START)) {
+                pre = true;
+                preStart = index;
+                preCodeEnded = false;
+                output.append(PRE_START);
+                return index + PRE_START.length();
+            }
+
+            if (!pre && !email && index < emailLimit
+                    && at(index, EMAIL_START)) {
+                email = true;
+                emailStart = index;
+                return index + EMAIL_START.length();
+            }
+
+            if (swapStyles) {
+                if (at(index, "<em>")) {
+                    em = true;
+                    output.append("<i>");
+                    return index + 4;
+                }
+                if (at(index, "</em>")) {
+                    endStyle("</i>");
+                    return index + 5;
+                }
+                if (at(index, "<strong>")) {
+                    strong = true;
+                    output.append("<b>");
+                    return index + 8;
+                }
+                if (at(index, "</strong>")) {
+                    endStyle("</b>");
+                    return index + 9;
+                }
+            }
+
+            return index;
+        }
+
+        private void formatChar(final char c) {
+            if (pre)
+                switch (c) {
                 case ' ':
-                    input.deleteCharAt(i);
-                    input.insert(i, SPACE);
-                    start += spaceAdvance;
-                    end += spaceAdvance;
-                    break;
+                    output.append(SPACE);
+                    return;
                 case '\t':
-                    input.deleteCharAt(i);
-                    input.insert(i, SPACE);
-                    start += spaceAdvance;
-                    end += spaceAdvance;
-                    for (int j = 0; j < 3; j++) {
-                        input.insert(i, SPACE);
-                        start += spaceAdvance + 1;
-                        end += spaceAdvance + 1;
-                    }
-                    break;
+                    output.append(SPACE).append(SPACE).append(SPACE)
+                            .append(SPACE);
+                    return;
                 case '\n':
-                    input.deleteCharAt(i);
-                    // Ignore if last character is a newline
-                    if (i + 1 < end) {
-                        input.insert(i, BREAK);
-                        start += breakAdvance;
-                        end += breakAdvance;
-                    }
-                    break;
+                    output.append(BREAK);
+                    pendingBreak = output.length();
+                    return;
                 }
+            else if (email && c == '\n') {
+                output.append(BREAK);
+                return;
             }
-            start = input.indexOf(PRE_START, end + PRE_END.length());
+
+            output.append(c);
         }
-        return input;
-    }
 
-    /**
-     * Remove email fragment 'div' tag and replace newlines with 'br' tags
-     *
-     * @param input
-     * @return input
-     */
-    private static StringBuilder formatEmailFragments(final StringBuilder input) {
-        int emailStart = input.indexOf(EMAIL_START);
-        int breakAdvance = BREAK.length() - 1;
-        while (emailStart != -1) {
-            int startLength = EMAIL_START.length();
-            int emailEnd = input.indexOf(EMAIL_END, emailStart + startLength);
-            if (emailEnd == -1)
-                break;
-
-            input.delete(emailEnd, emailEnd + EMAIL_END.length());
-            input.delete(emailStart, emailStart + startLength);
-
-            int fullEmail = emailEnd - startLength;
-            for (int i = emailStart; i < fullEmail; i++)
-                if (input.charAt(i) == '\n') {
-                    input.deleteCharAt(i);
-                    input.insert(i, BREAK);
-                    i += breakAdvance;
-                    fullEmail += breakAdvance;
+        /**
+         * Restore end tags that were optimistically replaced but whose start
+         * tags turned out not to be present
+         */
+        private void restoreEndTags() {
+            if (!paragraphs)
+                for (int i = 0; i < paragraphEndCount; i++) {
+                    int position = paragraphEnds[i];
+                    output.replace(position, position + BREAK.length(),
+                            PARAGRAPH_END);
                 }
 
-            emailStart = input.indexOf(EMAIL_START, fullEmail);
+            if (styleEndCount > 0 && (!em || !strong))
+                for (int i = styleEndCount - 1; i >= 0; i--) {
+                    int position = styleEnds[i];
+                    if (!em && output.charAt(position + 2) == 'i')
+                        output.replace(position, position + 4, "</em>");
+                    else if (!strong && output.charAt(position + 2) == 'b')
+                        output.replace(position, position + 4, "</strong>");
+                }
         }
-        return input;
-    }
 
-    /**
-     * Remove leading and trailing whitespace
-     *
-     * @param input
-     */
-    private static StringBuilder trim(final StringBuilder input) {
-        int length = input.length();
-        int breakLength = BREAK.length();
-
-        while (length > 0) {
-            if (input.indexOf(BREAK) == 0)
-                input.delete(0, breakLength);
-            else if (length >= breakLength
-                    && input.lastIndexOf(BREAK) == length - breakLength)
-                input.delete(length - breakLength, length);
-            else if (Character.isWhitespace(input.charAt(0)))
-                input.deleteCharAt(0);
-            else if (Character.isWhitespace(input.charAt(length - 1)))
-                input.deleteCharAt(length - 1);
-            else
-                break;
-            length = input.length();
+        private boolean isBreak(final int index) {
+            return output.indexOf(BREAK, index) == index;
+        }
+
+        /**
+         * Format HTML
+         *
+         * @return formatted HTML
+         */
+        CharSequence format() {
+            output.append(ROOT_START);
+
+            int index = 0;
+            while (index < length) {
+                final char c = html.charAt(index);
+                if (c == '<') {
+                    int next = formatTag(index);
+                    if (next != index) {
+                        index = next;
+                        continue;
+                    }
+                }
+                if (!hidden)
+                    formatChar(c);
+                index++;
+            }
+
+            // Formatting stops at the first pre element or e-mail fragment
+            // that is never terminated so format again up to that element
+            if (pre)
+                return new Formatter(html, swapStyles, preStart, emailLimit)
+                        .format();
+            if (email)
+                return new Formatter(html, swapStyles, preLimit, emailStart)
+                        .format();
+
+            restoreEndTags();
+
+            // Remove leading and trailing breaks and whitespace
+            int start = ROOT_START.length();
+            int end = output.length();
+            final int breakLength = BREAK.length();
+            while (start < end)
+                if (end - start >= breakLength && isBreak(start))
+                    start += breakLength;
+                else if (end - start >= breakLength
+                        && isBreak(end - breakLength))
+                    end -= breakLength;
+                else if (Character.isWhitespace(output.charAt(start)))
+                    start++;
+                else if (Character.isWhitespace(output.charAt(end - 1)))
+                    end--;
+                else
+                    break;
+
+            output.setLength(end);
+            output.append(ROOT_END);
+            output.delete(ROOT_START.length(), start);
+            return output;
         }
-        return input;
     }
 }
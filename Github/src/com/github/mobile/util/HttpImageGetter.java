@@ -19,6 +19,7 @@ import static android.util.Base64.DEFAULT;
 import static android.view.View.GONE;
 import static android.view.View.VISIBLE;
 import static java.lang.Integer.MAX_VALUE;
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
 import static org.eclipse.egit.github.core.client.IGitHubConstants.HOST_DEFAULT;
 import android.accounts.Account;
 import android.content.Context;
@@ -26,22 +27,43 @@ import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
 import android.text.Html.ImageGetter;
+import android.text.Spanned;
 import android.text.TextUtils;
+import android.text.style.ImageSpan;
 import android.util.Base64;
 import android.widget.TextView;
 
 import com.github.kevinsawicki.http.HttpRequest;
 import com.github.kevinsawicki.http.HttpRequest.HttpRequestException;
 import com.github.mobile.R.drawable;
+import com.github.mobile.accounts.AccountScope;
 import com.github.mobile.accounts.AuthenticatedUserTask;
+import com.github.mobile.accounts.GitHubAccount;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.eclipse.egit.github.core.RepositoryContents;
 import org.eclipse.egit.github.core.RepositoryId;
@@ -69,6 +91,237 @@ public class HttpImageGetter implements ImageGetter {
         }
     }
 
+    /**
+     * Encoded HTML along with the HTML it was encoded from
+     */
+    private static class EncodedHtml {
+
+        private final String html;
+
+        private final int hash;
+
+        private final CharSequence encoded;
+
+        private final boolean complete;
+
+        private final int size;
+
+        private EncodedHtml(final String html, final CharSequence encoded,
+                final boolean complete) {
+            this.html = html;
+            this.hash = html.hashCode();
+            this.encoded = encoded;
+            this.complete = complete;
+            this.size = html.length() * 2 + estimateSize(encoded);
+        }
+
+        private boolean isFor(final String html) {
+            // Hash and length reject most changed HTML without comparing it
+            return hash == html.hashCode()
+                    && this.html.length() == html.length()
+                    && this.html.equals(html);
+        }
+    }
+
+    /**
+     * Key of encoded HTML made of the type of content and its id
+     */
+    private static class HtmlKey {
+
+        private final String contentType;
+
+        private final Object id;
+
+        private HtmlKey(final String contentType, final Object id) {
+            this.contentType = contentType;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this)
+                return true;
+            if (!(o instanceof HtmlKey))
+                return false;
+
+            HtmlKey other = (HtmlKey) o;
+            return id.equals(other.id)
+                    && (contentType != null ? contentType
+                            .equals(other.contentType)
+                            : other.contentType == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (contentType != null ? contentType.hashCode() : 0)
+                    + id.hashCode();
+        }
+    }
+
+    /**
+     * Estimate the number of bytes retained by the encoded text including the
+     * bitmaps of any images it contains
+     *
+     * @param encoded
+     * @return size
+     */
+    private static int estimateSize(final CharSequence encoded) {
+        int size = encoded.length() * 2;
+        if (!(encoded instanceof Spanned))
+            return size;
+
+        Spanned spanned = (Spanned) encoded;
+        Object[] spans = spanned.getSpans(0, spanned.length(), Object.class);
+        size += spans.length * 32;
+        for (Object span : spans) {
+            if (!(span instanceof ImageSpan))
+                continue;
+            Drawable drawable = ((ImageSpan) span).getDrawable();
+            if (!(drawable instanceof BitmapDrawable))
+                continue;
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null)
+                size += bitmap.getRowBytes() * bitmap.getHeight();
+        }
+        return size;
+    }
+
+    /**
+     * Encoded HTML by content type and id shared by all image getters so it
+     * is retained across configuration changes, bounded by estimated size in
+     * bytes
+     */
+    private static final LruCache<HtmlKey, EncodedHtml> HTML_CACHE = new LruCache<HtmlKey, EncodedHtml>(
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 16,
+                    Integer.MAX_VALUE)) {
+
+        @Override
+        protected int sizeOf(final HtmlKey key, final EncodedHtml value) {
+            return value.size;
+        }
+    };
+
+    /**
+     * Get the estimated number of bytes used by encoded HTML cached by all
+     * image getters
+     *
+     * @return size in bytes
+     */
+    public static int getCacheSize() {
+        return HTML_CACHE.size();
+    }
+
+    /**
+     * Maximum number of bytes of images to keep on disk
+     */
+    private static final long IMAGE_CACHE_SIZE = 20 * 1024 * 1024;
+
+    private static final Pattern IMAGE_SOURCE = Pattern.compile(
+            "<img\\s[^>]*?src\\s*=\\s*[\"']([^\"']+)[\"']",
+            CASE_INSENSITIVE);
+
+    /**
+     * Requests for the images in HTML that is about to be encoded
+     */
+    private static final ExecutorService PREFETCHER = Executors
+            .newFixedThreadPool(4);
+
+    private static FileCache imageCache;
+
+    /**
+     * Get disk cache of images, creating it if needed
+     *
+     * @param context
+     * @return cache
+     */
+    private static synchronized FileCache getImageCache(final Context context) {
+        if (imageCache == null)
+            imageCache = new FileCache(new File(context.getCacheDir(),
+                    "images"), IMAGE_CACHE_SIZE);
+        return imageCache;
+    }
+
+    /**
+     * Number of threads rendering HTML in the background
+     */
+    private static final int RENDER_THREADS = 2;
+
+    /**
+     * Background encoding of HTML that is expected to be bound soon
+     */
+    private static final ExecutorService RENDERER = Executors
+            .newFixedThreadPool(RENDER_THREADS);
+
+    private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+    private static final AtomicInteger RENDER_COUNT = new AtomicInteger();
+
+    private static final AtomicLong RENDER_TIME = new AtomicLong();
+
+    /**
+     * Get the average time spent encoding the HTML of a single render in the
+     * background, not including time spent requesting images
+     *
+     * @return time in microseconds
+     */
+    public static long getAverageRenderTime() {
+        int count = RENDER_COUNT.get();
+        return count > 0 ? RENDER_TIME.get() / count / 1000 : 0;
+    }
+
+    /**
+     * Background render of HTML for an id
+     */
+    private class Render implements Runnable {
+
+        private final Object id;
+
+        private final String html;
+
+        private final GitHubAccount account;
+
+        private Future<?> future;
+
+        private Render(final Object id, final String html,
+                final GitHubAccount account) {
+            this.id = id;
+            this.html = html;
+            this.account = account;
+        }
+
+        @Override
+        public void run() {
+            long time = 0;
+            try {
+                long start = System.nanoTime();
+                CharSequence encoded = HtmlUtils.encode(html, loading);
+                time += System.nanoTime() - start;
+                boolean complete = !containsImages(html);
+                publish(this, encoded, complete);
+                if (complete || Thread.currentThread().isInterrupted())
+                    return;
+
+                accountScope.enterWith(account);
+                try {
+                    prefetch(html);
+                    start = System.nanoTime();
+                    encoded = HtmlUtils.encode(html, HttpImageGetter.this);
+                    time += System.nanoTime() - start;
+                    publish(this, encoded, true);
+                } finally {
+                    accountScope.exit();
+                }
+            } finally {
+                RENDER_COUNT.incrementAndGet();
+                RENDER_TIME.addAndGet(time);
+                synchronized (renders) {
+                    if (renders.get(id) == this)
+                        renders.remove(id);
+                }
+            }
+        }
+    }
+
     private static boolean containsImages(final String html) {
         return html.contains("<img");
     }
@@ -77,31 +330,64 @@ public class HttpImageGetter implements ImageGetter {
 
     private final Context context;
 
-    private final File dir;
-
     private final int width;
 
-    private final Map<Object, CharSequence> rawHtmlCache = new HashMap<Object, CharSequence>();
+    private final ContentsService service;
+
+    private final AccountScope accountScope;
 
-    private final Map<Object, CharSequence> fullHtmlCache = new HashMap<Object, CharSequence>();
+    private final Provider<GitHubAccount> accountProvider;
 
-    private final ContentsService service;
+    private String contentType;
+
+    /**
+     * Queued and running renders by id
+     */
+    private final Map<Object, Render> renders = new HashMap<Object, Render>();
+
+    /**
+     * Views waiting on a render by id, only accessed from the UI-thread
+     */
+    private final Map<Object, TextView> waiting = new HashMap<Object, TextView>();
 
     /**
      * Create image getter for context
      *
      * @param context
      * @param service
+     * @param accountScope
+     * @param accountProvider
      */
     @Inject
-    public HttpImageGetter(Context context, ContentsService service) {
+    public HttpImageGetter(Context context, ContentsService service,
+            AccountScope accountScope, Provider<GitHubAccount> accountProvider) {
         this.context = context;
         this.service = service;
-        dir = context.getCacheDir();
+        this.accountScope = accountScope;
+        this.accountProvider = accountProvider;
         width = ServiceUtils.getDisplayWidth(context);
         loading = new LoadingImageGetter(context, 24);
     }
 
+    /**
+     * Set the type of content this image getter encodes
+     * <p>
+     * Ids are only unique within a type of content, such as issues or commit
+     * comments, so encoded HTML is cached by both. This must be called before
+     * any HTML is encoded.
+     *
+     * @param contentType
+     * @return this image getter
+     */
+    public HttpImageGetter setContentType(final String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    private HtmlKey getKey(final Object id) {
+        return new HtmlKey(contentType, id);
+    }
+
     private HttpImageGetter show(final TextView view, final CharSequence html) {
         if (TextUtils.isEmpty(html))
             return hide(view);
@@ -121,6 +407,9 @@ public class HttpImageGetter implements ImageGetter {
 
     /**
      * Encode given HTML string and map it to the given id
+     * <p>
+     * Nothing is encoded if the HTML is unchanged from the HTML last encoded
+     * for the id
      *
      * @param id
      * @param html
@@ -130,18 +419,104 @@ public class HttpImageGetter implements ImageGetter {
         if (TextUtils.isEmpty(html))
             return this;
 
+        EncodedHtml cached = HTML_CACHE.get(getKey(id));
+        if (cached != null && cached.isFor(html))
+            return this;
+
         CharSequence encoded = HtmlUtils.encode(html, loading);
         // Use default encoding if no img tags
-        if (containsImages(html)) {
-            CharSequence currentEncoded = rawHtmlCache.put(id, encoded);
-            // Remove full html if raw html has changed
-            if (currentEncoded == null
-                || !currentEncoded.toString().equals(encoded.toString()))
-              fullHtmlCache.remove(id);
-        } else {
-            rawHtmlCache.remove(id);
-            fullHtmlCache.put(id, encoded);
+        HTML_CACHE.put(getKey(id), new EncodedHtml(html, encoded,
+                !containsImages(html)));
+        return this;
+    }
+
+    /**
+     * Render given HTML string for the given id in the background so it is
+     * already encoded when bound
+     * <p>
+     * Images are requested using the account of the calling thread so this
+     * must be called from within an account scope
+     *
+     * @param id
+     * @param html
+     * @return this image getter
+     */
+    public HttpImageGetter render(final Object id, final String html) {
+        if (TextUtils.isEmpty(html))
+            return this;
+
+        EncodedHtml cached = HTML_CACHE.get(getKey(id));
+        if (cached != null && cached.complete && cached.isFor(html))
+            return this;
+
+        Render render = new Render(id, html, accountProvider.get());
+        synchronized (renders) {
+            Render previous = renders.get(id);
+            if (previous != null) {
+                if (previous.html.equals(html))
+                    return this;
+                previous.future.cancel(true);
+            }
+            renders.put(id, render);
+            render.future = RENDERER.submit(render);
+        }
+        return this;
+    }
+
+    /**
+     * Cancel all renders that have not completed
+     * <p>
+     * This should be called when the views bound by this image getter are no
+     * longer being displayed
+     *
+     * @return this image getter
+     */
+    public HttpImageGetter cancelRenders() {
+        synchronized (renders) {
+            for (Render render : renders.values())
+                render.future.cancel(true);
+            renders.clear();
+        }
+        waiting.clear();
+        return this;
+    }
+
+    private boolean isRendering(final Object id, final String html) {
+        synchronized (renders) {
+            Render render = renders.get(id);
+            return render != null && render.html.equals(html);
         }
+    }
+
+    private void publish(final Render render, final CharSequence encoded,
+            final boolean complete) {
+        HTML_CACHE.put(getKey(render.id), new EncodedHtml(render.html,
+                encoded, complete));
+        HANDLER.post(new Runnable() {
+
+            @Override
+            public void run() {
+                TextView view = waiting.get(render.id);
+                if (view == null)
+                    return;
+
+                if (!render.id.equals(view.getTag())) {
+                    waiting.remove(render.id);
+                    return;
+                }
+
+                show(view, encoded);
+                if (complete)
+                    waiting.remove(render.id);
+                else
+                    view.setTag(render.id);
+            }
+        });
+    }
+
+    private HttpImageGetter await(final TextView view, final Object id) {
+        view.setTag(id);
+        waiting.put(id, view);
         return this;
     }
 
@@ -158,55 +533,109 @@ public class HttpImageGetter implements ImageGetter {
         if (TextUtils.isEmpty(html))
             return hide(view);
 
-        CharSequence encoded = fullHtmlCache.get(id);
-        if (encoded != null)
-            return show(view, encoded);
-
-        encoded = rawHtmlCache.get(id);
-        if (encoded == null) {
-            encoded = HtmlUtils.encode(html, loading);
-            if (containsImages(html))
-                rawHtmlCache.put(id, encoded);
-            else {
-                rawHtmlCache.remove(id);
-                fullHtmlCache.put(id, encoded);
-                return show(view, encoded);
+        EncodedHtml cached = HTML_CACHE.get(getKey(id));
+        if (cached == null || !cached.isFor(html)) {
+            if (isRendering(id, html)) {
+                view.setText(null);
+                view.setVisibility(VISIBLE);
+                return await(view, id);
             }
+
+            CharSequence encoded = HtmlUtils.encode(html, loading);
+            cached = new EncodedHtml(html, encoded, !containsImages(html));
+            HTML_CACHE.put(getKey(id), cached);
         }
 
-        if (TextUtils.isEmpty(encoded))
+        if (cached.complete)
+            return show(view, cached.encoded);
+
+        if (TextUtils.isEmpty(cached.encoded))
             return hide(view);
 
-        show(view, encoded);
+        show(view, cached.encoded);
+        if (isRendering(id, html))
+            return await(view, id);
+
         view.setTag(id);
         new AuthenticatedUserTask<CharSequence>(context) {
 
             @Override
             protected CharSequence run(Account account) throws Exception {
+                prefetch(html);
                 return HtmlUtils.encode(html, HttpImageGetter.this);
             }
 
             @Override
-            protected void onSuccess(final CharSequence html) throws Exception {
-                fullHtmlCache.put(id, html);
+            protected void onSuccess(final CharSequence encoded)
+                    throws Exception {
+                HTML_CACHE.put(getKey(id),
+                        new EncodedHtml(html, encoded, true));
 
                 if (id.equals(view.getTag()))
-                    show(view, html);
+                    show(view, encoded);
             }
         }.execute();
         return this;
     }
 
     /**
-     * Request an image using the contents API if the source URI is a path to a
-     * file already in the repository
+     * Request every image in the HTML concurrently so they are in the disk
+     * cache when the HTML is encoded
+     * <p>
+     * This method performs network I/O, blocks until all requests complete
+     * and must be called from within an account scope
+     *
+     * @param html
+     * @return this image getter
+     */
+    public HttpImageGetter prefetch(final String html) {
+        if (TextUtils.isEmpty(html) || !containsImages(html))
+            return this;
+
+        Set<String> sources = new LinkedHashSet<String>();
+        Matcher matcher = IMAGE_SOURCE.matcher(html);
+        while (matcher.find())
+            sources.add(matcher.group(1).replace("&amp;", "&"));
+        if (sources.size() < 2)
+            return this;
+
+        final GitHubAccount account = accountProvider.get();
+        List<Future<File>> requests = new ArrayList<Future<File>>(
+                sources.size());
+        for (final String source : sources)
+            requests.add(PREFETCHER.submit(new Callable<File>() {
+
+                @Override
+                public File call() throws Exception {
+                    accountScope.enterWith(account);
+                    try {
+                        return getImage(source);
+                    } finally {
+                        accountScope.exit();
+                    }
+                }
+            }));
+
+        for (Future<File> request : requests)
+            try {
+                request.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // Ignored, image will be requested again when encoded
+            }
+        return this;
+    }
+
+    /**
+     * Get the repository, branch and path of an image source URI that is a
+     * path to a file already in the repository
      *
      * @param source
-     * @return
-     * @throws IOException
+     * @return owner, name, branch and path or null if not a repository image
      */
-    private Drawable requestRepositoryImage(final String source)
-            throws IOException {
+    private static String[] getRepositoryImage(final String source) {
         if (TextUtils.isEmpty(source))
             return null;
 
@@ -246,55 +675,103 @@ public class HttpImageGetter implements ImageGetter {
         if (TextUtils.isEmpty(path))
             return null;
 
+        return new String[] { owner, name, branch, path.toString() };
+    }
+
+    /**
+     * Request an image using the contents API
+     *
+     * @param image
+     *            owner, name, branch and path of image
+     * @return image bytes or null if not found
+     * @throws IOException
+     */
+    private byte[] requestRepositoryImage(final String[] image)
+            throws IOException {
         List<RepositoryContents> contents = service.getContents(
-                RepositoryId.create(owner, name), path.toString(), branch);
-        if (contents != null && contents.size() == 1) {
-            byte[] content = Base64.decode(contents.get(0).getContent(),
-                    DEFAULT);
-            Bitmap bitmap = ImageUtils.getBitmap(content, width, MAX_VALUE);
-            if (bitmap == null)
-                return loading.getDrawable(source);
-            BitmapDrawable drawable = new BitmapDrawable(
-                    context.getResources(), bitmap);
-            drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
-            return drawable;
-        } else
+                RepositoryId.create(image[0], image[1]), image[3], image[2]);
+        if (contents != null && contents.size() == 1)
+            return Base64.decode(contents.get(0).getContent(), DEFAULT);
+        else
             return null;
     }
 
-    @Override
-    public Drawable getDrawable(final String source) {
-        try {
-            Drawable repositoryImage = requestRepositoryImage(source);
-            if (repositoryImage != null)
-                return repositoryImage;
-        } catch (Exception e) {
-            // Ignore and attempt request over regular HTTP request
-        }
+    /**
+     * Get image file for source from the disk cache, requesting the image if
+     * it is not cached
+     * <p>
+     * Images that are files in a repository are cached by repository, branch
+     * and path
+     *
+     * @param source
+     * @return file or null if the request failed
+     */
+    private File getImage(final String source) {
+        final String[] repositoryImage = getRepositoryImage(source);
+        final String key;
+        if (repositoryImage != null)
+            key = "contents:" + repositoryImage[0] + '/' + repositoryImage[1]
+                    + '/' + repositoryImage[2] + '/' + repositoryImage[3];
+        else
+            key = source;
+
+        final FileCache cache = getImageCache(context);
+        File image = cache.get(key);
+        if (image != null)
+            return image;
 
         File output = null;
         try {
-            output = File.createTempFile("image", ".jpg", dir);
-            HttpRequest request = HttpRequest.get(source);
-            if (!request.ok())
-                throw new IOException("Unexpected response code: "
-                        + request.code());
-            request.receive(output);
-            Bitmap bitmap = ImageUtils.getBitmap(output, width, MAX_VALUE);
-            if (bitmap == null)
-                return loading.getDrawable(source);
-
-            BitmapDrawable drawable = new BitmapDrawable(
-                    context.getResources(), bitmap);
-            drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
-            return drawable;
+            output = cache.createTempFile();
+            byte[] content = null;
+            if (repositoryImage != null)
+                try {
+                    content = requestRepositoryImage(repositoryImage);
+                } catch (Exception e) {
+                    // Ignore and attempt request over regular HTTP request
+                }
+
+            if (content != null) {
+                FileOutputStream stream = new FileOutputStream(output);
+                try {
+                    stream.write(content);
+                } finally {
+                    stream.close();
+                }
+            } else {
+                HttpRequest request = HttpRequest.get(source);
+                if (!request.ok())
+                    throw new IOException("Unexpected response code: "
+                            + request.code());
+                request.receive(output);
+            }
+
+            image = cache.commit(output, key);
+            output = null;
+            return image;
         } catch (IOException e) {
-            return loading.getDrawable(source);
+            return null;
         } catch (HttpRequestException e) {
-            return loading.getDrawable(source);
+            return null;
         } finally {
             if (output != null)
                 output.delete();
         }
     }
+
+    @Override
+    public Drawable getDrawable(final String source) {
+        File image = getImage(source);
+        if (image == null)
+            return loading.getDrawable(source);
+
+        Bitmap bitmap = ImageUtils.getBitmap(image, width, MAX_VALUE);
+        if (bitmap == null)
+            return loading.getDrawable(source);
+
+        BitmapDrawable drawable = new BitmapDrawable(context.getResources(),
+                bitmap);
+        drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return drawable;
+    }
 }
@@ -110,6 +110,25 @@ public class ImageUtils {
             return 1;
     }
 
+    /**
+     * Get the largest power of two sample size that decodes an image of the
+     * given width and height to at least the given size in both dimensions
+     *
+     * @param width
+     * @param height
+     * @param size
+     * @return sample size
+     */
+    public static int getSampleSize(int width, int height, final int size) {
+        int sampleSize = 1;
+        while (width / 2 >= size && height / 2 >= size) {
+            width /= 2;
+            height /= 2;
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
     /**
      * Get size of image
      *
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.util;
+
+import android.util.Log;
+
+import com.github.mobile.RequestCodec;
+import com.github.mobile.RequestReader;
+import com.github.mobile.RequestWriter;
+import com.github.mobile.SerializableCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Size-bounded disk cache of objects keyed by string
+ * <p>
+ * Intended for objects that never change once created, such as those
+ * addressed by a SHA-1, so entries are only ever evicted to stay under the
+ * maximum size.
+ */
+public class ObjectCache {
+
+    private static final String TAG = "ObjectCache";
+
+    private final FileCache files;
+
+    private final int formatVersion;
+
+    /**
+     * Create cache in directory that holds at most the given number of bytes
+     *
+     * @param dir
+     * @param maxSize
+     * @param formatVersion
+     */
+    public ObjectCache(final File dir, final long maxSize,
+            final int formatVersion) {
+        files = new FileCache(dir, maxSize);
+        this.formatVersion = formatVersion;
+    }
+
+    /**
+     * Get object for key
+     *
+     * @param key
+     * @return object or null if not cached
+     */
+    public <V> V get(final String key) {
+        return get(key, new SerializableCodec<V>());
+    }
+
+    /**
+     * Get object for key written with codec
+     *
+     * @param key
+     * @param codec
+     * @return object or null if not cached
+     */
+    public <V> V get(final String key, final RequestCodec<V> codec) {
+        File file = files.get(key);
+        if (file == null)
+            return null;
+
+        V value = new RequestReader(file, formatVersion).read(codec);
+        if (value == null)
+            files.remove(key);
+        return value;
+    }
+
+    /**
+     * Store object for key
+     *
+     * @param key
+     * @param value
+     * @return true if stored, false otherwise
+     */
+    public boolean put(final String key, final Serializable value) {
+        return put(key, value, new SerializableCodec<Serializable>());
+    }
+
+    /**
+     * Store object for key with codec
+     *
+     * @param key
+     * @param value
+     * @param codec
+     * @return true if stored, false otherwise
+     */
+    public <V> boolean put(final String key, final V value,
+            final RequestCodec<V> codec) {
+        File temp;
+        try {
+            temp = files.createTempFile();
+        } catch (IOException e) {
+            Log.d(TAG, "Exception creating cache file", e);
+            return false;
+        }
+
+        RequestWriter writer = new RequestWriter(temp, formatVersion);
+        if (writer.write(value, codec) == null) {
+            temp.delete();
+            return false;
+        }
+        return files.commit(temp, key) != null;
+    }
+
+    /**
+     * Remove object for key
+     *
+     * @param key
+     * @return this cache
+     */
+    public ObjectCache remove(final String key) {
+        files.remove(key);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return files.toString();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.util;
+
+import static android.graphics.PixelFormat.TRANSLUCENT;
+import static android.graphics.Shader.TileMode.CLAMP;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Drawable that draws a bitmap with rounded corners using a shader so no
+ * rounded copy of the bitmap has to be created
+ */
+public class RoundedAvatarDrawable extends Drawable {
+
+    private final Bitmap bitmap;
+
+    private final float radius;
+
+    private final Paint paint;
+
+    private final BitmapShader shader;
+
+    private final RectF rect = new RectF();
+
+    private final Matrix matrix = new Matrix();
+
+    /**
+     * Create drawable for bitmap with corner radius in pixels
+     *
+     * @param bitmap
+     * @param radius
+     */
+    public RoundedAvatarDrawable(final Bitmap bitmap, final float radius) {
+        this.bitmap = bitmap;
+        this.radius = radius;
+
+        shader = new BitmapShader(bitmap, CLAMP, CLAMP);
+        paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setFilterBitmap(true);
+        paint.setShader(shader);
+    }
+
+    /**
+     * @return bitmap
+     */
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    @Override
+    protected void onBoundsChange(final Rect bounds) {
+        super.onBoundsChange(bounds);
+
+        rect.set(bounds);
+        matrix.setScale(rect.width() / bitmap.getWidth(), rect.height()
+                / bitmap.getHeight());
+        matrix.postTranslate(rect.left, rect.top);
+        shader.setLocalMatrix(matrix);
+    }
+
+    @Override
+    public void draw(final Canvas canvas) {
+        canvas.drawRoundRect(rect, radius, radius, paint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return bitmap.getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return bitmap.getHeight();
+    }
+
+    @Override
+    public int getOpacity() {
+        return TRANSLUCENT;
+    }
+
+    @Override
+    public void setAlpha(final int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(final ColorFilter filter) {
+        paint.setColorFilter(filter);
+        invalidateSelf();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile;
+
+import com.github.mobile.core.issue.IssueFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+
+import org.eclipse.egit.github.core.Tree;
+
+/**
+ * Benchmark of writing and reading request data with the binary codecs in
+ * {@link RequestCodecs} against the Java serialization format used before
+ * them
+ * <p>
+ * Run the main method from the test classpath, it is not run as a unit test
+ */
+public class RequestCodecsBenchmark {
+
+    private static final int FORMAT_VERSION = 3;
+
+    private static final int WARMUP = 5;
+
+    private static final int RUNS = 20;
+
+    private static <V> void benchmark(final String name, final V value,
+            final RequestCodec<V> codec, final File file) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            new RequestWriter(file, FORMAT_VERSION).write(value, codec);
+            new RequestReader(file, FORMAT_VERSION).read(codec);
+        }
+
+        long writeTime = 0;
+        long readTime = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            V written = new RequestWriter(file, FORMAT_VERSION).write(value,
+                    codec);
+            if (written == null)
+                throw new IOException("Writing " + name + " failed");
+            writeTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            V read = new RequestReader(file, FORMAT_VERSION).read(codec);
+            if (read == null)
+                throw new IOException("Reading " + name + " failed");
+            readTime += System.nanoTime() - start;
+        }
+        System.out.println(String.format(
+                "%-30s write %8.2f ms  read %8.2f ms  %9d bytes", name,
+                writeTime / 1e6 / RUNS, readTime / 1e6 / RUNS, file.length()));
+    }
+
+    /**
+     * Run benchmark
+     *
+     * @param args
+     *            number of tree entries and number of issue filters
+     * @throws IOException
+     */
+    public static void main(final String[] args) throws IOException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int filters = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        File file = File.createTempFile("request", ".benchmark");
+        try {
+            Tree tree = RequestCodecsTest.createTree(entries);
+            benchmark("tree (serialization)", tree,
+                    new SerializableCodec<Tree>(), file);
+            benchmark("tree (codec)", tree, RequestCodecs.TREE, file);
+
+            Collection<IssueFilter> issueFilters = RequestCodecsTest
+                    .createFilters(filters);
+            benchmark("issue filters (serialization)",
+                    (Serializable) issueFilters,
+                    new SerializableCodec<Serializable>(), file);
+            benchmark("issue filters (codec)", issueFilters,
+                    RequestCodecs.ISSUE_FILTERS, file);
+        } finally {
+            file.delete();
+        }
+    }
+}
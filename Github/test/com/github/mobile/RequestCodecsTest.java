@@ -0,0 +1,345 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.github.mobile.core.issue.IssueFilter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.egit.github.core.Blob;
+import org.eclipse.egit.github.core.Label;
+import org.eclipse.egit.github.core.Milestone;
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.Tree;
+import org.eclipse.egit.github.core.TreeEntry;
+import org.eclipse.egit.github.core.User;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of writing and reading request data with {@link RequestCodecs}
+ */
+public class RequestCodecsTest {
+
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * Temporary folder for request files
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Create tree with entries
+     *
+     * @param count
+     * @return tree
+     */
+    static Tree createTree(final int count) {
+        List<TreeEntry> entries = new ArrayList<TreeEntry>(count);
+        for (int i = 0; i < count; i++) {
+            TreeEntry entry = new TreeEntry();
+            entry.setPath("src/main/java/com/example/File" + i + ".java");
+            entry.setMode(TreeEntry.MODE_BLOB);
+            entry.setType(TreeEntry.TYPE_BLOB);
+            entry.setSha(Integer.toHexString(i) + "0123456789abcdef");
+            entry.setUrl("https://api.github.com/repos/o/r/git/blobs/" + i);
+            entry.setSize(i * 10L);
+            entries.add(entry);
+        }
+        Tree tree = new Tree();
+        tree.setSha("abcdef0123456789abcdef0123456789abcdef01");
+        tree.setUrl("https://api.github.com/repos/o/r/git/trees/abcdef");
+        tree.setTree(entries);
+        return tree;
+    }
+
+    /**
+     * Create issue filters each with an assignee, milestone and labels
+     *
+     * @param count
+     * @return filters
+     */
+    static Collection<IssueFilter> createFilters(final int count) {
+        Collection<IssueFilter> filters = new HashSet<IssueFilter>();
+        for (int i = 0; i < count; i++) {
+            User owner = new User();
+            owner.setId(i);
+            owner.setLogin("owner" + i);
+            owner.setAvatarUrl("https://example.com/avatar/" + i);
+
+            Repository repository = new Repository();
+            repository.setId(100 + i);
+            repository.setName("repo" + i);
+            repository.setOwner(owner);
+            repository.setDescription("Repository " + i);
+            repository.setForks(i);
+            repository.setWatchers(2 * i);
+            repository.setLanguage("Java");
+            repository.setHasIssues(true);
+            repository.setPrivate(i % 2 == 0);
+
+            Milestone milestone = new Milestone();
+            milestone.setNumber(i);
+            milestone.setTitle("Milestone " + i);
+            milestone.setState("open");
+
+            Label label = new Label();
+            label.setName("label" + i);
+            label.setColor("ff0000");
+
+            IssueFilter filter = new IssueFilter(repository);
+            filter.setOpen(i % 3 != 0);
+            filter.setAssignee(owner);
+            filter.setMilestone(milestone);
+            filter.addLabel(label);
+            filters.add(filter);
+        }
+        return filters;
+    }
+
+    private <V> V roundTrip(final V value, final RequestCodec<V> codec)
+            throws IOException {
+        File file = folder.newFile("request");
+        assertNotNull(new RequestWriter(file, FORMAT_VERSION).write(value,
+                codec));
+        return new RequestReader(file, FORMAT_VERSION).read(codec);
+    }
+
+    /**
+     * Verify ordered sets of ids are read in order
+     *
+     * @throws IOException
+     */
+    @Test
+    public void longSet() throws IOException {
+        LinkedHashSet<Long> ids = new LinkedHashSet<Long>(Arrays.asList(3L,
+                1L, Long.MAX_VALUE, -5L));
+        LinkedHashSet<Long> read = roundTrip(ids, RequestCodecs.LONG_SET);
+        assertEquals(new ArrayList<Long>(ids), new ArrayList<Long>(read));
+    }
+
+    /**
+     * Verify string arrays keep null and non-ASCII elements
+     *
+     * @throws IOException
+     */
+    @Test
+    public void stringArray() throws IOException {
+        String[] patches = new String[] { "@@ -1 +1 @@", null, "",
+                "\u00e9\u4e2d\ud83d\ude00" };
+        assertArrayEquals(patches,
+                roundTrip(patches, RequestCodecs.STRING_ARRAY));
+    }
+
+    /**
+     * Verify trees are read with all entry fields
+     *
+     * @throws IOException
+     */
+    @Test
+    public void tree() throws IOException {
+        Tree tree = createTree(50);
+        Tree read = roundTrip(tree, RequestCodecs.TREE);
+        assertEquals(tree.getSha(), read.getSha());
+        assertEquals(tree.getUrl(), read.getUrl());
+        assertEquals(tree.getTree().size(), read.getTree().size());
+        for (int i = 0; i < tree.getTree().size(); i++) {
+            TreeEntry entry = tree.getTree().get(i);
+            TreeEntry readEntry = read.getTree().get(i);
+            assertEquals(entry.getPath(), readEntry.getPath());
+            assertEquals(entry.getMode(), readEntry.getMode());
+            assertEquals(entry.getType(), readEntry.getType());
+            assertEquals(entry.getSha(), readEntry.getSha());
+            assertEquals(entry.getUrl(), readEntry.getUrl());
+            assertEquals(entry.getSize(), readEntry.getSize());
+        }
+    }
+
+    /**
+     * Verify trees without entries are read without entries
+     *
+     * @throws IOException
+     */
+    @Test
+    public void treeWithoutEntries() throws IOException {
+        Tree tree = new Tree();
+        tree.setSha("abc");
+        Tree read = roundTrip(tree, RequestCodecs.TREE);
+        assertEquals("abc", read.getSha());
+        assertNull(read.getUrl());
+        assertNull(read.getTree());
+    }
+
+    /**
+     * Verify blobs are read with all fields
+     *
+     * @throws IOException
+     */
+    @Test
+    public void blob() throws IOException {
+        Blob blob = new Blob();
+        blob.setEncoding(Blob.ENCODING_BASE64);
+        blob.setContent("aGVsbG8=");
+        Blob read = roundTrip(blob, RequestCodecs.BLOB);
+        assertEquals(blob.getEncoding(), read.getEncoding());
+        assertEquals(blob.getContent(), read.getContent());
+    }
+
+    /**
+     * Verify issue filters are read equal and into a mutable collection
+     *
+     * @throws IOException
+     */
+    @Test
+    public void issueFilters() throws IOException {
+        Collection<IssueFilter> filters = createFilters(5);
+        Collection<IssueFilter> read = roundTrip(filters,
+                RequestCodecs.ISSUE_FILTERS);
+        assertEquals(filters, read);
+
+        for (IssueFilter filter : read) {
+            IssueFilter original = findFilter(filters, filter.getRepository()
+                    .getId());
+            assertEquals(original.getRepository().generateId(), filter
+                    .getRepository().generateId());
+            assertEquals(original.getRepository().getOwner().getAvatarUrl(),
+                    filter.getRepository().getOwner().getAvatarUrl());
+            assertEquals(original.toFilterMap(), filter.toFilterMap());
+            assertEquals(original.toDisplay().toString(), filter.toDisplay()
+                    .toString());
+        }
+
+        Iterator<IssueFilter> iterator = read.iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals(filters.size() - 1, read.size());
+    }
+
+    private static IssueFilter findFilter(
+            final Collection<IssueFilter> filters, final long repositoryId) {
+        for (IssueFilter filter : filters)
+            if (filter.getRepository().getId() == repositoryId)
+                return filter;
+        return null;
+    }
+
+    /**
+     * Verify data written with another format version is not read
+     *
+     * @throws IOException
+     */
+    @Test
+    public void formatVersionMismatch() throws IOException {
+        File file = folder.newFile("request");
+        new RequestWriter(file, FORMAT_VERSION).write(new String[] { "a" },
+                RequestCodecs.STRING_ARRAY);
+        assertNull(new RequestReader(file, FORMAT_VERSION + 1)
+                .read(RequestCodecs.STRING_ARRAY));
+    }
+
+    /**
+     * Verify data written by a different codec version is not read
+     *
+     * @throws IOException
+     */
+    @Test
+    public void codecVersionMismatch() throws IOException {
+        File file = folder.newFile("request");
+        new RequestWriter(file, FORMAT_VERSION).write(new String[] { "a" },
+                RequestCodecs.STRING_ARRAY);
+        assertNull(new RequestReader(file, FORMAT_VERSION)
+                .read(new SerializableCodec<String[]>() {
+
+                    @Override
+                    public int getVersion() {
+                        return 2;
+                    }
+                }));
+    }
+
+    /**
+     * Verify files written with Java serialization by earlier versions are
+     * still read by every codec
+     *
+     * @throws IOException
+     */
+    @Test
+    public void readsSerializedFiles() throws IOException {
+        Collection<IssueFilter> filters = createFilters(3);
+        File file = folder.newFile("issue_filters.ser");
+        writeSerialized(file, (Serializable) filters);
+
+        Collection<IssueFilter> read = new RequestReader(file, FORMAT_VERSION)
+                .read(RequestCodecs.ISSUE_FILTERS);
+        assertEquals(filters, read);
+        assertNull(new RequestReader(file, FORMAT_VERSION + 1)
+                .read(RequestCodecs.ISSUE_FILTERS));
+    }
+
+    /**
+     * Verify missing and empty files are not read
+     *
+     * @throws IOException
+     */
+    @Test
+    public void missingFile() throws IOException {
+        File file = new File(folder.getRoot(), "missing");
+        assertNull(new RequestReader(file, FORMAT_VERSION)
+                .read(RequestCodecs.BLOB));
+        assertFalse(file.exists());
+        assertNull(new RequestReader(folder.newFile("empty"), FORMAT_VERSION)
+                .read(RequestCodecs.BLOB));
+    }
+
+    /**
+     * Write value in the format used before codecs were added
+     *
+     * @param file
+     * @param value
+     * @throws IOException
+     */
+    static void writeSerialized(final File file, final Serializable value)
+            throws IOException {
+        ObjectOutputStream output = new ObjectOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file), 8192));
+        try {
+            output.writeInt(FORMAT_VERSION);
+            output.writeObject(value);
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core;
+
+import com.github.mobile.core.ResourcePagerTest.Item;
+import com.github.mobile.core.ResourcePagerTest.ItemPager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of the cost of each page added to a {@link ResourcePager} as the
+ * list grows, measured as adding the page and getting the array of all
+ * resources that is handed to the list adapter
+ * <p>
+ * The snapshots returned from {@link ResourcePager#getResources()} are
+ * compared against copying all resources into a new list on each page as was
+ * done before them.
+ * <p>
+ * Run the main method from the test classpath, it is not run as a unit test
+ */
+public class ResourcePagerBenchmark {
+
+    private static final int WARMUP = 5;
+
+    private static final int RUNS = 20;
+
+    private static final int PAGE_SIZE = 30;
+
+    private static Object[] getArray(final ItemPager pager,
+            final boolean copy) {
+        if (copy)
+            return new ArrayList<Item>(pager.resources.values()).toArray();
+        else
+            return pager.getResources().toArray();
+    }
+
+    /**
+     * Load pages up to the given number of rows
+     *
+     * @param pages
+     * @param copy
+     * @param buckets
+     *            nanoseconds spent on the pages in each bucket of rows
+     */
+    private static void load(final List<List<Item>> pages, final boolean copy,
+            final long[] buckets) {
+        ItemPager pager = new ItemPager();
+        int pagesPerBucket = pages.size() / buckets.length;
+        for (int i = 0; i < pages.size(); i++) {
+            long start = System.nanoTime();
+            pager.add(pages.get(i));
+            if (getArray(pager, copy).length != (i + 1) * PAGE_SIZE)
+                throw new IllegalStateException("Page " + i + " not added");
+            buckets[i / pagesPerBucket] += System.nanoTime() - start;
+        }
+    }
+
+    private static void benchmark(final String name,
+            final List<List<Item>> pages, final boolean copy,
+            final int bucketCount) {
+        for (int i = 0; i < WARMUP; i++)
+            load(pages, copy, new long[bucketCount]);
+
+        long[] buckets = new long[bucketCount];
+        for (int i = 0; i < RUNS; i++)
+            load(pages, copy, buckets);
+
+        int pagesPerBucket = pages.size() / bucketCount;
+        for (int i = 0; i < bucketCount; i++)
+            System.out.println(String.format(
+                    "%-30s rows %5d-%5d  %8.2f us per page", name, i
+                            * pagesPerBucket * PAGE_SIZE, (i + 1)
+                            * pagesPerBucket * PAGE_SIZE, buckets[i] / 1e3
+                            / RUNS / pagesPerBucket));
+    }
+
+    /**
+     * Run benchmark
+     *
+     * @param args
+     *            number of rows and number of row ranges to report
+     */
+    public static void main(final String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 6000;
+        int bucketCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        List<List<Item>> pages = new ArrayList<List<Item>>();
+        for (int i = 0; i < rows / PAGE_SIZE; i++)
+            pages.add(ResourcePagerTest.createPage(i * PAGE_SIZE, PAGE_SIZE,
+                    "a"));
+
+        benchmark("page (copy)", pages, true, bucketCount);
+        benchmark("page (snapshot)", pages, false, bucketCount);
+    }
+}
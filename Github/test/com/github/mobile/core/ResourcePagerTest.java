@@ -0,0 +1,246 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.egit.github.core.client.PageIterator;
+import org.eclipse.egit.github.core.client.PagedRequest;
+import org.junit.Test;
+
+/**
+ * Unit tests of the resource lists returned from {@link ResourcePager}
+ */
+public class ResourcePagerTest {
+
+    /**
+     * Resource with an id and a value that changes between pages
+     */
+    static class Item {
+
+        final int id;
+
+        final String value;
+
+        Item(final int id, final String value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return id + ":" + value;
+        }
+    }
+
+    /**
+     * Pager of items returning pages from a list
+     */
+    static class ItemPager extends ResourcePager<Item> {
+
+        private final List<List<Item>> pages;
+
+        ItemPager(final List<List<Item>> pages) {
+            this.pages = pages;
+        }
+
+        ItemPager() {
+            this(new ArrayList<List<Item>>());
+        }
+
+        @Override
+        protected Object getId(final Item resource) {
+            return resource.id;
+        }
+
+        @Override
+        public PageIterator<Item> createIterator(final int page,
+                final int size) {
+            return new PageIterator<Item>(new PagedRequest<Item>(page, size),
+                    null) {
+
+                private int next = page;
+
+                @Override
+                public boolean hasNext() {
+                    return next <= pages.size();
+                }
+
+                @Override
+                public Collection<Item> next() {
+                    return pages.get(next++ - 1);
+                }
+            };
+        }
+    }
+
+    /**
+     * Create page of items with ids starting at the given id
+     *
+     * @param first
+     * @param count
+     * @param value
+     * @return page
+     */
+    static List<Item> createPage(final int first, final int count,
+            final String value) {
+        List<Item> page = new ArrayList<Item>(count);
+        for (int i = 0; i < count; i++)
+            page.add(new Item(first + i, value));
+        return page;
+    }
+
+    /**
+     * Verify lists returned before a page is added do not change
+     */
+    @Test
+    public void snapshotUnchangedByLaterPages() {
+        ItemPager pager = new ItemPager();
+        List<Item> first = createPage(0, 30, "a");
+        pager.add(first);
+        List<Item> snapshot = pager.getResources();
+
+        // Enough pages to grow the array behind the snapshot several times
+        for (int i = 1; i < 10; i++)
+            pager.add(createPage(i * 30, 30, "a"));
+
+        assertEquals(first, snapshot);
+        assertArrayEquals(first.toArray(), snapshot.toArray());
+        assertEquals(300, pager.getResources().size());
+        assertEquals(300, pager.size());
+    }
+
+    /**
+     * Verify the same list is returned until resources are added
+     */
+    @Test
+    public void sameSnapshotUntilAdded() {
+        ItemPager pager = new ItemPager();
+        pager.add(createPage(0, 5, "a"));
+        List<Item> snapshot = pager.getResources();
+        assertSame(snapshot, pager.getResources());
+
+        pager.add(createPage(5, 5, "a"));
+        assertNotSame(snapshot, pager.getResources());
+        assertEquals(10, pager.getResources().size());
+    }
+
+    /**
+     * Verify a resource with the id of a loaded resource replaces it at its
+     * position without changing lists returned before
+     */
+    @Test
+    public void replaceKeepsPositionAndSnapshot() {
+        ItemPager pager = new ItemPager();
+        pager.add(createPage(0, 5, "a"));
+        List<Item> snapshot = pager.getResources();
+
+        pager.add(Arrays.asList(new Item(2, "b"), new Item(5, "b")));
+        List<Item> resources = pager.getResources();
+        assertEquals(6, resources.size());
+        assertEquals("2:b", resources.get(2).toString());
+        assertEquals("5:b", resources.get(5).toString());
+
+        assertEquals(5, snapshot.size());
+        assertEquals("2:a", snapshot.get(2).toString());
+    }
+
+    /**
+     * Verify resources added after the last list returned are replaced in
+     * place
+     */
+    @Test
+    public void replaceUnsharedResource() {
+        ItemPager pager = new ItemPager();
+        pager.add(createPage(0, 5, "a"));
+        List<Item> snapshot = pager.getResources();
+
+        pager.add(createPage(5, 5, "a"));
+        pager.add(Arrays.asList(new Item(7, "b")));
+        List<Item> resources = pager.getResources();
+        assertEquals(10, resources.size());
+        assertEquals("7:b", resources.get(7).toString());
+        assertEquals(5, snapshot.size());
+    }
+
+    /**
+     * Verify lists returned are immutable
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotImmutable() {
+        ItemPager pager = new ItemPager();
+        pager.add(createPage(0, 5, "a"));
+        pager.getResources().add(new Item(5, "a"));
+    }
+
+    /**
+     * Verify clearing the pager does not change lists returned before
+     */
+    @Test
+    public void clearKeepsSnapshot() {
+        ItemPager pager = new ItemPager();
+        pager.add(createPage(0, 5, "a"));
+        List<Item> snapshot = pager.getResources();
+
+        pager.clear();
+        assertTrue(pager.getResources().isEmpty());
+        pager.add(createPage(10, 3, "b"));
+        assertEquals(3, pager.getResources().size());
+        assertEquals(5, snapshot.size());
+        assertEquals("0:a", snapshot.get(0).toString());
+    }
+
+    /**
+     * Verify pages loaded by {@link ResourcePager#next()} are added in order
+     * and reloaded after a clear
+     *
+     * @throws IOException
+     */
+    @Test
+    public void nextAddsPagesInOrder() throws IOException {
+        List<List<Item>> pages = new ArrayList<List<Item>>();
+        pages.add(createPage(0, 3, "a"));
+        pages.add(createPage(3, 3, "a"));
+        ItemPager pager = new ItemPager(pages);
+
+        assertTrue(pager.next());
+        List<Item> snapshot = pager.getResources();
+        assertFalse(pager.next());
+        assertFalse(pager.hasMore());
+        assertEquals(3, snapshot.size());
+        assertEquals(6, pager.getResources().size());
+        assertEquals("5:a", pager.getResources().get(5).toString());
+
+        pages.set(0, createPage(0, 3, "b"));
+        pager.clear();
+        assertFalse(pager.next());
+        List<Item> restored = pager.getResources();
+        assertEquals(6, restored.size());
+        assertEquals("0:b", restored.get(0).toString());
+        assertEquals("0:a", snapshot.get(0).toString());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core.code;
+
+import static org.eclipse.egit.github.core.TreeEntry.TYPE_BLOB;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.egit.github.core.TreeEntry;
+
+/**
+ * Benchmark of building a {@link FileFinder} and of running the queries typed
+ * one character at a time and then deleted one character at a time
+ * <p>
+ * Run the main method from the test classpath, it is not run as a unit test
+ */
+public class FileFinderBenchmark {
+
+    private static final int WARMUP = 5;
+
+    private static final int RUNS = 20;
+
+    private static final int LIMIT = 50;
+
+    private static final String[] WORDS = new String[] { "repository",
+            "issue", "commit", "tree", "user", "gist", "event", "pager",
+            "cache", "request", "fragment", "activity", "adapter", "list",
+            "view", "util", "core", "code", "ref", "label", "milestone",
+            "comment", "search", "account", "service", "loader", "task",
+            "filter", "store", "helper" };
+
+    private static final String[] EXTENSIONS = new String[] { ".java",
+            ".xml", ".png", ".md", ".json" };
+
+    private static String capitalize(final String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    /**
+     * Create files with paths of random words between two and six folders
+     * deep
+     *
+     * @param count
+     * @return files
+     */
+    private static List<TreeEntry> createFiles(final int count) {
+        Random random = new Random(42);
+        List<TreeEntry> files = new ArrayList<TreeEntry>(count);
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            path.setLength(0);
+            int depth = 2 + random.nextInt(5);
+            for (int j = 0; j < depth; j++)
+                path.append(WORDS[random.nextInt(WORDS.length)]).append('/');
+            path.append(capitalize(WORDS[random.nextInt(WORDS.length)]));
+            path.append(capitalize(WORDS[random.nextInt(WORDS.length)]));
+            path.append(i);
+            path.append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+
+            TreeEntry file = new TreeEntry();
+            file.setPath(path.toString());
+            file.setType(TYPE_BLOB);
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Run benchmark
+     *
+     * @param args
+     *            number of files and query to type
+     */
+    public static void main(final String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        String query = args.length > 1 ? args[1] : "issuefragjava";
+
+        List<TreeEntry> files = createFiles(count);
+        FileFinder finder = null;
+        long buildTime = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            long start = System.nanoTime();
+            finder = new FileFinder(files);
+            if (i >= WARMUP)
+                buildTime += System.nanoTime() - start;
+        }
+        System.out.println(String.format("%-30s %8.2f ms", "build "
+                + finder.size() + " files", buildTime / 1e6 / RUNS));
+
+        long[] typeTimes = new long[query.length()];
+        long[] deleteTimes = new long[query.length()];
+        int[] matches = new int[query.length()];
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            for (int j = 1; j <= query.length(); j++) {
+                long start = System.nanoTime();
+                matches[j - 1] = finder.find(query.substring(0, j), LIMIT)
+                        .size();
+                if (i >= WARMUP)
+                    typeTimes[j - 1] += System.nanoTime() - start;
+            }
+            for (int j = query.length(); j >= 1; j--) {
+                long start = System.nanoTime();
+                finder.find(query.substring(0, j), LIMIT);
+                if (i >= WARMUP)
+                    deleteTimes[j - 1] += System.nanoTime() - start;
+            }
+            finder.find("", LIMIT);
+        }
+        for (int j = 0; j < query.length(); j++)
+            System.out.println(String.format(
+                    "%-30s type %6.2f ms  delete %6.2f ms  %2d results",
+                    query.substring(0, j + 1), typeTimes[j] / 1e6 / RUNS,
+                    deleteTimes[j] / 1e6 / RUNS, matches[j]));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core.code;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static org.eclipse.egit.github.core.TreeEntry.TYPE_BLOB;
+import static org.eclipse.egit.github.core.TreeEntry.TYPE_TREE;
+import static org.junit.Assert.assertEquals;
+
+import com.github.mobile.core.code.FullTree.Folder;
+import com.github.mobile.core.commit.CommitUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.egit.github.core.Reference;
+import org.eclipse.egit.github.core.Tree;
+import org.eclipse.egit.github.core.TreeEntry;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Benchmark of building a {@link FullTree} from a recursive tree against
+ * building a folder with two sorted maps for each directory as was done
+ * before the entries were indexed into arrays
+ * <p>
+ * Run the main method from the test classpath, it is not run as a unit test.
+ * It runs under Robolectric since {@link FullTree} uses Android classes.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FullTreeBenchmark {
+
+    private static final int WARMUP = 5;
+
+    private static final int RUNS = 20;
+
+    /**
+     * Folder built the way {@link FullTree} did before entries were indexed
+     * into arrays
+     */
+    private static class LegacyFolder {
+
+        private final Map<String, LegacyFolder> folders = new TreeMap<String, LegacyFolder>(
+                CASE_INSENSITIVE_ORDER);
+
+        private final Map<String, TreeEntry> files = new TreeMap<String, TreeEntry>(
+                CASE_INSENSITIVE_ORDER);
+
+        private void add(final TreeEntry entry, final String[] segments,
+                final int index) {
+            if (index < segments.length - 1) {
+                LegacyFolder folder = folders.get(segments[index]);
+                if (folder != null)
+                    folder.add(entry, segments, index + 1);
+            } else if (TYPE_TREE.equals(entry.getType()))
+                folders.put(CommitUtils.getName(entry.getPath()),
+                        new LegacyFolder());
+            else if (TYPE_BLOB.equals(entry.getType()))
+                files.put(CommitUtils.getName(entry.getPath()), entry);
+        }
+
+        private static LegacyFolder build(final Tree tree) {
+            LegacyFolder root = new LegacyFolder();
+            for (TreeEntry entry : tree.getTree())
+                root.add(entry, entry.getPath().split("/"), 0);
+            return root;
+        }
+    }
+
+    private static TreeEntry createEntry(final String path,
+            final String type) {
+        TreeEntry entry = new TreeEntry();
+        entry.setPath(path);
+        entry.setType(type);
+        entry.setMode(TYPE_TREE.equals(type) ? TreeEntry.MODE_DIRECTORY
+                : TreeEntry.MODE_BLOB);
+        entry.setSha(Integer.toHexString(path.hashCode()));
+        return entry;
+    }
+
+    /**
+     * Create recursive tree of folders each holding sub folders of files
+     * <p>
+     * Entries are listed in path order like the trees returned by the API
+     *
+     * @param folders
+     * @param subFolders
+     * @param files
+     * @return tree
+     */
+    private static Tree createTree(final int folders, final int subFolders,
+            final int files) {
+        List<TreeEntry> entries = new ArrayList<TreeEntry>();
+        for (int i = 0; i < folders; i++) {
+            String folder = "module" + i;
+            entries.add(createEntry(folder, TYPE_TREE));
+            for (int j = 0; j < subFolders; j++) {
+                String subFolder = folder + "/package" + j;
+                entries.add(createEntry(subFolder, TYPE_TREE));
+                for (int k = 0; k < files; k++)
+                    entries.add(createEntry(subFolder + "/Source" + k
+                            + ".java", TYPE_BLOB));
+            }
+        }
+        Tree tree = new Tree();
+        tree.setSha("abcdef0123456789abcdef0123456789abcdef01");
+        tree.setTree(entries);
+        return tree;
+    }
+
+    private static int getCount(final String name, final int defaultValue) {
+        return Integer.getInteger("benchmark." + name, defaultValue);
+    }
+
+    /**
+     * Build trees and open the first sub folder
+     */
+    @Test
+    public void benchmark() {
+        int folders = getCount("folders", 40);
+        int subFolders = getCount("subFolders", 25);
+        int files = getCount("files", 100);
+
+        Tree tree = createTree(folders, subFolders, files);
+        Reference reference = new Reference();
+        reference.setRef("refs/heads/master");
+
+        long legacyTime = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            long start = System.nanoTime();
+            LegacyFolder root = LegacyFolder.build(tree);
+            assertEquals(files, root.folders.get("module0").folders
+                    .get("package0").files.size());
+            if (i >= WARMUP)
+                legacyTime += System.nanoTime() - start;
+        }
+
+        long buildTime = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            long start = System.nanoTime();
+            Folder root = new FullTree(tree, reference).root;
+            assertEquals(files, root.getFolder("module0")
+                    .getFolder("package0").getFiles().size());
+            if (i >= WARMUP)
+                buildTime += System.nanoTime() - start;
+        }
+
+        System.out.println(tree.getTree().size() + " entries");
+        System.out.println(String.format("%-30s %8.2f ms", "build (maps)",
+                legacyTime / 1e6 / RUNS));
+        System.out.println(String.format("%-30s %8.2f ms", "build (arrays)",
+                buildTime / 1e6 / RUNS));
+    }
+
+    /**
+     * Run benchmark
+     *
+     * @param args
+     *            number of top-level folders, number of sub folders in each
+     *            and number of files in each sub folder
+     */
+    public static void main(final String[] args) {
+        String[] names = new String[] { "folders", "subFolders", "files" };
+        for (int i = 0; i < args.length && i < names.length; i++)
+            System.setProperty("benchmark." + names[i], args[i]);
+        JUnitCore.main(FullTreeBenchmark.class.getName());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.core.commit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.egit.github.core.CommitComment;
+import org.eclipse.egit.github.core.CommitFile;
+import org.eclipse.egit.github.core.RepositoryCommit;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Benchmark of attaching comments to the files of a {@link FullCommit}
+ * against scanning the files for each comment as was done before the files
+ * were indexed by path
+ * <p>
+ * Run the main method from the test classpath, it is not run as a unit test.
+ * It runs under Robolectric since {@link FullCommit} uses Android classes.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FullCommitBenchmark {
+
+    private static final int WARMUP = 5;
+
+    private static final int RUNS = 20;
+
+    /**
+     * Comments attached the way {@link FullCommit} did before the files were
+     * indexed by path
+     */
+    private static class LegacyFullCommit extends ArrayList<CommitComment> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<FullCommitFile> files;
+
+        private LegacyFullCommit(final RepositoryCommit commit,
+                final List<CommitComment> comments) {
+            List<CommitFile> rawFiles = commit.getFiles();
+            files = new ArrayList<FullCommitFile>(rawFiles.size());
+            for (CommitFile file : rawFiles) {
+                Iterator<CommitComment> iterator = comments.iterator();
+                FullCommitFile full = new FullCommitFile(file);
+                while (iterator.hasNext()) {
+                    CommitComment comment = iterator.next();
+                    if (file.getFilename().equals(comment.getPath())) {
+                        full.add(comment);
+                        iterator.remove();
+                    }
+                }
+                files.add(full);
+            }
+            addAll(comments);
+        }
+
+        @Override
+        public boolean add(final CommitComment comment) {
+            String path = comment.getPath();
+            if (path != null && path.length() > 0)
+                for (FullCommitFile file : files)
+                    if (path.equals(file.getFile().getFilename())) {
+                        file.add(comment);
+                        return true;
+                    }
+            return super.add(comment);
+        }
+    }
+
+    private static RepositoryCommit createCommit(final int fileCount) {
+        List<CommitFile> files = new ArrayList<CommitFile>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            CommitFile file = new CommitFile();
+            file.setFilename("src/main/java/com/example/File" + i + ".java");
+            files.add(file);
+        }
+        RepositoryCommit commit = new RepositoryCommit();
+        commit.setSha("abcdef0123456789abcdef0123456789abcdef01");
+        commit.setFiles(files);
+        return commit;
+    }
+
+    /**
+     * Create comments on lines of the files with every tenth comment on the
+     * commit itself
+     *
+     * @param count
+     * @param fileCount
+     * @return comments
+     */
+    private static List<CommitComment> createComments(final int count,
+            final int fileCount) {
+        List<CommitComment> comments = new ArrayList<CommitComment>(count);
+        for (int i = 0; i < count; i++) {
+            CommitComment comment = new CommitComment();
+            comment.setId(i);
+            if (i % 10 != 0) {
+                // Spread comments over files in an order unrelated to the files
+                int file = (i * 7919) % fileCount;
+                comment.setPath("src/main/java/com/example/File" + file
+                        + ".java");
+                comment.setPosition(i % 50);
+            }
+            comments.add(comment);
+        }
+        return comments;
+    }
+
+    private static int getCount(final String name, final int defaultValue) {
+        return Integer.getInteger("benchmark." + name, defaultValue);
+    }
+
+    private static void print(final String name, final long time) {
+        System.out.println(String.format("%-30s %8.2f ms", name, time / 1e6
+                / RUNS));
+    }
+
+    /**
+     * Create commits with comments and add more comments one at a time
+     */
+    @Test
+    public void benchmark() {
+        int fileCount = getCount("files", 300);
+        int commentCount = getCount("comments", 2000);
+        int addedCount = getCount("added", 200);
+
+        RepositoryCommit commit = createCommit(fileCount);
+        List<CommitComment> comments = createComments(commentCount, fileCount);
+        List<CommitComment> added = createComments(addedCount, fileCount);
+
+        long createTime = 0;
+        long addTime = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            long start = System.nanoTime();
+            LegacyFullCommit full = new LegacyFullCommit(commit,
+                    new ArrayList<CommitComment>(comments));
+            long created = System.nanoTime();
+            for (CommitComment comment : added)
+                full.add(comment);
+            long end = System.nanoTime();
+            assertEquals((commentCount + 9) / 10 + (addedCount + 9) / 10,
+                    full.size());
+            if (i >= WARMUP) {
+                createTime += created - start;
+                addTime += end - created;
+            }
+        }
+        print("create (scan)", createTime);
+        print("add " + addedCount + " (scan)", addTime);
+
+        createTime = 0;
+        addTime = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            long start = System.nanoTime();
+            FullCommit full = new FullCommit(commit, comments);
+            long created = System.nanoTime();
+            for (CommitComment comment : added)
+                full.add(comment);
+            long end = System.nanoTime();
+            assertEquals((commentCount + 9) / 10 + (addedCount + 9) / 10,
+                    full.size());
+            if (i >= WARMUP) {
+                createTime += created - start;
+                addTime += end - created;
+            }
+        }
+        print("create (index)", createTime);
+        print("add " + addedCount + " (index)", addTime);
+    }
+
+    /**
+     * Run benchmark
+     *
+     * @param args
+     *            number of files, number of comments and number of comments
+     *            added after creating the commit
+     */
+    public static void main(final String[] args) {
+        String[] names = new String[] { "files", "comments", "added" };
+        for (int i = 0; i < args.length && i < names.length; i++)
+            System.setProperty("benchmark." + names[i], args[i]);
+        JUnitCore.main(FullCommitBenchmark.class.getName());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.regex.Pattern;
+
+import org.eclipse.egit.github.core.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Query plan tests of the repository lookups in the cache database
+ * <p>
+ * Each lookup of the repos table must search the (orgId, repoId) index rather
+ * than scanning the table
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CacheHelperTest {
+
+    private static final Pattern REPOS_SCAN = Pattern
+            .compile("SCAN (TABLE )?repos(\\s|$)");
+
+    private CacheHelper helper;
+
+    private SQLiteDatabase db;
+
+    private OrganizationRepositories repos;
+
+    /**
+     * Create database with every migration applied
+     */
+    @Before
+    public void setUp() {
+        helper = new CacheHelper(Robolectric.application);
+        db = helper.getWritableDatabase();
+
+        User org = new User();
+        org.setId(1);
+        repos = new OrganizationRepositories(org, null, null, null);
+    }
+
+    /**
+     * Close database
+     */
+    @After
+    public void tearDown() {
+        helper.close();
+    }
+
+    private String getPlan(final String sql, final String... args) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext())
+                plan.append(cursor.getString(detail)).append('\n');
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    private void assertSearchesOrgIndex(final String plan) {
+        assertTrue(plan, plan.contains("repos_org"));
+        assertFalse(plan, REPOS_SCAN.matcher(plan).find());
+    }
+
+    /**
+     * Verify the stored repositories of an organization are loaded through
+     * the organization index and joined to their owners by primary key
+     */
+    @Test
+    public void repositoriesOfOrganization() {
+        String plan = getPlan(repos.getQuery(), repos.getQueryArgs());
+        assertSearchesOrgIndex(plan);
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+    }
+
+    /**
+     * Verify filtered repositories of an organization are loaded through the
+     * organization index
+     */
+    @Test
+    public void matchingRepositoriesOfOrganization() {
+        repos.matching("android java");
+        String plan = getPlan(repos.getQuery(), repos.getQueryArgs());
+        assertSearchesOrgIndex(plan);
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+    }
+
+    /**
+     * Verify the stored update times are loaded through the organization
+     * index
+     */
+    @Test
+    public void storedUpdates() {
+        assertSearchesOrgIndex(getPlan(OrganizationRepositories.SELECT_UPDATES,
+                "1"));
+    }
+
+    /**
+     * Verify repositories are updated and deleted through the organization
+     * index by organization and repository id
+     */
+    @Test
+    public void updateAndDelete() {
+        String args = "orgId=? AND repoId=?";
+
+        String update = getPlan(OrganizationRepositories.UPDATE_REPO, "a",
+                "1", "0", "0", "d", "1", "1", "l", "1", "m", "1", "1", "2");
+        assertSearchesOrgIndex(update);
+        assertTrue(update, update.contains(args));
+
+        String delete = getPlan(OrganizationRepositories.DELETE_REPO, "1",
+                "2");
+        assertSearchesOrgIndex(delete);
+        assertTrue(delete, delete.contains(args));
+    }
+
+    /**
+     * Verify the unused owner index is not kept
+     */
+    @Test
+    public void ownerIndexDropped() {
+        Cursor cursor = db.rawQuery(
+                "SELECT COUNT(*) FROM sqlite_master WHERE name=?",
+                new String[] { "repos_owner" });
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(0, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.persistence;
+
+import static org.junit.Assert.assertEquals;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.User;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Benchmark of storing and loading the repositories of a large account in the
+ * cache database
+ * <p>
+ * Cold loads open the database before querying it, as every load did before
+ * the helper was shared. Warm loads query the database already opened by the
+ * shared helper.
+ * <p>
+ * Run the main method from the test classpath, it is not run as a unit test.
+ * It runs under Robolectric whose SQLite is not a device's, so times are only
+ * comparable with each other.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OrganizationRepositoriesBenchmark {
+
+    private static final int WARMUP = 5;
+
+    private static final int RUNS = 20;
+
+    private static final int OWNERS = 50;
+
+    /**
+     * Create repositories owned by a set of users
+     *
+     * @param count
+     * @param version
+     *            version of the repositories, changes their update time
+     * @return repositories
+     */
+    private static List<Repository> createRepositories(final int count,
+            final int version) {
+        List<Repository> repos = new ArrayList<Repository>(count);
+        for (int i = 0; i < count; i++) {
+            User owner = new User();
+            owner.setId(i % OWNERS);
+            owner.setLogin("owner" + i % OWNERS);
+            owner.setAvatarUrl("https://example.com/avatar/" + i % OWNERS);
+
+            Repository repo = new Repository();
+            repo.setId(1000 + i);
+            repo.setName("repository-" + i);
+            repo.setOwner(owner);
+            repo.setDescription("Description of repository " + i);
+            repo.setForks(i % 13);
+            repo.setWatchers(i % 101);
+            repo.setLanguage(i % 2 == 0 ? "Java" : "Ruby");
+            repo.setHasIssues(true);
+            repo.setPrivate(i % 5 == 0);
+            repo.setUpdatedAt(new Date(1000000L * (i + 1) + version));
+            repos.add(repo);
+        }
+        return repos;
+    }
+
+    private static int getCount(final String name, final int defaultValue) {
+        return Integer.getInteger("benchmark." + name, defaultValue);
+    }
+
+    private static void print(final String name, final long time) {
+        System.out.println(String.format("%-30s %8.2f ms", name, time / 1e6
+                / RUNS));
+    }
+
+    private static void store(final CacheHelper helper,
+            final OrganizationRepositories resource,
+            final List<Repository> repos) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            resource.store(db, repos);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static List<Repository> load(final CacheHelper helper,
+            final OrganizationRepositories resource) {
+        Cursor cursor = resource.getCursor(helper.getReadableDatabase());
+        try {
+            List<Repository> repos = new ArrayList<Repository>();
+            while (cursor.moveToNext())
+                repos.add(resource.loadFrom(cursor));
+            return repos;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void clear(final CacheHelper helper) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.delete("repos", null, null);
+        db.delete("repos_fts", null, null);
+        db.delete("users", null, null);
+    }
+
+    /**
+     * Store and load the repositories of an account
+     */
+    @Test
+    public void benchmark() {
+        int count = getCount("repos", 2000);
+        int changed = getCount("changed", 100);
+
+        User org = new User();
+        org.setId(1);
+        OrganizationRepositories resource = new OrganizationRepositories(org,
+                null, null, null);
+        List<Repository> repos = createRepositories(count, 0);
+        List<Repository> updated = createRepositories(count, 0);
+        List<Repository> changedRepos = createRepositories(changed, 1);
+        for (int i = 0; i < changed; i++)
+            updated.set(i, changedRepos.get(i));
+
+        CacheHelper helper = new CacheHelper(Robolectric.application);
+        long emptyTime = 0;
+        long unchangedTime = 0;
+        long changedTime = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            clear(helper);
+            long start = System.nanoTime();
+            store(helper, resource, repos);
+            long stored = System.nanoTime();
+            assertEquals(count, resource.getInserted());
+
+            store(helper, resource, repos);
+            long storedUnchanged = System.nanoTime();
+            assertEquals(count, resource.getUnchanged());
+
+            store(helper, resource, updated);
+            long storedChanged = System.nanoTime();
+            assertEquals(changed, resource.getUpdated());
+
+            // Restore the first versions for the next run
+            store(helper, resource, repos);
+            if (i >= WARMUP) {
+                emptyTime += stored - start;
+                unchangedTime += storedUnchanged - stored;
+                changedTime += storedChanged - storedUnchanged;
+            }
+        }
+        helper.close();
+
+        long coldTime = 0;
+        long warmTime = 0;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            long start = System.nanoTime();
+            helper = new CacheHelper(Robolectric.application);
+            assertEquals(count, load(helper, resource).size());
+            long cold = System.nanoTime();
+            assertEquals(count, load(helper, resource).size());
+            long warm = System.nanoTime();
+            helper.close();
+            if (i >= WARMUP) {
+                coldTime += cold - start;
+                warmTime += warm - cold;
+            }
+        }
+
+        print("store " + count + " (empty)", emptyTime);
+        print("store " + count + " (unchanged)", unchangedTime);
+        print("store " + count + " (" + changed + " changed)", changedTime);
+        print("load " + count + " (cold)", coldTime);
+        print("load " + count + " (warm)", warmTime);
+    }
+
+    /**
+     * Run benchmark
+     *
+     * @param args
+     *            number of repositories and number of repositories changed
+     *            between stores
+     */
+    public static void main(final String[] args) {
+        String[] names = new String[] { "repos", "changed" };
+        for (int i = 0; i < args.length && i < names.length; i++)
+            System.setProperty("benchmark." + names[i], args[i]);
+        JUnitCore.main(OrganizationRepositoriesBenchmark.class.getName());
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.ui.user;
+
+import static java.util.Arrays.asList;
+import static org.eclipse.egit.github.core.event.Event.TYPE_WATCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.mobile.persistence.EventCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.egit.github.core.client.PageIterator;
+import org.eclipse.egit.github.core.client.PagedRequest;
+import org.eclipse.egit.github.core.event.Event;
+import org.eclipse.egit.github.core.event.WatchPayload;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit tests of {@link EventPager} catching up to the stored events of a feed
+ * and dropping events requested again
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EventPagerTest {
+
+    private static final String FEED = "received";
+
+    private static final int PAGE_SIZE = 30;
+
+    private static final Comparator<Event> NEWEST_FIRST = new Comparator<Event>() {
+
+        @Override
+        public int compare(final Event lhs, final Event rhs) {
+            return rhs.getCreatedAt().compareTo(lhs.getCreatedAt());
+        }
+    };
+
+    /**
+     * Event cache storing events in memory and recording each put
+     */
+    private static class MemoryEventCache extends EventCache {
+
+        private final Map<String, Event> events = new HashMap<String, Event>();
+
+        private final List<List<String>> puts = new ArrayList<List<String>>();
+
+        @Override
+        public List<Event> getEvents(final String feed) {
+            List<Event> stored = new ArrayList<Event>(events.values());
+            Collections.sort(stored, NEWEST_FIRST);
+            return stored;
+        }
+
+        @Override
+        public void putEvents(final String feed,
+                final Collection<Event> events) {
+            puts.add(getIds(events));
+            for (Event event : events)
+                this.events.put(event.getId(), event);
+        }
+    }
+
+    /**
+     * Pager over a feed of events held in memory
+     */
+    private static class FeedPager extends EventPager {
+
+        private final List<Event> feed;
+
+        private final List<Integer> requested = new ArrayList<Integer>();
+
+        private FeedPager(final EventCache cache, final List<Event> feed) {
+            super(cache);
+            this.feed = feed;
+        }
+
+        @Override
+        protected String getFeed() {
+            return FEED;
+        }
+
+        @Override
+        public PageIterator<Event> createIterator(final int page,
+                final int size) {
+            return new PageIterator<Event>(new PagedRequest<Event>(page,
+                    PAGE_SIZE), null) {
+
+                private int next = page;
+
+                @Override
+                public boolean hasNext() {
+                    return (next - 1) * PAGE_SIZE < feed.size();
+                }
+
+                @Override
+                public Collection<Event> next() {
+                    requested.add(next);
+                    int start = (next++ - 1) * PAGE_SIZE;
+                    return new ArrayList<Event>(feed.subList(start,
+                            Math.min(start + PAGE_SIZE, feed.size())));
+                }
+            };
+        }
+    }
+
+    private static List<String> getIds(final Collection<Event> events) {
+        List<String> ids = new ArrayList<String>(events.size());
+        for (Event event : events)
+            ids.add(event.getId());
+        return ids;
+    }
+
+    /**
+     * Create event with an id and creation time increasing with the number
+     *
+     * @param number
+     * @return event
+     */
+    private static Event createEvent(final int number) {
+        Event event = new Event();
+        event.setId(Integer.toString(number));
+        event.setType(TYPE_WATCH);
+        event.setPayload(new WatchPayload());
+        event.setCreatedAt(new Date(System.currentTimeMillis() - 1000L
+                * (1000 - number)));
+        return event;
+    }
+
+    /**
+     * Create feed of events from the newest number down to the oldest
+     *
+     * @param newest
+     * @param oldest
+     * @return events newest first
+     */
+    private static List<Event> createFeed(final int newest,
+            final int oldest) {
+        List<Event> feed = new ArrayList<Event>();
+        for (int i = newest; i >= oldest; i--)
+            feed.add(createEvent(i));
+        return feed;
+    }
+
+    private static List<String> getIds(final int newest, final int oldest) {
+        return getIds(createFeed(newest, oldest));
+    }
+
+    private MemoryEventCache cache;
+
+    /**
+     * Create empty cache
+     */
+    @Before
+    public void setUp() {
+        cache = new MemoryEventCache();
+    }
+
+    /**
+     * Verify the first page is stored when no events are stored and each
+     * later page is stored on its own
+     *
+     * @throws IOException
+     */
+    @Test
+    public void storesPagesWhenEmpty() throws IOException {
+        FeedPager pager = new FeedPager(cache, createFeed(90, 1));
+
+        assertTrue(pager.next());
+        assertTrue(pager.next());
+        assertEquals(asList(1, 2), pager.requested);
+        assertEquals(asList(getIds(90, 61), getIds(60, 31)), cache.puts);
+        assertEquals(getIds(90, 31), getIds(pager.getResources()));
+    }
+
+    /**
+     * Verify only the pages newer than the stored events are requested and
+     * the stored events then follow them without duplicates
+     *
+     * @throws IOException
+     */
+    @Test
+    public void catchesUpToStoredEvents() throws IOException {
+        cache.putEvents(FEED, createFeed(80, 21));
+        cache.puts.clear();
+        FeedPager pager = new FeedPager(cache, createFeed(100, 1));
+
+        assertTrue(pager.next());
+        assertEquals(asList(1), pager.requested);
+        assertEquals(asList(getIds(100, 71)), cache.puts);
+        assertEquals(getIds(100, 21), getIds(pager.getResources()));
+
+        // Next page holds the oldest stored events, requested ones are dropped
+        assertTrue(pager.next());
+        assertEquals(asList(1, 3), pager.requested);
+        assertEquals(getIds(100, 11), getIds(pager.getResources()));
+    }
+
+    /**
+     * Verify pages are requested until reaching the newest stored event
+     *
+     * @throws IOException
+     */
+    @Test
+    public void requestsPagesUntilNewestStored() throws IOException {
+        cache.putEvents(FEED, createFeed(50, 31));
+        cache.puts.clear();
+        FeedPager pager = new FeedPager(cache, createFeed(100, 1));
+
+        assertTrue(pager.next());
+        assertEquals(asList(1, 2), pager.requested);
+        assertEquals(asList(getIds(100, 41)), cache.puts);
+        assertEquals(getIds(100, 31), getIds(pager.getResources()));
+
+        assertTrue(pager.next());
+        assertEquals(asList(1, 2, 3), pager.requested);
+        assertEquals(getIds(100, 11), getIds(pager.getResources()));
+    }
+
+    /**
+     * Verify stored events are not added when the newest one is not reached
+     * within the maximum number of pages kept
+     *
+     * @throws IOException
+     */
+    @Test
+    public void stopsCatchingUpAtMaxEvents() throws IOException {
+        cache.putEvents(FEED, asList(createEvent(1)));
+        cache.puts.clear();
+        FeedPager pager = new FeedPager(cache, createFeed(400, 2));
+
+        assertTrue(pager.next());
+        int pages = EventCache.MAX_EVENTS / PAGE_SIZE;
+        assertEquals(pages, pager.requested.size());
+        assertEquals(pages * PAGE_SIZE, pager.size());
+        assertFalse(getIds(pager.getResources()).contains("1"));
+    }
+
+    /**
+     * Verify feeds that are not stored never use the cache
+     *
+     * @throws IOException
+     */
+    @Test
+    public void feedNotStored() throws IOException {
+        cache.putEvents(FEED, createFeed(80, 21));
+        cache.puts.clear();
+        FeedPager pager = new FeedPager(cache, createFeed(100, 1)) {
+
+            @Override
+            protected String getFeed() {
+                return null;
+            }
+        };
+
+        assertTrue(pager.next());
+        assertEquals(getIds(100, 71), getIds(pager.getResources()));
+        assertTrue(cache.puts.isEmpty());
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Benchmark of decoding a downloaded avatar and storing it in the disk cache
+ * the way {@link AvatarLoader} does against the full size decode, rounded
+ * copy and PNG it stored before
+ * <p>
+ * BitmapFactory only runs on a device so this runs the same steps with
+ * javax.imageio on the JVM: source subsampling with the sample size from
+ * {@link ImageUtils#getSampleSize(int, int, int)} stands in for inSampleSize
+ * and bitmap sizes are counted at 4 bytes per pixel for ARGB_8888 and 2 for
+ * RGB_565. Times are only comparable with each other, not with a device.
+ * <p>
+ * Run the main method from the test classpath, it is not run as a unit test
+ */
+public class AvatarDecodeBenchmark {
+
+    private static final int WARMUP = 5;
+
+    private static final int RUNS = 20;
+
+    /**
+     * Result of decoding and storing an avatar
+     */
+    private static class Result {
+
+        private long bitmapBytes;
+
+        private long diskBytes;
+    }
+
+    /**
+     * Create photo-like JPEG avatar from a noisy gradient
+     *
+     * @param size
+     * @return JPEG bytes
+     * @throws IOException
+     */
+    private static byte[] createPhoto(final int size) throws IOException {
+        BufferedImage image = new BufferedImage(size, size,
+                BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < size; y++)
+            for (int x = 0; x < size; x++) {
+                int r = (x * 255 / size + random.nextInt(24)) & 0xff;
+                int g = (y * 255 / size + random.nextInt(24)) & 0xff;
+                int b = ((x + y) * 127 / size + random.nextInt(24)) & 0xff;
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        return encode(image, "jpeg");
+    }
+
+    /**
+     * Create identicon-like PNG avatar of transparent and colored blocks
+     *
+     * @param size
+     * @return PNG bytes
+     * @throws IOException
+     */
+    private static byte[] createIdenticon(final int size) throws IOException {
+        BufferedImage image = new BufferedImage(size, size,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(0x4183c4));
+        Random random = new Random(7);
+        int block = size / 5;
+        for (int y = 0; y < 5; y++)
+            for (int x = 0; x < 3; x++)
+                if (random.nextBoolean()) {
+                    graphics.fillRect(x * block, y * block, block, block);
+                    graphics.fillRect((4 - x) * block, y * block, block, block);
+                }
+        graphics.dispose();
+        return encode(image, "png");
+    }
+
+    private static byte[] encode(final BufferedImage image, final String format)
+            throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, output))
+            throw new IOException("No writer for " + format);
+        return output.toByteArray();
+    }
+
+    private static byte[] encodeJpeg(final BufferedImage image,
+            final float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg")
+                .next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageOutputStream stream = ImageIO.createImageOutputStream(output);
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            stream.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static BufferedImage decode(final byte[] image,
+            final int sampleSize) throws IOException {
+        ImageInputStream stream = ImageIO
+                .createImageInputStream(new ByteArrayInputStream(image));
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext())
+                throw new IOException("No reader for avatar");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static int[] getSize(final byte[] image) throws IOException {
+        ImageInputStream stream = ImageIO
+                .createImageInputStream(new ByteArrayInputStream(image));
+        try {
+            ImageReader reader = ImageIO.getImageReaders(stream).next();
+            try {
+                reader.setInput(stream);
+                return new int[] { reader.getWidth(0), reader.getHeight(0) };
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Decode at full size, copy into a second bitmap with rounded corners and
+     * store it as PNG as was done before avatars were downsampled
+     *
+     * @param image
+     * @param cornerRadius
+     * @return result
+     * @throws IOException
+     */
+    private static Result processFull(final byte[] image,
+            final int cornerRadius) throws IOException {
+        BufferedImage bitmap = decode(image, 1);
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        BufferedImage rounded = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = rounded.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setClip(new RoundRectangle2D.Float(0, 0, width, height,
+                2 * cornerRadius, 2 * cornerRadius));
+        graphics.drawImage(bitmap, 0, 0, null);
+        graphics.dispose();
+
+        Result result = new Result();
+        result.bitmapBytes = 2L * width * height * 4;
+        result.diskBytes = encode(rounded, "png").length;
+        return result;
+    }
+
+    /**
+     * Decode at the avatar size and store the thumbnail the way
+     * {@link AvatarLoader} does, corners are rounded when drawn
+     *
+     * @param image
+     * @param jpeg
+     * @param avatarSize
+     * @return result
+     * @throws IOException
+     */
+    private static Result processSampled(final byte[] image,
+            final boolean jpeg, final int avatarSize) throws IOException {
+        int[] size = getSize(image);
+        int sampleSize = ImageUtils.getSampleSize(size[0], size[1],
+                avatarSize);
+        BufferedImage bitmap = decode(image, sampleSize);
+
+        Result result = new Result();
+        result.bitmapBytes = (long) bitmap.getWidth() * bitmap.getHeight()
+                * (jpeg ? 2 : 4);
+        if (sampleSize == 1)
+            result.diskBytes = image.length;
+        else if (bitmap.getColorModel().hasAlpha())
+            result.diskBytes = encode(bitmap, "png").length;
+        else
+            result.diskBytes = encodeJpeg(bitmap, 0.9F).length;
+        return result;
+    }
+
+    private static void benchmark(final String name, final byte[] image,
+            final boolean jpeg, final int avatarSize, final int cornerRadius)
+            throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            processFull(image, cornerRadius);
+            processSampled(image, jpeg, avatarSize);
+        }
+
+        Result full = null;
+        Result sampled = null;
+        long fullTime = 0;
+        long sampledTime = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            full = processFull(image, cornerRadius);
+            fullTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sampled = processSampled(image, jpeg, avatarSize);
+            sampledTime += System.nanoTime() - start;
+        }
+        System.out.println(String.format(
+                "%-30s %8.2f ms  bitmaps %8d bytes  disk %7d bytes", name
+                        + " (full)", fullTime / 1e6 / RUNS, full.bitmapBytes,
+                full.diskBytes));
+        System.out.println(String.format(
+                "%-30s %8.2f ms  bitmaps %8d bytes  disk %7d bytes", name
+                        + " (sampled)", sampledTime / 1e6 / RUNS,
+                sampled.bitmapBytes, sampled.diskBytes));
+    }
+
+    /**
+     * Run benchmark
+     *
+     * @param args
+     *            size of the downloaded avatars and size in pixels of the
+     *            largest avatar view
+     * @throws IOException
+     */
+    public static void main(final String[] args) throws IOException {
+        int downloadSize = args.length > 0 ? Integer.parseInt(args[0]) : 420;
+        int avatarSize = args.length > 1 ? Integer.parseInt(args[1]) : 80;
+        int cornerRadius = Math.max(1, avatarSize * 3 / 40);
+
+        benchmark("photo " + downloadSize + "px", createPhoto(downloadSize),
+                true, avatarSize, cornerRadius);
+        benchmark("identicon " + downloadSize + "px",
+                createIdenticon(downloadSize), false, avatarSize, cornerRadius);
+    }
+}
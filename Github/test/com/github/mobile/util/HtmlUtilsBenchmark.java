@@ -0,0 +1,344 @@
+/*
+ * Copyright 2012 GitHub Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.mobile.util;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.ICE_CREAM_SANDWICH;
+
+/**
+ * Benchmark of formatting comment HTML with {@link HtmlUtils#format(String)}
+ * against the passes over a single buffer used before it
+ * <p>
+ * The comments are built like the body_html the API returns for plain,
+ * Markdown, e-mail reply and pasted log comments. Each comment is checked to
+ * format to the same HTML with both implementations before it is timed.
+ * <p>
+ * Run the main method from the test classpath, it is not run as a unit test
+ */
+public class HtmlUtilsBenchmark {
+
+    private static final int WARMUP = 5;
+
+    private static final int RUNS = 20;
+
+    /**
+     * Formatting done by {@link HtmlUtils#format(String)} before it was made a
+     * single pass
+     */
+    private static class LegacyFormatter {
+
+        private static final String ROOT_START = "<githubroot>";
+
+        private static final String ROOT_END = "</githubroot>";
+
+        private static final String TOGGLE_START = "<span class=\"email-hidden-toggle\">";
+
+        private static final String TOGGLE_END = "</span>";
+
+        private static final String REPLY_START = "<div class=\"email-quoted-reply\">";
+
+        private static final String REPLY_END = "</div>";
+
+        private static final String SIGNATURE_START = "<div class=\"email-signature-reply\">";
+
+        private static final String SIGNATURE_END = "</div>";
+
+        private static final String EMAIL_START = "<div class=\"email-fragment\">";
+
+        private static final String EMAIL_END = "</div>";
+
+        private static final String HIDDEN_REPLY_START = "<div class=\"email-hidden-reply\" style=\" display:none\">";
+
+        private static final String HIDDEN_REPLY_END = "</div>";
+
+        private static final String BREAK = "<br>";
+
+        private static final String PARAGRAPH_START = "<p>";
+
+        private static final String PARAGRAPH_END = "</p>";
+
+        private static final String BLOCKQUOTE_START = "<blockquote>";
+
+        private static final String BLOCKQUOTE_END = "</blockquote>";
+
+        private static final String SPACE = "&nbsp;";
+
+        private static final String PRE_START = "<pre>";
+
+        private static final String PRE_END = "</pre>";
+
+        private static final String CODE_START = "<code>";
+
+        private static final String CODE_END = "</code>";
+
+        private static CharSequence format(final String html) {
+            if (html == null || html.length() == 0)
+                return "";
+
+            StringBuilder formatted = new StringBuilder(html);
+            strip(formatted, TOGGLE_START, TOGGLE_END);
+            strip(formatted, SIGNATURE_START, SIGNATURE_END);
+            replace(formatted, REPLY_START, REPLY_END, BLOCKQUOTE_START,
+                    BLOCKQUOTE_END);
+            strip(formatted, HIDDEN_REPLY_START, HIDDEN_REPLY_END);
+            if (replace(formatted, PARAGRAPH_START, BREAK))
+                replace(formatted, PARAGRAPH_END, BREAK);
+            formatPres(formatted);
+            formatEmailFragments(formatted);
+            if (SDK_INT < ICE_CREAM_SANDWICH) {
+                replaceTag(formatted, "em", "i");
+                replaceTag(formatted, "strong", "b");
+            }
+            trim(formatted);
+            formatted.insert(0, ROOT_START);
+            formatted.append(ROOT_END);
+            return formatted;
+        }
+
+        private static void strip(final StringBuilder input,
+                final String prefix, final String suffix) {
+            int start = input.indexOf(prefix);
+            while (start != -1) {
+                int end = input.indexOf(suffix, start + prefix.length());
+                if (end == -1)
+                    end = input.length();
+                input.delete(start, end + suffix.length());
+                start = input.indexOf(prefix, start);
+            }
+        }
+
+        private static boolean replace(final StringBuilder input,
+                final String from, final String to) {
+            int start = input.indexOf(from);
+            if (start == -1)
+                return false;
+
+            while (start != -1) {
+                input.replace(start, start + from.length(), to);
+                start = input.indexOf(from, start + to.length());
+            }
+            return true;
+        }
+
+        private static void replaceTag(final StringBuilder input,
+                final String from, final String to) {
+            if (replace(input, '<' + from + '>', '<' + to + '>'))
+                replace(input, "</" + from + '>', "</" + to + '>');
+        }
+
+        private static void replace(final StringBuilder input,
+                final String fromStart, final String fromEnd,
+                final String toStart, final String toEnd) {
+            int start = input.indexOf(fromStart);
+            while (start != -1) {
+                input.replace(start, start + fromStart.length(), toStart);
+                int end = input.indexOf(fromEnd, start + toStart.length());
+                if (end != -1)
+                    input.replace(end, end + fromEnd.length(), toEnd);
+                start = input.indexOf(fromStart);
+            }
+        }
+
+        private static void formatPres(final StringBuilder input) {
+            int start = input.indexOf(PRE_START);
+            final int spaceAdvance = SPACE.length() - 1;
+            final int breakAdvance = BREAK.length() - 1;
+            while (start != -1) {
+                int end = input.indexOf(PRE_END, start + PRE_START.length());
+                if (end == -1)
+                    break;
+
+                if (input.indexOf(CODE_START, start) == start)
+                    start += CODE_START.length();
+                if (input.indexOf(CODE_END, start) == end - CODE_END.length())
+                    end -= CODE_END.length();
+
+                for (int i = start; i < end; i++) {
+                    switch (input.charAt(i)) {
+                    case ' ':
+                        input.deleteCharAt(i);
+                        input.insert(i, SPACE);
+                        start += spaceAdvance;
+                        end += spaceAdvance;
+                        break;
+                    case '\t':
+                        input.deleteCharAt(i);
+                        input.insert(i, SPACE);
+                        start += spaceAdvance;
+                        end += spaceAdvance;
+                        for (int j = 0; j < 3; j++) {
+                            input.insert(i, SPACE);
+                            start += spaceAdvance + 1;
+                            end += spaceAdvance + 1;
+                        }
+                        break;
+                    case '\n':
+                        input.deleteCharAt(i);
+                        if (i + 1 < end) {
+                            input.insert(i, BREAK);
+                            start += breakAdvance;
+                            end += breakAdvance;
+                        }
+                        break;
+                    }
+                }
+                start = input.indexOf(PRE_START, end + PRE_END.length());
+            }
+        }
+
+        private static void formatEmailFragments(final StringBuilder input) {
+            int emailStart = input.indexOf(EMAIL_START);
+            int breakAdvance = BREAK.length() - 1;
+            while (emailStart != -1) {
+                int startLength = EMAIL_START.length();
+                int emailEnd = input.indexOf(EMAIL_END, emailStart
+                        + startLength);
+                if (emailEnd == -1)
+                    break;
+
+                input.delete(emailEnd, emailEnd + EMAIL_END.length());
+                input.delete(emailStart, emailStart + startLength);
+
+                int fullEmail = emailEnd - startLength;
+                for (int i = emailStart; i < fullEmail; i++)
+                    if (input.charAt(i) == '\n') {
+                        input.deleteCharAt(i);
+                        input.insert(i, BREAK);
+                        i += breakAdvance;
+                        fullEmail += breakAdvance;
+                    }
+
+                emailStart = input.indexOf(EMAIL_START, fullEmail);
+            }
+        }
+
+        private static void trim(final StringBuilder input) {
+            int length = input.length();
+            int breakLength = BREAK.length();
+            while (length > 0) {
+                if (input.indexOf(BREAK) == 0)
+                    input.delete(0, breakLength);
+                else if (length >= breakLength
+                        && input.lastIndexOf(BREAK) == length - breakLength)
+                    input.delete(length - breakLength, length);
+                else if (Character.isWhitespace(input.charAt(0)))
+                    input.deleteCharAt(0);
+                else if (Character.isWhitespace(input.charAt(length - 1)))
+                    input.deleteCharAt(length - 1);
+                else
+                    break;
+                length = input.length();
+            }
+        }
+    }
+
+    private static String createPlainComment() {
+        return "<p>Thanks <a href=\"https://github.com/octocat\" class=\"user-mention\">@octocat</a>,"
+                + " this looks good to me. I left a few <em>minor</em> notes"
+                + " on the <strong>second</strong> commit.</p>";
+    }
+
+    private static String createMarkdownComment() {
+        StringBuilder html = new StringBuilder();
+        html.append("<h2>Steps to reproduce</h2>\n<ol>\n");
+        for (int i = 1; i <= 5; i++)
+            html.append("<li>Open the <code>Issues</code> tab and tap item ")
+                    .append(i).append("</li>\n");
+        html.append("</ol>\n<p>Stack trace:</p>\n<pre><code>");
+        for (int i = 0; i < 60; i++)
+            html.append("\tat com.example.app.Activity")
+                    .append(i)
+                    .append(".onCreate(Activity")
+                    .append(i)
+                    .append(".java:")
+                    .append(40 + i)
+                    .append(")\n");
+        html.append("</code></pre>\n<p>Expected the list to load.</p>");
+        return html.toString();
+    }
+
+    private static String createEmailComment() {
+        StringBuilder html = new StringBuilder();
+        html.append("<div class=\"email-fragment\">Sounds good, I will update"
+                + " the branch tonight.\nOne question though:\nshould the"
+                + " cache be cleared on logout?</div>\n");
+        html.append("<span class=\"email-hidden-toggle\"><a href=\"#\">&hellip;</a></span>");
+        html.append("<div class=\"email-hidden-reply\" style=\" display:none\">");
+        html.append("<div class=\"email-quoted-reply\">");
+        for (int i = 0; i < 40; i++)
+            html.append("On Mon, someone wrote: line ").append(i)
+                    .append(" of the quoted reply<br>\n");
+        html.append("</div>");
+        html.append("<div class=\"email-signature-reply\">--<br>\nReply to"
+                + " this email directly or view it on GitHub.</div>");
+        html.append("</div>");
+        return html.toString();
+    }
+
+    private static String createLogComment(final int length) {
+        StringBuilder html = new StringBuilder(length + 100);
+        html.append("<p>Full build log:</p>\n<pre><code>");
+        for (int i = 0; html.length() < length; i++)
+            html.append("[INFO] ").append(String.format("%5d", i))
+                    .append(" Compiling module ").append(i % 17)
+                    .append("\t\tsources: ").append(i * 3).append('\n');
+        html.append("</code></pre>");
+        return html.toString();
+    }
+
+    private static void benchmark(final String name, final String html) {
+        String expected = LegacyFormatter.format(html).toString();
+        String actual = HtmlUtils.format(html).toString();
+        if (!expected.equals(actual))
+            throw new IllegalStateException(name + " formatted differently");
+
+        for (int i = 0; i < WARMUP; i++) {
+            LegacyFormatter.format(html);
+            HtmlUtils.format(html);
+        }
+
+        long legacyTime = 0;
+        long formatTime = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            LegacyFormatter.format(html);
+            legacyTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            HtmlUtils.format(html);
+            formatTime += System.nanoTime() - start;
+        }
+        System.out.println(String.format(
+                "%-20s %7d chars  passes %8.3f ms  single %8.3f ms", name,
+                html.length(), legacyTime / 1e6 / RUNS, formatTime / 1e6
+                        / RUNS));
+    }
+
+    /**
+     * Run benchmark
+     *
+     * @param args
+     *            length of the pasted log comment
+     */
+    public static void main(final String[] args) {
+        int logLength = args.length > 0 ? Integer.parseInt(args[0]) : 48000;
+
+        benchmark("plain", createPlainComment());
+        benchmark("markdown", createMarkdownComment());
+        benchmark("e-mail reply", createEmailComment());
+        benchmark("pasted log", createLogComment(logLength));
+    }
+}